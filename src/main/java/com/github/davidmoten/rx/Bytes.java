@@ -7,20 +7,41 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
+import com.github.davidmoten.rx.exceptions.FrameTooLongException;
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+import com.github.davidmoten.rx.internal.operators.OnSubscribeFileLines;
+import com.github.davidmoten.rx.internal.operators.OnSubscribeFileReadAhead;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeInputStream;
+import com.github.davidmoten.rx.internal.operators.OnSubscribeInputStreamPooled;
+import com.github.davidmoten.rx.internal.operators.OnSubscribeTail;
+import com.github.davidmoten.rx.internal.operators.OperatorFileSink;
+import com.github.davidmoten.rx.internal.operators.TransformerCompression;
+import com.github.davidmoten.rx.internal.operators.TransformerFrame;
+import com.github.davidmoten.rx.util.BytePool;
+import com.github.davidmoten.rx.util.PooledBytes;
+import com.github.davidmoten.rx.util.Positioned;
+import com.github.davidmoten.rx.util.SyncPolicy;
 import com.github.davidmoten.rx.util.ZippedEntry;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Observable.Transformer;
 import rx.Observer;
+import rx.Scheduler;
 import rx.functions.Action1;
 import rx.functions.Action2;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.observables.SyncOnSubscribe;
+import rx.schedulers.Schedulers;
 
 public final class Bytes {
 
@@ -68,6 +89,88 @@ public final class Bytes {
         return Observable.using(resourceFactory, observableFactory, InputStreamCloseHolder.INSTANCE, true);
     }
     
+    /**
+     * Returns an Observable stream of byte arrays read from the file where up
+     * to {@code readAhead} buffers are read in advance of downstream requests
+     * on a worker of the given scheduler using a {@link java.nio.channels.FileChannel}
+     * and a reusable direct buffer. This overlaps disk latency with downstream
+     * processing. Emissions may happen on the scheduler's worker thread.
+     * 
+     * @param file
+     *            file to read
+     * @param size
+     *            max emitted byte array size
+     * @param readAhead
+     *            the maximum number of buffers read but not yet emitted
+     * @param scheduler
+     *            scheduler to perform reads on
+     * @return a stream of byte arrays
+     */
+    public static Observable<byte[]> fromReadAhead(File file, int size, int readAhead,
+            Scheduler scheduler) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(scheduler);
+        Preconditions.checkArgument(size > 0, "size must be greater than 0");
+        Preconditions.checkArgument(readAhead > 0, "readAhead must be greater than 0");
+        return Observable.create(new OnSubscribeFileReadAhead(file, size, readAhead, scheduler));
+    }
+
+    public static Observable<byte[]> fromReadAhead(File file, int size, int readAhead) {
+        return fromReadAhead(file, size, readAhead, Schedulers.io());
+    }
+
+    public static Observable<byte[]> fromReadAhead(File file) {
+        return fromReadAhead(file, 65536, 2);
+    }
+
+    /**
+     * Returns a never ending stream of the bytes appended to {@code file}
+     * starting at byte {@code startPosition}, each chunk paired with the
+     * position in the file immediately after it (to checkpoint and later
+     * resume from). New data is read only when requested and is polled for
+     * every {@code pollIntervalMs} milliseconds on a worker of
+     * {@code scheduler}. The file need not exist yet. If the file is
+     * truncated or replaced (for example by log rotation) then reading
+     * continues from the start of the file at that path. If
+     * {@code startPosition} is beyond the end of the file then reading starts
+     * at the beginning of the file.
+     * 
+     * @param file
+     *            file to tail
+     * @param startPosition
+     *            byte position to start reading from
+     * @param pollIntervalMs
+     *            interval between checks for new data
+     * @param bufferSize
+     *            maximum size of emitted chunks
+     * @param scheduler
+     *            scheduler to read on
+     * @return stream of chunks with positions
+     */
+    public static Observable<Positioned<byte[]>> tail(File file, long startPosition,
+            long pollIntervalMs, int bufferSize, Scheduler scheduler) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkArgument(startPosition >= 0, "startPosition cannot be negative");
+        Preconditions.checkArgument(pollIntervalMs > 0, "pollIntervalMs must be greater than 0");
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        Preconditions.checkNotNull(scheduler);
+        return Observable.create(
+                new OnSubscribeTail(file, startPosition, pollIntervalMs, bufferSize, scheduler));
+    }
+
+    public static Observable<Positioned<byte[]>> tail(File file, long startPosition) {
+        return tail(file, startPosition, DEFAULT_TAIL_POLL_INTERVAL_MS, DEFAULT_TAIL_BUFFER_SIZE,
+                Schedulers.io());
+    }
+
+    public static Observable<Positioned<byte[]>> tail(File file) {
+        return tail(file, 0);
+    }
+
+    private static final long DEFAULT_TAIL_POLL_INTERVAL_MS = 500;
+
+    private static final int DEFAULT_TAIL_BUFFER_SIZE = 8192;
+
     private static class InputStreamCloseHolder {
         private static final Action1<InputStream> INSTANCE = new Action1<InputStream>() {
 
@@ -95,6 +198,89 @@ public final class Bytes {
         return from(is, 8192);
     }
 
+    /**
+     * Returns the lines of the given file decoded using the given charset.
+     * The raw bytes are scanned for {@code '\n'} and only complete lines are
+     * decoded so no intermediate strings are created and no regex is used.
+     * The {@code '\n'} is not included in the emitted lines (a preceding
+     * {@code '\r'} is retained) and no empty line is emitted after a final
+     * {@code '\n'}.
+     * 
+     * <p>
+     * Only use this method with charsets where the byte {@code '\n'} cannot
+     * appear within a multibyte character (for example UTF-8, US-ASCII or
+     * ISO-8859-1). Use {@code Strings.from(file).compose(split("\n"))} for
+     * other charsets like UTF-16.
+     * 
+     * @param file
+     *            file to read
+     * @param charset
+     *            charset to decode each line with
+     * @param bufferSize
+     *            size in bytes of the reusable read buffer
+     * @return stream of lines
+     */
+    public static Observable<String> lines(File file, Charset charset, int bufferSize) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(charset);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        return Observable.create(new OnSubscribeFileLines(file, charset, bufferSize));
+    }
+
+    public static Observable<String> lines(File file, Charset charset) {
+        return lines(file, charset, 8192);
+    }
+
+    public static Observable<String> lines(File file) {
+        return lines(file, Utf8Holder.INSTANCE);
+    }
+
+    private static class Utf8Holder {
+        static final Charset INSTANCE = Charset.forName("UTF-8");
+    }
+
+    /**
+     * Returns an Observable stream of buffers acquired from the given pool
+     * and filled from the given {@link InputStream}. Each emitted buffer
+     * contains between 1 and {@code pool.bufferSize()} valid bytes and must
+     * be released by the subscriber once it has finished with it (see
+     * {@link #copyAndRelease()} for subscribers that want to keep the bytes).
+     * Unlike {@link #from(InputStream, int)} no arrays are allocated per read
+     * once the pool has warmed up.
+     * 
+     * @param is
+     *            input stream of bytes
+     * @param pool
+     *            pool to acquire buffers from
+     * @return a stream of pooled buffers
+     */
+    public static Observable<PooledBytes> fromPooled(InputStream is, BytePool pool) {
+        Preconditions.checkNotNull(is);
+        Preconditions.checkNotNull(pool);
+        return Observable.create(new OnSubscribeInputStreamPooled(is, pool));
+    }
+
+    /**
+     * Returns a function that copies the valid bytes of a pooled buffer into
+     * a new array and releases the buffer back to its pool.
+     * 
+     * @return function that copies and releases pooled buffers
+     */
+    public static Func1<PooledBytes, byte[]> copyAndRelease() {
+        return CopyAndReleaseHolder.INSTANCE;
+    }
+
+    private static final class CopyAndReleaseHolder {
+        static final Func1<PooledBytes, byte[]> INSTANCE = new Func1<PooledBytes, byte[]>() {
+            @Override
+            public byte[] call(PooledBytes b) {
+                byte[] bytes = b.copy();
+                b.release();
+                return bytes;
+            }
+        };
+    }
+
     public static Observable<ZippedEntry> unzip(final File file) {
         Func0<ZipInputStream> resourceFactory = new Func0<ZipInputStream>() {
             @Override
@@ -131,6 +317,94 @@ public final class Bytes {
         };
     }
 
+    /**
+     * Returns the merged results of applying {@code function} to every entry
+     * of the zip file where up to {@code parallelism} entries are inflated
+     * concurrently on the {@link Schedulers#io()} scheduler. The zip file is
+     * read using random access ({@link ZipFile}) so entries are inflated
+     * independently. The entry input stream passed to the function is closed
+     * once the Observable returned by the function terminates, so the
+     * function must fully read what it needs within that Observable.
+     * 
+     * @param file
+     *            zip file
+     * @param parallelism
+     *            maximum number of entries processed concurrently
+     * @param function
+     *            maps each entry to an Observable that reads the entry
+     * @param <T>
+     *            result type
+     * @return merged results of processing each entry (in no particular
+     *         order across entries)
+     */
+    public static <T> Observable<T> unzipParallel(final File file, final int parallelism,
+            final Func1<? super ZippedEntry, ? extends Observable<? extends T>> function) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than 0");
+        Func0<ZipFile> resourceFactory = new Func0<ZipFile>() {
+            @Override
+            public ZipFile call() {
+                try {
+                    return new ZipFile(file);
+                } catch (IOException e) {
+                    throw new IORuntimeException(e);
+                }
+            }
+        };
+        Func1<ZipFile, Observable<T>> observableFactory = new Func1<ZipFile, Observable<T>>() {
+            @Override
+            public Observable<T> call(final ZipFile zipFile) {
+                return Observable //
+                        .from(Collections.list(zipFile.entries())) //
+                        .flatMap(new Func1<ZipEntry, Observable<T>>() {
+                            @Override
+                            public Observable<T> call(ZipEntry entry) {
+                                return unzipEntry(zipFile, entry, function)
+                                        .subscribeOn(Schedulers.io());
+                            }
+                        }, parallelism);
+            }
+        };
+        return Observable.using(resourceFactory, observableFactory, ZipFileCloseHolder.INSTANCE,
+                true);
+    }
+
+    private static <T> Observable<T> unzipEntry(final ZipFile zipFile, final ZipEntry entry,
+            final Func1<? super ZippedEntry, ? extends Observable<? extends T>> function) {
+        Func0<InputStream> resourceFactory = new Func0<InputStream>() {
+            @Override
+            public InputStream call() {
+                try {
+                    return zipFile.getInputStream(entry);
+                } catch (IOException e) {
+                    throw new IORuntimeException(e);
+                }
+            }
+        };
+        Func1<InputStream, Observable<T>> observableFactory = new Func1<InputStream, Observable<T>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<T> call(InputStream is) {
+                return (Observable<T>) function.call(new ZippedEntry(entry, is));
+            }
+        };
+        return Observable.using(resourceFactory, observableFactory,
+                InputStreamCloseHolder.INSTANCE, true);
+    }
+
+    private static final class ZipFileCloseHolder {
+        static final Action1<ZipFile> INSTANCE = new Action1<ZipFile>() {
+            @Override
+            public void call(ZipFile zipFile) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    throw new IORuntimeException(e);
+                }
+            }
+        };
+    }
+
     public static Observable<ZippedEntry> unzip(final InputStream is) {
         return unzip(new ZipInputStream(is));
     }
@@ -207,4 +481,306 @@ public final class Bytes {
         };
     }
 
+    /**
+     * Returns a transformer that reassembles frames prefixed by a big-endian
+     * unsigned length header of {@code headerBytes} bytes from byte arrays of
+     * arbitrary size (for example from a socket). Emitted frames do not
+     * include the header. Emits a {@link FrameTooLongException} if a header
+     * gives a length greater than {@code maxFrame} and an
+     * {@link IORuntimeException} if the stream ends part way through a frame.
+     * 
+     * @param headerBytes
+     *            number of bytes in the length header (1 to 8)
+     * @param maxFrame
+     *            maximum frame length in bytes
+     * @return framing transformer
+     */
+    public static Transformer<byte[], byte[]> frameByLength(int headerBytes, int maxFrame) {
+        Preconditions.checkArgument(headerBytes >= 1 && headerBytes <= 8,
+                "headerBytes must be between 1 and 8");
+        Preconditions.checkArgument(maxFrame >= 0, "maxFrame cannot be negative");
+        return TransformerFrame.byLength(headerBytes, maxFrame);
+    }
+
+    /**
+     * Returns a transformer that reassembles frames terminated by
+     * {@code delimiter} from byte arrays of arbitrary size (for example from a
+     * socket). Emitted frames do not include the delimiter. Bytes after the
+     * last delimiter are emitted as a final frame. Emits a
+     * {@link FrameTooLongException} if a frame is longer than
+     * {@code maxFrame}.
+     * 
+     * @param delimiter
+     *            frame terminator
+     * @param maxFrame
+     *            maximum frame length in bytes
+     * @return framing transformer
+     */
+    public static Transformer<byte[], byte[]> frameByDelimiter(byte[] delimiter, int maxFrame) {
+        Preconditions.checkNotNull(delimiter);
+        Preconditions.checkArgument(delimiter.length > 0, "delimiter cannot be empty");
+        Preconditions.checkArgument(maxFrame >= 0, "maxFrame cannot be negative");
+        return TransformerFrame.byDelimiter(delimiter.clone(), maxFrame);
+    }
+
+    /**
+     * Returns a transformer that compresses a stream of byte arrays into the
+     * gzip format. Output chunks are at most {@code bufferSize} bytes and are
+     * produced as downstream requests them.
+     * 
+     * @param level
+     *            compression level (0-9)
+     * @param bufferSize
+     *            size of the reusable output buffer
+     * @return gzip compressing transformer
+     */
+    public static Transformer<byte[], byte[]> gzip(int level, int bufferSize) {
+        checkCompressionArguments(level, bufferSize);
+        return TransformerCompression.deflate(level, true, bufferSize);
+    }
+
+    public static Transformer<byte[], byte[]> gzip() {
+        return gzip(Deflater.DEFAULT_COMPRESSION, DEFAULT_COMPRESSION_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a transformer that decompresses a stream of byte arrays in the
+     * gzip format (concatenated gzip members are supported). Output chunks
+     * are at most {@code bufferSize} bytes and are produced as downstream
+     * requests them.
+     * 
+     * @param bufferSize
+     *            size of the reusable output buffer
+     * @return gzip decompressing transformer
+     */
+    public static Transformer<byte[], byte[]> gunzip(int bufferSize) {
+        checkCompressionArguments(Deflater.DEFAULT_COMPRESSION, bufferSize);
+        return TransformerCompression.inflate(true, bufferSize);
+    }
+
+    public static Transformer<byte[], byte[]> gunzip() {
+        return gunzip(DEFAULT_COMPRESSION_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a transformer that compresses a stream of byte arrays into the
+     * zlib (deflate) format as produced by
+     * {@link java.util.zip.DeflaterOutputStream}.
+     * 
+     * @param level
+     *            compression level (0-9)
+     * @param bufferSize
+     *            size of the reusable output buffer
+     * @return deflating transformer
+     */
+    public static Transformer<byte[], byte[]> deflate(int level, int bufferSize) {
+        checkCompressionArguments(level, bufferSize);
+        return TransformerCompression.deflate(level, false, bufferSize);
+    }
+
+    public static Transformer<byte[], byte[]> deflate() {
+        return deflate(Deflater.DEFAULT_COMPRESSION, DEFAULT_COMPRESSION_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a transformer that decompresses a stream of byte arrays in the
+     * zlib (deflate) format as read by
+     * {@link java.util.zip.InflaterInputStream}.
+     * 
+     * @param bufferSize
+     *            size of the reusable output buffer
+     * @return inflating transformer
+     */
+    public static Transformer<byte[], byte[]> inflate(int bufferSize) {
+        checkCompressionArguments(Deflater.DEFAULT_COMPRESSION, bufferSize);
+        return TransformerCompression.inflate(false, bufferSize);
+    }
+
+    public static Transformer<byte[], byte[]> inflate() {
+        return inflate(DEFAULT_COMPRESSION_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a transformer that writes the byte arrays of the stream to
+     * {@code file} (replacing any existing content) and emits the file on
+     * completion. Small arrays are coalesced into large writes. Use
+     * {@link #writer(File)} to configure buffering, rolling of files, syncing
+     * and writing on another thread.
+     * 
+     * @param file
+     *            file to write to
+     * @return file writing transformer
+     */
+    public static Transformer<byte[], File> write(File file) {
+        return writer(file).build();
+    }
+
+    /**
+     * Returns a builder for a transformer that writes byte arrays to a file.
+     * If the file is rolled over then the subsequent files have the path of
+     * {@code file} suffixed with {@code .1}, {@code .2} and so on.
+     * 
+     * @param file
+     *            the first file to write to
+     * @return builder
+     */
+    public static WriterBuilder writer(final File file) {
+        Preconditions.checkNotNull(file);
+        return writer(new Func1<Integer, File>() {
+            @Override
+            public File call(Integer index) {
+                if (index == 0) {
+                    return file;
+                } else {
+                    return new File(file.getPath() + "." + index);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a builder for a transformer that writes byte arrays to a
+     * sequence of files. The {@code fileFactory} is called with the index of
+     * each new file starting at 0.
+     * 
+     * @param fileFactory
+     *            returns the file to write to for the given index
+     * @return builder
+     */
+    public static WriterBuilder writer(Func1<Integer, File> fileFactory) {
+        Preconditions.checkNotNull(fileFactory);
+        return new WriterBuilder(fileFactory);
+    }
+
+    public static final class WriterBuilder {
+
+        private final Func1<Integer, File> fileFactory;
+        private int bufferSize = 65536;
+        private long rolloverSizeBytes = Long.MAX_VALUE;
+        private long rolloverEveryMs = Long.MAX_VALUE;
+        private SyncPolicy syncPolicy = SyncPolicy.NEVER;
+        private boolean append;
+        private Scheduler scheduler;
+        private int writeBehindBuffers;
+
+        WriterBuilder(Func1<Integer, File> fileFactory) {
+            this.fileFactory = fileFactory;
+        }
+
+        /**
+         * Sets the size of the buffer that small arrays are coalesced into
+         * before being written. Arrays larger than the buffer are written
+         * directly.
+         * 
+         * @param bufferSize
+         *            coalescing buffer size in bytes
+         * @return this
+         */
+        public WriterBuilder bufferSize(int bufferSize) {
+            Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Closes the current file and starts a new one once the current file
+         * has at least {@code bytes} bytes written to it. Arrays are never
+         * split across files.
+         * 
+         * @param bytes
+         *            size at which the file is rolled over
+         * @return this
+         */
+        public WriterBuilder rolloverSizeBytes(long bytes) {
+            Preconditions.checkArgument(bytes > 0, "bytes must be greater than 0");
+            this.rolloverSizeBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Closes the current file before the next write once it has been open
+         * for at least the given duration (measured by the write behind
+         * scheduler if set otherwise by {@link Schedulers#computation()}).
+         * 
+         * @param duration
+         *            maximum age of a file
+         * @param unit
+         *            unit of duration
+         * @return this
+         */
+        public WriterBuilder rolloverEvery(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration > 0, "duration must be greater than 0");
+            this.rolloverEveryMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public WriterBuilder syncPolicy(SyncPolicy syncPolicy) {
+            Preconditions.checkNotNull(syncPolicy);
+            this.syncPolicy = syncPolicy;
+            return this;
+        }
+
+        public WriterBuilder append(boolean append) {
+            this.append = append;
+            return this;
+        }
+
+        /**
+         * Performs writes on a worker of the given scheduler so that the
+         * source is not blocked by disk writes. At most {@code maxBuffered}
+         * arrays are requested from the source ahead of being written.
+         * 
+         * @param scheduler
+         *            scheduler to write on
+         * @param maxBuffered
+         *            maximum number of arrays waiting to be written
+         * @return this
+         */
+        public WriterBuilder writeBehind(Scheduler scheduler, int maxBuffered) {
+            Preconditions.checkNotNull(scheduler);
+            Preconditions.checkArgument(maxBuffered > 0, "maxBuffered must be greater than 0");
+            this.scheduler = scheduler;
+            this.writeBehindBuffers = maxBuffered;
+            return this;
+        }
+
+        public WriterBuilder writeBehind() {
+            return writeBehind(Schedulers.io(), 16);
+        }
+
+        /**
+         * Returns a transformer that writes the source arrays and emits each
+         * file after it has been closed. Unsubscribing before completion
+         * closes the current file without writing any buffered bytes.
+         * 
+         * @return file writing transformer
+         */
+        public Transformer<byte[], File> build() {
+            final Scheduler s = scheduler;
+            final int buffers = writeBehindBuffers;
+            final OperatorFileSink sink = new OperatorFileSink(fileFactory, bufferSize,
+                    rolloverSizeBytes, rolloverEveryMs, syncPolicy, append,
+                    s == null ? Schedulers.computation() : s);
+            return new Transformer<byte[], File>() {
+                @Override
+                public Observable<File> call(Observable<byte[]> source) {
+                    if (s != null) {
+                        source = source.observeOn(s, buffers);
+                    }
+                    return source.lift(sink);
+                }
+            };
+        }
+    }
+
+    private static final int DEFAULT_COMPRESSION_BUFFER_SIZE = 8192;
+
+    private static void checkCompressionArguments(int level, int bufferSize) {
+        Preconditions.checkArgument(
+                level == Deflater.DEFAULT_COMPRESSION
+                        || level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION,
+                "invalid compression level " + level);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+    }
+
 }
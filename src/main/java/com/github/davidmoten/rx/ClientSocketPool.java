@@ -0,0 +1,416 @@
+package com.github.davidmoten.rx;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * A bounded pool of client socket connections to one host and port for
+ * request/response exchanges. Connections are leased for the duration of an
+ * exchange (via a {@link ResourceManager}) and returned to the pool for reuse
+ * when the exchange completes normally, so that each exchange does not pay for
+ * a TCP handshake. Connections idle in the pool for longer than the idle
+ * timeout are closed. The server may close a connection while it is idle in
+ * the pool so an exchange on a reused connection that fails before any
+ * response bytes arrive is retried once on a new connection. Create instances
+ * with {@link IO#clientSocket(String, int)}.
+ */
+public final class ClientSocketPool implements Closeable {
+
+    private final String host;
+    private final int port;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final long leaseTimeoutMs;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int bufferSize;
+    private final Scheduler scheduler;
+    private final Worker evictionWorker;
+    private final ResourceManager<Connection> connections;
+    // leases only new connections, used to retry on a stale connection
+    private final ResourceManager<Connection> newConnections;
+
+    // most recently used connection is at the head, guarded by this
+    private final Deque<Connection> idle = new ArrayDeque<Connection>();
+    private int size;
+    private boolean closed;
+
+    ClientSocketPool(String host, int port, int maxSize, long idleTimeoutMs,
+            long leaseTimeoutMs, int connectTimeoutMs, int readTimeoutMs, int bufferSize,
+            Scheduler scheduler) {
+        this.host = host;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leaseTimeoutMs = leaseTimeoutMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.bufferSize = bufferSize;
+        this.scheduler = scheduler;
+        this.connections = resourceManager(true);
+        this.newConnections = resourceManager(false);
+        this.evictionWorker = scheduler.createWorker();
+        evictionWorker.schedulePeriodically(new Action0() {
+            @Override
+            public void call() {
+                evictIdle();
+            }
+        }, idleTimeoutMs, idleTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private ResourceManager<Connection> resourceManager(final boolean allowIdle) {
+        return ResourceManager //
+                .resourceFactory(new Func0<Connection>() {
+                    @Override
+                    public Connection call() {
+                        return lease(allowIdle);
+                    }
+                }) //
+                .disposeEagerly(true) //
+                .disposeAction(new Action1<Connection>() {
+                    @Override
+                    public void call(Connection connection) {
+                        release(connection);
+                    }
+                });
+    }
+
+    /**
+     * Returns a stream that leases a connection, writes {@code request} to it
+     * (flushing once after the last array) and then emits the stream
+     * returned by {@code response} given the bytes read from the connection.
+     * The response stream must consume exactly the bytes the server sends for
+     * the request (for example using {@link Bytes#frameByLength(int, int)}
+     * then {@code first()}) and should not read again once it has what it
+     * needs. If the response stream completes then the connection is returned
+     * to the pool, otherwise (error, early unsubscribe or end of stream from
+     * the server) the connection is closed. If the exchange fails on a
+     * connection reused from the pool before any response bytes are read
+     * (typically because the server closed the idle connection) then it is
+     * retried once on a new connection, subscribing to {@code request} again,
+     * so the request should be safe to send twice. The exchange runs on a
+     * worker of the pool's scheduler.
+     *
+     * @param request
+     *            bytes to send
+     * @param response
+     *            maps the bytes read from the connection to the response
+     * @param <R>
+     *            response type
+     * @return response stream
+     */
+    public <R> Observable<R> exchange(final Observable<byte[]> request,
+            final Func1<? super Observable<byte[]>, ? extends Observable<? extends R>> response) {
+        return exchange(connections, request, response) //
+                .onErrorResumeNext(new Func1<Throwable, Observable<R>>() {
+                    @Override
+                    public Observable<R> call(Throwable e) {
+                        if (e instanceof StaleConnectionException) {
+                            return exchange(newConnections, request, response);
+                        } else {
+                            return Observable.error(e);
+                        }
+                    }
+                }) //
+                .subscribeOn(scheduler);
+    }
+
+    private <R> Observable<R> exchange(ResourceManager<Connection> manager,
+            final Observable<byte[]> request,
+            final Func1<? super Observable<byte[]>, ? extends Observable<? extends R>> response) {
+        return manager.observable(new Func1<Connection, Observable<R>>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Observable<R> call(final Connection connection) {
+                Observable<R> write = (Observable<R>) (Observable<?>) request //
+                        .doOnNext(new Action1<byte[]>() {
+                            @Override
+                            public void call(byte[] bytes) {
+                                connection.write(bytes);
+                            }
+                        }) //
+                        .doOnCompleted(new Action0() {
+                            @Override
+                            public void call() {
+                                connection.flush();
+                            }
+                        }) //
+                        .ignoreElements();
+                Observable<R> read = Observable.defer(new Func0<Observable<R>>() {
+                    @Override
+                    public Observable<R> call() {
+                        return (Observable<R>) response.call(connection.inbound());
+                    }
+                }) //
+                        .doOnCompleted(new Action0() {
+                            @Override
+                            public void call() {
+                                connection.completed();
+                            }
+                        });
+                return write.concatWith(read) //
+                        .onErrorResumeNext(new Func1<Throwable, Observable<R>>() {
+                            @Override
+                            public Observable<R> call(Throwable e) {
+                                if (connection.reused && !connection.received) {
+                                    return Observable.error(new StaleConnectionException(e));
+                                } else {
+                                    return Observable.error(e);
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    /**
+     * Returns the {@link ResourceManager} that leases connections from this
+     * pool. A leased connection is always closed (not returned to the pool)
+     * when released unless it was used by
+     * {@link #exchange(Observable, Func1)}.
+     *
+     * @return connection leasing resource manager
+     */
+    public ResourceManager<Connection> connections() {
+        return connections;
+    }
+
+    /**
+     * Returns the number of open connections (leased and idle).
+     *
+     * @return number of open connections
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes idle connections and prevents further leases. Leased
+     * connections are closed when released.
+     */
+    @Override
+    public void close() {
+        evictionWorker.unsubscribe();
+        Deque<Connection> list;
+        synchronized (this) {
+            closed = true;
+            list = new ArrayDeque<Connection>(idle);
+            size -= idle.size();
+            idle.clear();
+            notifyAll();
+        }
+        for (Connection c : list) {
+            c.close();
+        }
+    }
+
+    private Connection lease(boolean allowIdle) {
+        long deadline = System.currentTimeMillis() + leaseTimeoutMs;
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("pool is closed");
+                }
+                Connection c = allowIdle ? idle.pollFirst() : null;
+                if (c != null) {
+                    c.leased(true);
+                    return c;
+                } else if (size < maxSize) {
+                    size++;
+                    break;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new IORuntimeException(new IOException(
+                            "timed out waiting for a connection from a pool of size " + maxSize));
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        // connect outside the lock
+        try {
+            Connection c = new Connection(connect(), bufferSize);
+            c.leased(false);
+            return c;
+        } catch (IOException e) {
+            synchronized (this) {
+                size--;
+                notifyAll();
+            }
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            return socket;
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private void release(Connection c) {
+        boolean reuse = c.reusable();
+        synchronized (this) {
+            if (reuse && !closed) {
+                c.idleSince = scheduler.now();
+                idle.offerFirst(c);
+            } else {
+                size--;
+            }
+            notifyAll();
+        }
+        if (!reuse || closed) {
+            c.close();
+        }
+    }
+
+    void evictIdle() {
+        long now = scheduler.now();
+        Deque<Connection> evicted = new ArrayDeque<Connection>();
+        synchronized (this) {
+            // least recently used connections are at the tail
+            Iterator<Connection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                Connection c = it.next();
+                if (now - c.idleSince >= idleTimeoutMs) {
+                    it.remove();
+                    size--;
+                    evicted.add(c);
+                } else {
+                    break;
+                }
+            }
+        }
+        for (Connection c : evicted) {
+            c.close();
+        }
+    }
+
+    /**
+     * A pooled socket connection. Used by one exchange at a time.
+     */
+    public static final class Connection {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final int bufferSize;
+        private long idleSince;
+        private boolean completed;
+        private boolean endOfStream;
+        // true if the current lease reuses the connection from the pool
+        private boolean reused;
+        // true if bytes have been read during the current lease
+        private boolean received;
+
+        Connection(Socket socket, int bufferSize) throws IOException {
+            this.socket = socket;
+            this.in = socket.getInputStream();
+            this.out = new BufferedOutputStream(socket.getOutputStream(), bufferSize);
+            this.bufferSize = bufferSize;
+        }
+
+        public Socket socket() {
+            return socket;
+        }
+
+        void leased(boolean reused) {
+            this.completed = false;
+            this.reused = reused;
+            this.received = false;
+        }
+
+        void completed() {
+            completed = true;
+        }
+
+        boolean reusable() {
+            return completed && !endOfStream && !socket.isClosed();
+        }
+
+        void write(byte[] bytes) {
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+        }
+
+        void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+        }
+
+        Observable<byte[]> inbound() {
+            return Bytes.from(in, bufferSize).doOnNext(new Action1<byte[]>() {
+                @Override
+                public void call(byte[] bytes) {
+                    received = true;
+                }
+            }).doOnCompleted(new Action0() {
+                @Override
+                public void call() {
+                    endOfStream = true;
+                }
+            });
+        }
+
+        void close() {
+            closeQuietly(socket);
+        }
+    }
+
+    private static final class StaleConnectionException extends RuntimeException {
+
+        private static final long serialVersionUID = -4262519420861435380L;
+
+        StaleConnectionException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
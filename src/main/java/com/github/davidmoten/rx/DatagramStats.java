@@ -0,0 +1,69 @@
+package com.github.davidmoten.rx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters updated by a datagram source. A datagram is counted as dropped
+ * when it was read from the socket while the downstream had no outstanding
+ * requests. Datagrams discarded by the operating system because the socket
+ * receive buffer was full are not visible to the source and are not counted.
+ * An instance passed to {@link IO.DatagramBuilder#stats(DatagramStats)} is
+ * shared by every subscription to the built stream.
+ */
+public final class DatagramStats {
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private DatagramStats() {
+    }
+
+    public static DatagramStats create() {
+        return new DatagramStats();
+    }
+
+    /**
+     * Returns the number of datagrams emitted downstream.
+     * 
+     * @return number of datagrams emitted
+     */
+    public long received() {
+        return received.get();
+    }
+
+    /**
+     * Returns the number of datagrams discarded for lack of downstream demand.
+     * 
+     * @return number of datagrams dropped
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    void addReceived(int count) {
+        received.addAndGet(count);
+        batches.incrementAndGet();
+    }
+
+    void addDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("DatagramStats [received=");
+        builder.append(received.get());
+        builder.append(", dropped=");
+        builder.append(dropped.get());
+        builder.append(", batches=");
+        builder.append(batches.get());
+        builder.append("]");
+        return builder.toString();
+    }
+}
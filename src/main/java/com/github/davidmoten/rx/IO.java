@@ -3,15 +3,25 @@ package com.github.davidmoten.rx;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.github.davidmoten.rx.exceptions.IORuntimeException;
+import com.github.davidmoten.rx.internal.operators.ObservableDatagrams;
 import com.github.davidmoten.rx.internal.operators.ObservableServerSocket;
+import com.github.davidmoten.rx.internal.operators.ObservableServerSocketNio;
+import com.github.davidmoten.rx.util.Datagram;
+import com.github.davidmoten.util.Optional;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
+import rx.Observable.Transformer;
+import rx.Scheduler;
 import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 public final class IO {
 
@@ -96,6 +106,365 @@ public final class IO {
 					acceptTimeoutMs, acceptSocket);
 		}
 
+		/**
+		 * Returns a stream that when subscribed to serves each connection by
+		 * writing the stream returned by {@code handler} (given the bytes read
+		 * from the connection) back to the connection. Arrays from the handler
+		 * that are ready together are coalesced into one write of up to
+		 * {@code bufferSize} bytes and flushed once, and at most 16 arrays wait
+		 * to be written so a full socket send buffer applies backpressure to
+		 * the handler. A connection is closed when the handler stream
+		 * terminates or the connection fails. The returned stream never emits
+		 * and unsubscribing closes the server socket.
+		 * 
+		 * @param handler
+		 *            maps the bytes read from a connection to the bytes to
+		 *            write to it
+		 * @return server stream
+		 */
+		public Observable<Void> handle(Func1<? super Observable<byte[]>, ? extends Observable<byte[]>> handler) {
+			return ObservableServerSocket.handle(serverSocketFactory, readTimeoutMs, bufferSize, preAcceptAction,
+					acceptTimeoutMs, acceptSocket, handler, 16, Schedulers.io());
+		}
+
+	}
+
+	/**
+	 * Returns a builder for a server socket that serves all connections from a
+	 * small number of event loop threads using non-blocking channels. The
+	 * created stream has the same shape as {@link ServerSocketBuilder#create()}
+	 * but connections are accepted only while there is demand and each
+	 * connection is read only while its subscriber has outstanding requests.
+	 * Each emitted connection should be subscribed to (once) so that it is
+	 * eventually closed.
+	 * 
+	 * @param port
+	 *            port to listen on
+	 * @return builder
+	 */
+	public static NioServerSocketBuilder serverSocketNio(int port) {
+		return new NioServerSocketBuilder(port, Actions.<Integer> doNothing1());
+	}
+
+	public static NioServerSocketBuilder serverSocketNioAutoAllocatePort(Action1<Integer> onAllocated) {
+		return new NioServerSocketBuilder(0, onAllocated);
+	}
+
+	public static final class NioServerSocketBuilder {
+
+		private final int port;
+		private final Action1<Integer> onBound;
+		private int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		private int bufferSize = 8192;
+		private int backlog = 1024;
+		private Scheduler scheduler = Schedulers.io();
+
+		NioServerSocketBuilder(int port, Action1<Integer> onBound) {
+			this.port = port;
+			this.onBound = onBound;
+		}
+
+		public NioServerSocketBuilder eventLoops(int eventLoops) {
+			Preconditions.checkArgument(eventLoops > 0, "eventLoops must be greater than 0");
+			this.eventLoops = eventLoops;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum size of emitted byte arrays. One read buffer of this
+		 * size is allocated per event loop (not per connection).
+		 * 
+		 * @param bufferSize
+		 *            maximum size of emitted arrays
+		 * @return this
+		 */
+		public NioServerSocketBuilder bufferSize(int bufferSize) {
+			Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		public NioServerSocketBuilder backlog(int backlog) {
+			this.backlog = backlog;
+			return this;
+		}
+
+		/**
+		 * Sets the scheduler that the event loops run on. Each event loop
+		 * occupies a worker of the scheduler for as long as the server socket or
+		 * any of its connections are open.
+		 * 
+		 * @param scheduler
+		 *            scheduler for the event loops
+		 * @return this
+		 */
+		public NioServerSocketBuilder scheduler(Scheduler scheduler) {
+			Preconditions.checkNotNull(scheduler);
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		public Observable<Observable<byte[]>> create() {
+			return ObservableServerSocketNio.create(port, backlog, eventLoops, bufferSize, scheduler, onBound);
+		}
+
+	}
+
+	/**
+	 * Returns a builder for a stream of batches of datagrams received on the
+	 * given UDP port. Each emitted list holds the datagrams that were waiting
+	 * when the socket was polled (up to the maximum batch size) and each
+	 * datagram must be released after use so its buffer can be reused. Use
+	 * {@link #flattenDatagrams()} to process datagrams one at a time.
+	 * 
+	 * @param port
+	 *            port to listen on
+	 * @return builder
+	 */
+	public static DatagramBuilder datagrams(int port) {
+		return new DatagramBuilder(port, Actions.<Integer> doNothing1());
+	}
+
+	public static DatagramBuilder datagramsAutoAllocatePort(Action1<Integer> onAllocated) {
+		return new DatagramBuilder(0, onAllocated);
+	}
+
+	/**
+	 * Returns a transformer that emits the datagrams of each batch singly.
+	 * 
+	 * @return flattening transformer
+	 */
+	public static Transformer<List<Datagram>, Datagram> flattenDatagrams() {
+		return new Transformer<List<Datagram>, Datagram>() {
+			@Override
+			public Observable<Datagram> call(Observable<List<Datagram>> o) {
+				return o.concatMapIterable(Functions.<List<Datagram>> identity());
+			}
+		};
+	}
+
+	public static final class DatagramBuilder {
+
+		private final int port;
+		private final Action1<Integer> onBound;
+		private int bufferSize = 65536;
+		private int maxBatch = 64;
+		private int receiveBufferSize = 0;
+		private int poolSize = 1024;
+		private Optional<DatagramStats> stats = Optional.absent();
+		private Scheduler scheduler = Schedulers.io();
+
+		DatagramBuilder(int port, Action1<Integer> onBound) {
+			this.port = port;
+			this.onBound = onBound;
+		}
+
+		/**
+		 * Sets the maximum datagram size. Longer datagrams are truncated.
+		 * 
+		 * @param bufferSize
+		 *            size of the pooled buffers
+		 * @return this
+		 */
+		public DatagramBuilder bufferSize(int bufferSize) {
+			Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of datagrams emitted in one list.
+		 * 
+		 * @param maxBatch
+		 *            maximum batch size
+		 * @return this
+		 */
+		public DatagramBuilder maxBatch(int maxBatch) {
+			Preconditions.checkArgument(maxBatch > 0, "maxBatch must be greater than 0");
+			this.maxBatch = maxBatch;
+			return this;
+		}
+
+		/**
+		 * Sets the socket receive buffer size ({@code SO_RCVBUF}) which
+		 * determines how many datagrams the operating system holds while the
+		 * stream is busy. The default is the operating system default.
+		 * 
+		 * @param receiveBufferSize
+		 *            receive buffer size in bytes
+		 * @return this
+		 */
+		public DatagramBuilder receiveBufferSize(int receiveBufferSize) {
+			Preconditions.checkArgument(receiveBufferSize > 0, "receiveBufferSize must be greater than 0");
+			this.receiveBufferSize = receiveBufferSize;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of released buffers retained for reuse.
+		 * 
+		 * @param poolSize
+		 *            maximum number of pooled buffers
+		 * @return this
+		 */
+		public DatagramBuilder poolSize(int poolSize) {
+			Preconditions.checkArgument(poolSize > 0, "poolSize must be greater than 0");
+			this.poolSize = poolSize;
+			return this;
+		}
+
+		/**
+		 * Sets the counters updated with the number of datagrams emitted and
+		 * dropped for lack of demand. The same counters are updated by every
+		 * subscription to the built stream so use new counters per
+		 * subscription if the counts of one subscription are wanted. By
+		 * default no counts are kept.
+		 * 
+		 * @param stats
+		 *            counters
+		 * @return this
+		 */
+		public DatagramBuilder stats(DatagramStats stats) {
+			Preconditions.checkNotNull(stats);
+			this.stats = Optional.of(stats);
+			return this;
+		}
+
+		/**
+		 * Sets the scheduler a worker of which is occupied receiving datagrams
+		 * while the stream is subscribed. Emissions happen on that worker.
+		 * 
+		 * @param scheduler
+		 *            scheduler
+		 * @return this
+		 */
+		public DatagramBuilder scheduler(Scheduler scheduler) {
+			Preconditions.checkNotNull(scheduler);
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		public Observable<List<Datagram>> create() {
+			return ObservableDatagrams.create(port, bufferSize, maxBatch, receiveBufferSize, poolSize,
+					stats.isPresent() ? toStats(stats.get()) : ObservableDatagrams.NO_STATS, scheduler, onBound);
+		}
+
+		private static ObservableDatagrams.Stats toStats(final DatagramStats stats) {
+			return new ObservableDatagrams.Stats() {
+
+				@Override
+				public void received(int count) {
+					stats.addReceived(count);
+				}
+
+				@Override
+				public void dropped(int count) {
+					stats.addDropped(count);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Returns a builder for a bounded pool of connections to the given host
+	 * and port used for request/response exchanges (see
+	 * {@link ClientSocketPool#exchange(Observable, Func1)}).
+	 * 
+	 * @param host
+	 *            host to connect to
+	 * @param port
+	 *            port to connect to
+	 * @return builder
+	 */
+	public static ClientSocketBuilder clientSocket(String host, int port) {
+		Preconditions.checkNotNull(host);
+		return new ClientSocketBuilder(host, port);
+	}
+
+	public static final class ClientSocketBuilder {
+
+		private final String host;
+		private final int port;
+		private int maxSize = 8;
+		private long idleTimeoutMs = TimeUnit.SECONDS.toMillis(60);
+		private long leaseTimeoutMs = TimeUnit.SECONDS.toMillis(30);
+		private int connectTimeoutMs = 10000;
+		private int readTimeoutMs = 0;
+		private int bufferSize = 8192;
+		private Scheduler scheduler = Schedulers.io();
+
+		ClientSocketBuilder(String host, int port) {
+			this.host = host;
+			this.port = port;
+		}
+
+		/**
+		 * Sets the maximum number of open connections (leased and idle). A
+		 * lease waits for a connection to be released once the maximum is
+		 * reached.
+		 * 
+		 * @param maxSize
+		 *            maximum number of connections
+		 * @return this
+		 */
+		public ClientSocketBuilder maxSize(int maxSize) {
+			Preconditions.checkArgument(maxSize > 0, "maxSize must be greater than 0");
+			this.maxSize = maxSize;
+			return this;
+		}
+
+		public ClientSocketBuilder idleTimeout(long duration, TimeUnit unit) {
+			Preconditions.checkArgument(duration > 0, "duration must be greater than 0");
+			this.idleTimeoutMs = unit.toMillis(duration);
+			return this;
+		}
+
+		public ClientSocketBuilder leaseTimeout(long duration, TimeUnit unit) {
+			this.leaseTimeoutMs = unit.toMillis(duration);
+			return this;
+		}
+
+		public ClientSocketBuilder connectTimeoutMs(int connectTimeoutMs) {
+			this.connectTimeoutMs = connectTimeoutMs;
+			return this;
+		}
+
+		/**
+		 * Sets the socket read timeout (0 means no timeout).
+		 * 
+		 * @param readTimeoutMs
+		 *            read timeout in milliseconds
+		 * @return this
+		 */
+		public ClientSocketBuilder readTimeoutMs(int readTimeoutMs) {
+			this.readTimeoutMs = readTimeoutMs;
+			return this;
+		}
+
+		public ClientSocketBuilder bufferSize(int bufferSize) {
+			Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+			this.bufferSize = bufferSize;
+			return this;
+		}
+
+		/**
+		 * Sets the scheduler that exchanges run on and that idle connections
+		 * are evicted on.
+		 * 
+		 * @param scheduler
+		 *            scheduler
+		 * @return this
+		 */
+		public ClientSocketBuilder scheduler(Scheduler scheduler) {
+			Preconditions.checkNotNull(scheduler);
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		public ClientSocketPool create() {
+			return new ClientSocketPool(host, port, maxSize, idleTimeoutMs, leaseTimeoutMs, connectTimeoutMs,
+					readTimeoutMs, bufferSize, scheduler);
+		}
 	}
 
 }
\ No newline at end of file
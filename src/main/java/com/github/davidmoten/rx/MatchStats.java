@@ -0,0 +1,70 @@
+package com.github.davidmoten.rx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters updated by a match. Pending counts are the number of unmatched
+ * items currently retained for each side and are refreshed after each batch
+ * of items is processed. An item is counted as evicted when it is discarded
+ * unmatched because of the retention limit or because its time-to-live
+ * expired. An instance passed to {@link Obs.MatchBuilder#stats(MatchStats)}
+ * is shared by every subscription to the built stream.
+ */
+public final class MatchStats {
+
+    private final AtomicLong pendingA = new AtomicLong();
+    private final AtomicLong pendingB = new AtomicLong();
+    private final AtomicLong evictedA = new AtomicLong();
+    private final AtomicLong evictedB = new AtomicLong();
+
+    private MatchStats() {
+    }
+
+    public static MatchStats create() {
+        return new MatchStats();
+    }
+
+    public long pendingA() {
+        return pendingA.get();
+    }
+
+    public long pendingB() {
+        return pendingB.get();
+    }
+
+    public long evictedA() {
+        return evictedA.get();
+    }
+
+    public long evictedB() {
+        return evictedB.get();
+    }
+
+    void setPending(long a, long b) {
+        pendingA.lazySet(a);
+        pendingB.lazySet(b);
+    }
+
+    void addEvictedA(int count) {
+        evictedA.addAndGet(count);
+    }
+
+    void addEvictedB(int count) {
+        evictedB.addAndGet(count);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("MatchStats [pendingA=");
+        builder.append(pendingA.get());
+        builder.append(", pendingB=");
+        builder.append(pendingB.get());
+        builder.append(", evictedA=");
+        builder.append(evictedA.get());
+        builder.append(", evictedB=");
+        builder.append(evictedB.get());
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -12,17 +12,22 @@ import java.util.concurrent.atomic.AtomicReference;
 import com.github.davidmoten.rx.internal.operators.ObservableReverse;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeFromQueue;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeMatch;
+import com.github.davidmoten.rx.internal.operators.OnSubscribeMergeJoin;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeRepeating;
 import com.github.davidmoten.rx.internal.operators.OrderedMerge;
 import com.github.davidmoten.rx.internal.operators.Permutations;
 import com.github.davidmoten.rx.internal.operators.Permutations.Swap;
 import com.github.davidmoten.rx.observables.CachedObservable;
+import com.github.davidmoten.rx.util.JoinType;
+import com.github.davidmoten.rx.util.MatchEvictionPolicy;
 import com.github.davidmoten.util.Optional;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Scheduler;
 import rx.Scheduler.Worker;
 import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
@@ -273,6 +278,251 @@ public final class Obs {
                 .create(new OnSubscribeMatch<A, B, K, C>(a, b, aKey, bKey, combiner, requestSize));
     }
 
+    /**
+     * Returns a builder for a match of {@code a} and {@code b} (see
+     * {@link #match(Observable, Observable, Func1, Func1, Func2)}) whose
+     * unmatched items can be bounded in number and in age so that keys that
+     * never match don't accumulate without limit.
+     * 
+     * @param a
+     *            first source
+     * @param b
+     *            second source
+     * @param aKey
+     *            key of an item from {@code a}
+     * @param bKey
+     *            key of an item from {@code b}
+     * @param combiner
+     *            combines matched items
+     * @param <A>
+     *            type of items from {@code a}
+     * @param <B>
+     *            type of items from {@code b}
+     * @param <K>
+     *            key type
+     * @param <C>
+     *            result type
+     * @return builder
+     */
+    public static <A, B, K, C> MatchBuilder<A, B, K, C> matchBuilder(final Observable<A> a,
+            final Observable<B> b, final Func1<? super A, ? extends K> aKey,
+            final Func1<? super B, ? extends K> bKey,
+            final Func2<? super A, ? super B, C> combiner) {
+        return new MatchBuilder<A, B, K, C>(a, b, aKey, bKey, combiner);
+    }
+
+    public static final class MatchBuilder<A, B, K, C> {
+
+        private final Observable<A> a;
+        private final Observable<B> b;
+        private final Func1<? super A, ? extends K> aKey;
+        private final Func1<? super B, ? extends K> bKey;
+        private final Func2<? super A, ? super B, C> combiner;
+        private long requestSize = 128;
+        private int maxRetained = Integer.MAX_VALUE;
+        private MatchEvictionPolicy evictionPolicy = MatchEvictionPolicy.ERROR;
+        private long ttlMs = OnSubscribeMatch.NO_TTL;
+        private Scheduler scheduler = Schedulers.computation();
+        private Action1<? super A> onEvictA = Actions.doNothing1();
+        private Action1<? super B> onEvictB = Actions.doNothing1();
+        private Optional<MatchStats> stats = Optional.absent();
+
+        private MatchBuilder(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
+                Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner) {
+            this.a = a;
+            this.b = b;
+            this.aKey = aKey;
+            this.bKey = bKey;
+            this.combiner = combiner;
+        }
+
+        public MatchBuilder<A, B, K, C> requestSize(long requestSize) {
+            this.requestSize = requestSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of unmatched items retained for each side
+         * and what happens when an item arrives for a side that is full.
+         * 
+         * @param maxRetained
+         *            maximum number of unmatched items per side
+         * @param evictionPolicy
+         *            applied when a side is full
+         * @return this
+         */
+        public MatchBuilder<A, B, K, C> maxRetained(int maxRetained,
+                MatchEvictionPolicy evictionPolicy) {
+            Preconditions.checkArgument(maxRetained >= 1, "maxRetained must be >=1");
+            Preconditions.checkNotNull(evictionPolicy);
+            this.maxRetained = maxRetained;
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the time after arrival at which an unmatched item is evicted.
+         * Expiry is checked as items arrive and by a timer with a period of
+         * {@code duration} on the scheduler (computation by default) so an
+         * item is evicted no later than twice its time-to-live after arrival
+         * while the downstream has outstanding requests.
+         * 
+         * @param duration
+         *            time-to-live of an unmatched item
+         * @param unit
+         *            unit of {@code duration}
+         * @return this
+         */
+        public MatchBuilder<A, B, K, C> ttl(long duration, TimeUnit unit) {
+            long ms = unit.toMillis(duration);
+            Preconditions.checkArgument(ms > 0, "ttl must be at least 1ms");
+            this.ttlMs = ms;
+            return this;
+        }
+
+        public MatchBuilder<A, B, K, C> ttl(long duration, TimeUnit unit, Scheduler scheduler) {
+            Preconditions.checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return ttl(duration, unit);
+        }
+
+        /**
+         * Sets the action called with each item from {@code a} that is evicted
+         * unmatched. The action is called serially with the emissions of the
+         * match and an exception thrown by it terminates the stream.
+         * 
+         * @param onEvictA
+         *            called with evicted items from {@code a}
+         * @return this
+         */
+        public MatchBuilder<A, B, K, C> onEvictA(Action1<? super A> onEvictA) {
+            Preconditions.checkNotNull(onEvictA);
+            this.onEvictA = onEvictA;
+            return this;
+        }
+
+        public MatchBuilder<A, B, K, C> onEvictB(Action1<? super B> onEvictB) {
+            Preconditions.checkNotNull(onEvictB);
+            this.onEvictB = onEvictB;
+            return this;
+        }
+
+        /**
+         * Sets the counters updated by the match. The same counters are
+         * updated by every subscription to the built stream so use new
+         * counters per subscription if the counts of one subscription are
+         * wanted. By default no counts are kept.
+         * 
+         * @param stats
+         *            counters to update
+         * @return this
+         */
+        public MatchBuilder<A, B, K, C> stats(MatchStats stats) {
+            Preconditions.checkNotNull(stats);
+            this.stats = Optional.of(stats);
+            return this;
+        }
+
+        public Observable<C> create() {
+            return Observable.create(new OnSubscribeMatch<A, B, K, C>(a, b, aKey, bKey, combiner,
+                    requestSize, maxRetained, evictionPolicy, ttlMs, scheduler, onEvictA, onEvictB,
+                    stats.isPresent() ? toStats(stats.get()) : OnSubscribeMatch.NO_STATS));
+        }
+
+        private static OnSubscribeMatch.Stats toStats(final MatchStats stats) {
+            return new OnSubscribeMatch.Stats() {
+
+                @Override
+                public void pending(long a, long b) {
+                    stats.setPending(a, b);
+                }
+
+                @Override
+                public void evictedA() {
+                    stats.addEvictedA(1);
+                }
+
+                @Override
+                public void evictedB() {
+                    stats.addEvictedB(1);
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the inner join of {@code a} and {@code b}, both of which must be
+     * sorted by key in ascending order according to {@code comparator}. Unlike
+     * {@link #match(Observable, Observable, Func1, Func1, Func2)} no unmatched
+     * items are retained: the join advances whichever source has the smaller
+     * key and holds in memory only the items of {@code b} with the current
+     * key. Each item of {@code a} is combined with every item of {@code b}
+     * with an equal key.
+     * 
+     * @param a
+     *            first source, sorted by key
+     * @param b
+     *            second source, sorted by key
+     * @param aKey
+     *            key of an item from {@code a}
+     * @param bKey
+     *            key of an item from {@code b}
+     * @param comparator
+     *            orders keys
+     * @param combiner
+     *            combines matched items
+     * @param <A>
+     *            type of items from {@code a}
+     * @param <B>
+     *            type of items from {@code b}
+     * @param <K>
+     *            key type
+     * @param <C>
+     *            result type
+     * @return joined stream in key order
+     */
+    public static <A, B, K, C> Observable<C> mergeJoin(Observable<A> a, Observable<B> b,
+            Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+            Comparator<? super K> comparator, Func2<? super A, ? super B, C> combiner) {
+        return mergeJoin(a, b, aKey, bKey, comparator, combiner, JoinType.INNER, 128);
+    }
+
+    /**
+     * As {@link #mergeJoin(Observable, Observable, Func1, Func1, Comparator, Func2)}
+     * but also emits each item of {@code a} without a match, combined with
+     * {@code null}.
+     */
+    public static <A, B, K, C> Observable<C> mergeLeftJoin(Observable<A> a, Observable<B> b,
+            Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+            Comparator<? super K> comparator, Func2<? super A, ? super B, C> combiner) {
+        return mergeJoin(a, b, aKey, bKey, comparator, combiner, JoinType.LEFT, 128);
+    }
+
+    /**
+     * As {@link #mergeJoin(Observable, Observable, Func1, Func1, Comparator, Func2)}
+     * but also emits each item of either source without a match, combined
+     * with {@code null}.
+     */
+    public static <A, B, K, C> Observable<C> mergeFullOuterJoin(Observable<A> a,
+            Observable<B> b, Func1<? super A, ? extends K> aKey,
+            Func1<? super B, ? extends K> bKey, Comparator<? super K> comparator,
+            Func2<? super A, ? super B, C> combiner) {
+        return mergeJoin(a, b, aKey, bKey, comparator, combiner, JoinType.FULL_OUTER, 128);
+    }
+
+    /**
+     * Merge join of sources sorted by key (see
+     * {@link #mergeJoin(Observable, Observable, Func1, Func1, Comparator, Func2)})
+     * that requests {@code requestSize} items at a time from each source.
+     */
+    public static <A, B, K, C> Observable<C> mergeJoin(Observable<A> a, Observable<B> b,
+            Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+            Comparator<? super K> comparator, Func2<? super A, ? super B, C> combiner,
+            JoinType joinType, int requestSize) {
+        return Observable.create(new OnSubscribeMergeJoin<A, B, K, C>(a, b, aKey, bKey,
+                comparator, combiner, joinType, requestSize));
+    }
+
     public static <T> Observable<T> reverse(Observable<T> source) {
         return ObservableReverse.reverse(source);
     }
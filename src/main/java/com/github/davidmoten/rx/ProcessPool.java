@@ -0,0 +1,356 @@
+package com.github.davidmoten.rx;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.davidmoten.rx.Processes.Parameters;
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Observable.Transformer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * A bounded pool of long-lived worker processes all started with the same
+ * {@link Parameters}. Each request is written to the stdin of an idle worker
+ * and the response is the next frame read from that worker's stdout, so a
+ * process is started once rather than once per request. A worker handles one
+ * request at a time. A worker that exits (or closes stdout) fails its current
+ * request and is replaced by a new process when next needed. A worker whose
+ * request times out or is unsubscribed from before the response arrives is
+ * destroyed because its next output can no longer be matched to a request.
+ * The stderr of all workers is emitted by {@link #stderr()}. Create instances
+ * with {@link Processes#pool(Parameters)}.
+ */
+public final class ProcessPool implements Closeable {
+
+    private final Parameters parameters;
+    private final int maxSize;
+    private final long requestTimeoutMs;
+    private final long leaseTimeoutMs;
+    private final int bufferSize;
+    private final Transformer<byte[], byte[]> responseFraming;
+    private final Scheduler scheduler;
+    private final Worker timeoutWorker;
+    private final Subject<byte[], byte[]> stderr = new SerializedSubject<byte[], byte[]>(
+            PublishSubject.<byte[]> create());
+
+    // guarded by this
+    private final Deque<WorkerProcess> idle = new ArrayDeque<WorkerProcess>();
+    private final List<WorkerProcess> all = new ArrayList<WorkerProcess>();
+    private int size;
+    private boolean closed;
+
+    ProcessPool(Parameters parameters, int maxSize, long requestTimeoutMs, long leaseTimeoutMs,
+            int bufferSize, Transformer<byte[], byte[]> responseFraming, Scheduler scheduler) {
+        this.parameters = parameters;
+        this.maxSize = maxSize;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.leaseTimeoutMs = leaseTimeoutMs;
+        this.bufferSize = bufferSize;
+        this.responseFraming = responseFraming;
+        this.scheduler = scheduler;
+        this.timeoutWorker = scheduler.createWorker();
+    }
+
+    /**
+     * Returns a stream that writes {@code request} to the stdin of an idle
+     * worker (starting one if fewer than the maximum are running) and emits
+     * the next response frame from the worker's stdout then completes. The
+     * request must include whatever framing the external tool expects (for
+     * example a trailing newline). Leasing a worker and writing the request
+     * happen on a worker of the pool's scheduler.
+     *
+     * @param request
+     *            bytes to write to stdin
+     * @return the single response frame
+     */
+    public Observable<byte[]> submit(final byte[] request) {
+        return Observable.create(new OnSubscribe<byte[]>() {
+            @Override
+            public void call(Subscriber<? super byte[]> child) {
+                WorkerProcess w;
+                try {
+                    w = lease();
+                } catch (RuntimeException e) {
+                    child.onError(e);
+                    return;
+                }
+                w.submit(request, child);
+            }
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * Returns the stderr output of all workers. The stream is hot: output
+     * written while there are no subscribers is discarded and subscribers
+     * that cannot keep up should apply a backpressure strategy.
+     *
+     * @return stderr of the workers
+     */
+    public Observable<byte[]> stderr() {
+        return stderr.asObservable();
+    }
+
+    /**
+     * Returns the number of running worker processes (busy and idle).
+     *
+     * @return number of worker processes
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Destroys all worker processes (failing in-flight requests) and prevents
+     * further requests.
+     */
+    @Override
+    public void close() {
+        List<WorkerProcess> list;
+        synchronized (this) {
+            closed = true;
+            list = new ArrayList<WorkerProcess>(all);
+            notifyAll();
+        }
+        for (WorkerProcess w : list) {
+            w.died(new IOException("pool closed"));
+        }
+        timeoutWorker.unsubscribe();
+        stderr.onCompleted();
+    }
+
+    private WorkerProcess lease() {
+        long deadline = System.currentTimeMillis() + leaseTimeoutMs;
+        synchronized (this) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("pool is closed");
+                }
+                WorkerProcess w = idle.pollFirst();
+                if (w != null) {
+                    return w;
+                } else if (size < maxSize) {
+                    size++;
+                    break;
+                }
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new IORuntimeException(new IOException(
+                            "timed out waiting for a worker from a pool of size " + maxSize));
+                }
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        // start the process outside the lock
+        try {
+            WorkerProcess w = new WorkerProcess(Processes.start(parameters, false));
+            boolean closedMeanwhile;
+            synchronized (this) {
+                all.add(w);
+                closedMeanwhile = closed;
+            }
+            if (closedMeanwhile) {
+                w.destroy();
+                throw new IllegalStateException("pool is closed");
+            }
+            w.start();
+            return w;
+        } catch (IOException e) {
+            synchronized (this) {
+                size--;
+                notifyAll();
+            }
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private void release(WorkerProcess w) {
+        synchronized (this) {
+            if (w.destroyed.get()) {
+                return;
+            } else if (!closed) {
+                idle.offerFirst(w);
+                notifyAll();
+                return;
+            }
+        }
+        w.destroy();
+    }
+
+    private synchronized void removed(WorkerProcess w) {
+        if (all.remove(w)) {
+            idle.remove(w);
+            size--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A request awaiting its response.
+     */
+    private static final class Request {
+
+        final Subscriber<? super byte[]> child;
+        final AtomicBoolean done = new AtomicBoolean();
+        volatile Subscription timeout = Subscriptions.unsubscribed();
+
+        Request(Subscriber<? super byte[]> child) {
+            this.child = child;
+        }
+
+        boolean finish() {
+            if (done.compareAndSet(false, true)) {
+                timeout.unsubscribe();
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private final class WorkerProcess {
+
+        private final Process process;
+        private final OutputStream stdin;
+        private final AtomicReference<Request> current = new AtomicReference<Request>();
+        private final AtomicBoolean destroyed = new AtomicBoolean();
+        private volatile Subscription output = Subscriptions.unsubscribed();
+        private volatile Subscription errors = Subscriptions.unsubscribed();
+
+        WorkerProcess(Process process) {
+            this.process = process;
+            this.stdin = process.getOutputStream();
+        }
+
+        void start() {
+            output = Bytes.from(process.getInputStream(), bufferSize) //
+                    .compose(responseFraming) //
+                    .subscribeOn(scheduler) //
+                    .subscribe(new Subscriber<byte[]>() {
+
+                        @Override
+                        public void onNext(byte[] frame) {
+                            response(frame);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            died(new IOException("worker process closed stdout"));
+                        }
+
+                        @Override
+                        public void onError(Throwable e) {
+                            died(e);
+                        }
+                    });
+            errors = Bytes.from(process.getErrorStream(), bufferSize) //
+                    .subscribeOn(scheduler) //
+                    .subscribe(new Subscriber<byte[]>() {
+
+                        @Override
+                        public void onNext(byte[] bytes) {
+                            stderr.onNext(bytes);
+                        }
+
+                        @Override
+                        public void onCompleted() {
+                            // the end of the process is handled by stdout
+                        }
+
+                        @Override
+                        public void onError(Throwable e) {
+                            // the end of the process is handled by stdout
+                        }
+                    });
+        }
+
+        void submit(byte[] request, Subscriber<? super byte[]> child) {
+            final Request r = new Request(child);
+            current.set(r);
+            child.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    // unsubscribed before the response arrived
+                    if (current.compareAndSet(r, null) && r.finish()) {
+                        destroy();
+                    }
+                }
+            }));
+            r.timeout = timeoutWorker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    if (current.compareAndSet(r, null) && r.finish()) {
+                        destroy();
+                        r.child.onError(new TimeoutException(
+                                "no response from worker process within " + requestTimeoutMs
+                                        + "ms"));
+                    }
+                }
+            }, requestTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                stdin.write(request);
+                stdin.flush();
+            } catch (IOException e) {
+                died(e);
+            }
+        }
+
+        private void response(byte[] frame) {
+            Request r = current.getAndSet(null);
+            if (r == null) {
+                // output that does not belong to a request
+                destroy();
+            } else if (r.finish()) {
+                release(this);
+                r.child.onNext(frame);
+                r.child.onCompleted();
+            }
+        }
+
+        void died(Throwable e) {
+            destroy();
+            Request r = current.getAndSet(null);
+            if (r != null && r.finish()) {
+                r.child.onError(e instanceof IOException
+                        ? new IORuntimeException((IOException) e) : e);
+            }
+        }
+
+        void destroy() {
+            if (destroyed.compareAndSet(false, true)) {
+                removed(this);
+                output.unsubscribe();
+                errors.unsubscribe();
+                process.destroy();
+            }
+        }
+    }
+
+}
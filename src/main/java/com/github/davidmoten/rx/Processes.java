@@ -1,21 +1,36 @@
 package com.github.davidmoten.rx;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+import com.github.davidmoten.rx.internal.operators.OperatorCoalescingWrite;
 import com.github.davidmoten.util.Optional;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
+import rx.Observable.Transformer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
 import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.SerializedSubject;
+import rx.subjects.Subject;
 
 public final class Processes {
 
@@ -40,16 +55,8 @@ public final class Processes {
 
             @Override
             public Process call() {
-                ProcessBuilder b = new ProcessBuilder(parameters.command());
-                if (parameters.env().isPresent()) {
-                    if (parameters.appendEnv())
-                        b.environment().clear();
-                    b.environment().putAll(parameters.env().get());
-                }
-                b.directory(parameters.directory());
-                b.redirectErrorStream(true);
                 try {
-                    return b.start();
+                    return start(parameters, true);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -65,35 +72,8 @@ public final class Processes {
                     output = Bytes.from(is);
                 else
                     output = Observable.empty();
-                Observable<byte[]> completion = Observable.create(new OnSubscribe<byte[]>() {
-                    @Override
-                    public void call(Subscriber<? super byte[]> sub) {
-                        try {
-                            // TODO waitFor does not exist pre 1.8 with timeout!
-                            // parameters.waitForMs().get(),TimeUnit.MILLISECONDS);
-
-                            if (parameters.waitForMs().isPresent()) {
-                                // boolean finished = process.waitFor(
-                                // parameters.waitForMs().get(),
-                                // TimeUnit.MILLISECONDS);
-                                // if (!finished) {
-                                // sub.onError(new TimeoutException("process
-                                // timed out"));
-                                // return;
-                                // }
-                                sub.onError(new IllegalArgumentException("not implemented yet"));
-                            } else {
-                                int exitCode = process.waitFor();
-                                if (exitCode != 0)
-                                    sub.onError(new ProcessException(exitCode));
-                                return;
-                            }
-                            sub.onCompleted();
-                        } catch (InterruptedException e) {
-                            sub.onError(e);
-                        }
-                    }
-                }).subscribeOn(Schedulers.io());
+                Observable<byte[]> completion = Processes.<byte[]> waitForExit(process,
+                        parameters.waitForMs(), Schedulers.computation());
                 return output.concatWith(completion);
             }
         };
@@ -106,6 +86,297 @@ public final class Processes {
         return Observable.using(resourceFactory, factory, disposeAction);
     }
 
+    /**
+     * Starts the process described by {@code parameters} when the returned
+     * {@link Pipe#stdout()} is subscribed to. The bytes of {@code stdin} are
+     * written to the process's stdin on a worker of the io scheduler (with
+     * backpressure, so a process that is slow to read slows the source) and
+     * stdin is closed when {@code stdin} completes. Stdout and stderr are
+     * read on io workers and emitted separately. Stdout completes once the
+     * process has exited with exit code 0, otherwise it emits a
+     * {@link ProcessException} (or a {@link TimeoutException} if
+     * {@link Parameters#waitForMs()} is present and the process has not
+     * exited in that time after its output ended). Waiting for exit polls on
+     * the scheduler rather than blocking a thread.
+     * 
+     * @param parameters
+     *            process parameters
+     * @param stdin
+     *            bytes to write to stdin
+     * @return stdout and stderr of the process
+     */
+    public static Pipe pipe(Parameters parameters, Observable<byte[]> stdin) {
+        return pipe(parameters, stdin, 8192, Schedulers.io());
+    }
+
+    public static Pipe pipe(final Parameters parameters, final Observable<byte[]> stdin,
+            final int bufferSize, final Scheduler scheduler) {
+        Preconditions.checkNotNull(parameters);
+        Preconditions.checkNotNull(stdin);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        Preconditions.checkNotNull(scheduler);
+        final Subject<byte[], byte[]> stderr = new SerializedSubject<byte[], byte[]>(
+                PublishSubject.<byte[]> create());
+        final AtomicBoolean subscribed = new AtomicBoolean();
+        Func0<Process> resourceFactory = new Func0<Process>() {
+            @Override
+            public Process call() {
+                if (!subscribed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("stdout can only be subscribed to once");
+                }
+                try {
+                    return start(parameters, false);
+                } catch (IOException e) {
+                    throw new IORuntimeException(e);
+                }
+            }
+        };
+        Func1<Process, Observable<byte[]>> factory = new Func1<Process, Observable<byte[]>>() {
+            @Override
+            public Observable<byte[]> call(final Process process) {
+                final OutputStream out = process.getOutputStream();
+                Observable<byte[]> write = stdin //
+                        .lift(new OperatorCoalescingWrite(out, bufferSize, 16, scheduler)) //
+                        .doOnTerminate(new Action0() {
+                            @Override
+                            public void call() {
+                                closeQuietly(out);
+                            }
+                        }) //
+                        .ignoreElements() //
+                        .cast(byte[].class);
+                Observable<byte[]> errors = Bytes.from(process.getErrorStream(), bufferSize) //
+                        .subscribeOn(scheduler) //
+                        .doOnEach(stderr) //
+                        .ignoreElements();
+                Observable<byte[]> output = Bytes.from(process.getInputStream(), bufferSize) //
+                        .subscribeOn(scheduler);
+                return Observable.merge(write, errors, output) //
+                        .concatWith(Processes.<byte[]> waitForExit(process,
+                                parameters.waitForMs(), scheduler));
+            }
+        };
+        Action1<Process> disposeAction = new Action1<Process>() {
+            @Override
+            public void call(Process process) {
+                process.destroy();
+            }
+        };
+        return new Pipe(Observable.using(resourceFactory, factory, disposeAction),
+                stderr.asObservable());
+    }
+
+    /**
+     * The output streams of a process started by
+     * {@link Processes#pipe(Parameters, Observable)}.
+     */
+    public static final class Pipe {
+
+        private final Observable<byte[]> stdout;
+        private final Observable<byte[]> stderr;
+
+        Pipe(Observable<byte[]> stdout, Observable<byte[]> stderr) {
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+
+        /**
+         * Returns the stdout of the process. Subscribing starts the process
+         * and may happen only once.
+         * 
+         * @return stdout
+         */
+        public Observable<byte[]> stdout() {
+            return stdout;
+        }
+
+        /**
+         * Returns the stderr of the process. The stream is hot and should be
+         * subscribed to before {@link #stdout()} so that no output is missed.
+         * It completes when the process closes stderr.
+         * 
+         * @return stderr
+         */
+        public Observable<byte[]> stderr() {
+            return stderr;
+        }
+    }
+
+    /**
+     * Returns a stream that completes when the process exits with exit code 0
+     * and otherwise errors. Exit is detected by polling on a worker of the
+     * scheduler (with an increasing interval up to 100ms) because
+     * {@code Process.waitFor} with a timeout is not available before Java 8.
+     */
+    private static <T> Observable<T> waitForExit(final Process process,
+            final Optional<Long> timeoutMs, final Scheduler scheduler) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> sub) {
+                final Worker worker = scheduler.createWorker();
+                sub.add(worker);
+                final long start = worker.now();
+                worker.schedule(new Action0() {
+                    long delayMs = 1;
+
+                    @Override
+                    public void call() {
+                        Integer exitCode = exitValue(process);
+                        if (exitCode != null) {
+                            if (exitCode != 0) {
+                                sub.onError(new ProcessException(exitCode));
+                            } else {
+                                sub.onCompleted();
+                            }
+                        } else if (timeoutMs.isPresent()
+                                && worker.now() - start >= timeoutMs.get()) {
+                            sub.onError(new TimeoutException("process did not exit within "
+                                    + timeoutMs.get() + "ms"));
+                        } else {
+                            worker.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+                            delayMs = Math.min(100, delayMs * 2);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static Integer exitValue(Process process) {
+        try {
+            return process.exitValue();
+        } catch (IllegalThreadStateException e) {
+            // not exited yet
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    static Process start(Parameters parameters, boolean redirectErrorStream) throws IOException {
+        ProcessBuilder b = new ProcessBuilder(parameters.command());
+        if (parameters.env().isPresent()) {
+            if (parameters.appendEnv())
+                b.environment().clear();
+            b.environment().putAll(parameters.env().get());
+        }
+        b.directory(parameters.directory());
+        b.redirectErrorStream(redirectErrorStream);
+        return b.start();
+    }
+
+    /**
+     * Returns a builder for a pool of long-lived worker processes started
+     * with the given parameters that serve requests written to stdin with
+     * responses framed on stdout (see {@link ProcessPool}). If
+     * {@link Parameters#waitForMs()} is present it is the default request
+     * timeout.
+     * 
+     * @param parameters
+     *            process parameters
+     * @return builder
+     */
+    public static PoolBuilder pool(Parameters parameters) {
+        return new PoolBuilder(parameters);
+    }
+
+    public static PoolBuilder pool(String... command) {
+        return pool(new Parameters(Arrays.asList(command), Optional.<Map<String, String>> absent(),
+                true, new File("."), Optional.<Long> absent()));
+    }
+
+    public static final class PoolBuilder {
+
+        private static final byte[] NEW_LINE = new byte[] { '\n' };
+
+        private final Parameters parameters;
+        private int maxSize = Runtime.getRuntime().availableProcessors();
+        private long requestTimeoutMs;
+        private long leaseTimeoutMs = TimeUnit.SECONDS.toMillis(30);
+        private int bufferSize = 8192;
+        private Transformer<byte[], byte[]> responseFraming = Bytes.frameByDelimiter(NEW_LINE,
+                1024 * 1024);
+        private Scheduler scheduler = Schedulers.io();
+
+        PoolBuilder(Parameters parameters) {
+            Preconditions.checkNotNull(parameters);
+            this.parameters = parameters;
+            this.requestTimeoutMs = parameters.waitForMs().or(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        /**
+         * Sets the maximum number of worker processes. Requests wait for an
+         * idle worker once the maximum is running.
+         * 
+         * @param maxSize
+         *            maximum number of worker processes
+         * @return this
+         */
+        public PoolBuilder maxSize(int maxSize) {
+            Preconditions.checkArgument(maxSize > 0, "maxSize must be greater than 0");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public PoolBuilder requestTimeout(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration > 0, "duration must be greater than 0");
+            this.requestTimeoutMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public PoolBuilder leaseTimeout(long duration, TimeUnit unit) {
+            this.leaseTimeoutMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public PoolBuilder bufferSize(int bufferSize) {
+            Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets how stdout of a worker is split into responses, one frame per
+         * request. The default is newline delimited frames of at most 1MB
+         * (see {@link Bytes#frameByDelimiter(byte[], int)}).
+         * 
+         * @param responseFraming
+         *            splits stdout into responses
+         * @return this
+         */
+        public PoolBuilder responseFraming(Transformer<byte[], byte[]> responseFraming) {
+            Preconditions.checkNotNull(responseFraming);
+            this.responseFraming = responseFraming;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler used to write requests, to read the stdout and
+         * stderr of each worker (a worker of the scheduler each for the life
+         * of the process) and to time out requests.
+         * 
+         * @param scheduler
+         *            scheduler
+         * @return this
+         */
+        public PoolBuilder scheduler(Scheduler scheduler) {
+            Preconditions.checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public ProcessPool create() {
+            return new ProcessPool(parameters, maxSize, requestTimeoutMs, leaseTimeoutMs,
+                    bufferSize, responseFraming, scheduler);
+        }
+    }
+
     public static class ProcessException extends RuntimeException {
         private static final long serialVersionUID = 722422557667123473L;
 
@@ -7,21 +7,33 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
+import com.github.davidmoten.rx.internal.operators.OnSubscribeFileLines;
 import com.github.davidmoten.rx.internal.operators.OnSubscribeReader;
+import com.github.davidmoten.rx.internal.operators.TransformerDelimited;
+import com.github.davidmoten.rx.internal.operators.TransformerMatches;
+import com.github.davidmoten.rx.util.Positioned;
+import com.github.davidmoten.rx.util.StringMatch;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
+import rx.Observable.Transformer;
+import rx.Scheduler;
 import rx.functions.Action1;
 import rx.functions.Action2;
 import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 public final class Strings {
 
@@ -107,6 +119,90 @@ public final class Strings {
         return from(resourceFactory);
     }
 
+    /**
+     * Returns a stream of {@code chunks} (or fewer) streams of lines where
+     * each inner stream reads a byte range of the file aligned to line
+     * boundaries. The inner streams use positional reads and are independent
+     * so can be subscribed to concurrently (for instance with
+     * {@code subscribeOn}). Concatenating the inner streams yields the same
+     * lines as {@link Bytes#lines(File, Charset)}.
+     * 
+     * @param file
+     *            file to read
+     * @param charset
+     *            charset where the byte {@code '\n'} cannot appear within a
+     *            multibyte character (for example UTF-8)
+     * @param chunks
+     *            desired number of ranges
+     * @return stream of streams of lines, one for each range
+     */
+    public static Observable<Observable<String>> linesChunked(final File file,
+            final Charset charset, final int chunks) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(charset);
+        Preconditions.checkArgument(chunks > 0, "chunks must be greater than 0");
+        return Observable.defer(new Func0<Observable<Observable<String>>>() {
+            @Override
+            public Observable<Observable<String>> call() {
+                long[] boundaries = OnSubscribeFileLines.lineAlignedBoundaries(file, chunks);
+                List<Observable<String>> list = new ArrayList<Observable<String>>(
+                        boundaries.length - 1);
+                for (int i = 0; i < boundaries.length - 1; i++) {
+                    list.add(Observable.create(new OnSubscribeFileLines(file, charset,
+                            LinesParallelHolder.BUFFER_SIZE, boundaries[i], boundaries[i + 1])));
+                }
+                return Observable.from(list);
+            }
+        });
+    }
+
+    /**
+     * Returns the lines of the file read concurrently as {@code chunks} byte
+     * ranges aligned to line boundaries, each range being read on a worker of
+     * the given scheduler. If {@code preserveOrder} is true then the lines are
+     * emitted in file order (ranges are still read eagerly and concurrently)
+     * otherwise the lines of each range are in order but lines from different
+     * ranges are interleaved.
+     * 
+     * @param file
+     *            file to read
+     * @param charset
+     *            charset where the byte {@code '\n'} cannot appear within a
+     *            multibyte character (for example UTF-8)
+     * @param chunks
+     *            number of ranges to read concurrently
+     * @param preserveOrder
+     *            if true emit lines in file order
+     * @param scheduler
+     *            scheduler to read each range on
+     * @return stream of lines
+     */
+    public static Observable<String> linesParallel(File file, Charset charset, int chunks,
+            boolean preserveOrder, final Scheduler scheduler) {
+        Observable<Observable<String>> ranges = linesChunked(file, charset, chunks)
+                .map(new Func1<Observable<String>, Observable<String>>() {
+                    @Override
+                    public Observable<String> call(Observable<String> range) {
+                        return range.subscribeOn(scheduler);
+                    }
+                });
+        if (preserveOrder) {
+            return Observable.concatEager(ranges, LinesParallelHolder.PREFETCH);
+        } else {
+            return Observable.merge(ranges);
+        }
+    }
+
+    public static Observable<String> linesParallel(File file, int chunks) {
+        return linesParallel(file, DEFAULT_CHARSET, chunks, true, Schedulers.io());
+    }
+
+    private static final class LinesParallelHolder {
+        static final int BUFFER_SIZE = 65536;
+        // number of lines each range may read ahead of the consumer
+        static final int PREFETCH = 8192;
+    }
+
     public static Observable<String> fromClasspath(final String resource, final Charset charset) {
         Preconditions.checkNotNull(resource);
         Preconditions.checkNotNull(charset);
@@ -151,6 +247,32 @@ public final class Strings {
         };
     }
 
+    /**
+     * Returns a transformer that finds the matches of {@code pattern} in a
+     * stream of string chunks (for example from
+     * {@link #from(java.io.Reader)}) without joining the chunks or splitting
+     * them into lines. Matches that straddle chunk boundaries are found and
+     * each match is emitted with its character offsets from the start of the
+     * stream. Memory use is bounded by the chunk size and
+     * {@code maxMatchLength}; a match that could be longer than
+     * {@code maxMatchLength} characters may be truncated.
+     * 
+     * @param pattern
+     *            regex to find
+     * @param maxMatchLength
+     *            maximum length of a match in characters
+     * @return transformer emitting matches in order of occurrence
+     */
+    public static Transformer<String, StringMatch> matches(Pattern pattern, int maxMatchLength) {
+        Preconditions.checkNotNull(pattern);
+        Preconditions.checkArgument(maxMatchLength > 0, "maxMatchLength must be greater than 0");
+        return TransformerMatches.matches(pattern, maxMatchLength);
+    }
+
+    public static Transformer<String, StringMatch> matches(String regex, int maxMatchLength) {
+        return matches(Pattern.compile(regex), maxMatchLength);
+    }
+
     public static Observable<String> join(Observable<String> source) {
         return join(source, "");
     }
@@ -229,6 +351,259 @@ public final class Strings {
         return splitLines(is, DEFAULT_CHARSET, delimiter, "#");
     }
 
+    /**
+     * Returns a transformer that encodes the strings of the stream using the
+     * given charset, writes them to {@code file} (replacing any existing
+     * content) and emits the file on completion. Small strings are coalesced
+     * into large writes. To configure rolling of files or writing on another
+     * thread use {@link Bytes#writer(File)} after {@link #encode(Charset)}.
+     * 
+     * @param file
+     *            file to write to
+     * @param charset
+     *            charset to encode with
+     * @return file writing transformer
+     */
+    public static Transformer<String, File> write(final File file, final Charset charset) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkNotNull(charset);
+        return new Transformer<String, File>() {
+            @Override
+            public Observable<File> call(Observable<String> source) {
+                return source.map(encode(charset)).compose(Bytes.write(file));
+            }
+        };
+    }
+
+    public static Transformer<String, File> write(File file) {
+        return write(file, DEFAULT_CHARSET);
+    }
+
+    /**
+     * Returns a function that encodes a string to bytes using the given
+     * charset.
+     * 
+     * @param charset
+     *            charset to encode with
+     * @return encoding function
+     */
+    public static Func1<String, byte[]> encode(final Charset charset) {
+        return new Func1<String, byte[]>() {
+            @Override
+            public byte[] call(String s) {
+                return s.getBytes(charset);
+            }
+        };
+    }
+
+    /**
+     * Returns a never ending stream of the text appended to {@code file}
+     * starting at byte {@code startPosition} (see
+     * {@link Bytes#tail(File, long, long, int, Scheduler)}). Each string is
+     * paired with the byte position in the file after its last character; a
+     * multi-byte character split across reads is emitted with the following
+     * read. Malformed input is replaced.
+     * 
+     * @param file
+     *            file to tail
+     * @param charset
+     *            charset of the file
+     * @param startPosition
+     *            byte position to start reading from (must be at the start
+     *            of a character)
+     * @param pollIntervalMs
+     *            interval between checks for new data
+     * @param bufferSize
+     *            maximum number of bytes read at a time
+     * @param scheduler
+     *            scheduler to read on
+     * @return stream of strings with positions
+     */
+    public static Observable<Positioned<String>> tail(File file, final Charset charset,
+            long startPosition, long pollIntervalMs, int bufferSize, Scheduler scheduler) {
+        Preconditions.checkNotNull(charset);
+        final Observable<Positioned<byte[]>> source = Bytes.tail(file, startPosition,
+                pollIntervalMs, bufferSize, scheduler);
+        return Observable.defer(new Func0<Observable<Positioned<String>>>() {
+            @Override
+            public Observable<Positioned<String>> call() {
+                return source.map(new PositionedDecoder(charset))
+                        .filter(new Func1<Positioned<String>, Boolean>() {
+                            @Override
+                            public Boolean call(Positioned<String> p) {
+                                return !p.value().isEmpty();
+                            }
+                        });
+            }
+        });
+    }
+
+    public static Observable<Positioned<String>> tail(File file, Charset charset,
+            long startPosition) {
+        return tail(file, charset, startPosition, 500, 8192, Schedulers.io());
+    }
+
+    public static Observable<Positioned<String>> tail(File file) {
+        return tail(file, DEFAULT_CHARSET, 0);
+    }
+
+    private static final class PositionedDecoder
+            implements Func1<Positioned<byte[]>, Positioned<String>> {
+
+        private final CharsetDecoder decoder;
+        private byte[] pending = new byte[0];
+
+        PositionedDecoder(Charset charset) {
+            this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public Positioned<String> call(Positioned<byte[]> p) {
+            ByteBuffer in;
+            if (pending.length == 0) {
+                in = ByteBuffer.wrap(p.value());
+            } else {
+                in = ByteBuffer.allocate(pending.length + p.value().length);
+                in.put(pending).put(p.value()).flip();
+            }
+            CharBuffer out = CharBuffer
+                    .allocate((int) Math.ceil(in.remaining() * (double) decoder.maxCharsPerByte()));
+            decoder.decode(in, out, false);
+            pending = new byte[in.remaining()];
+            in.get(pending);
+            out.flip();
+            return Positioned.create(out.toString(), p.position() - pending.length);
+        }
+    }
+
+    /**
+     * Returns a builder for a single pass tokenizer of delimited text (for
+     * example CSV) that supports quoting, escaping, comment lines and
+     * reusable records. Unlike {@link #splitLines(InputStream, Charset, String, String)}
+     * the delimiter is a single character rather than a regex.
+     * 
+     * @return a builder of delimited record streams
+     */
+    public static DelimitedBuilder delimited() {
+        return new DelimitedBuilder();
+    }
+
+    public static final class DelimitedBuilder {
+
+        private char delimiter = ',';
+        private int quote = '"';
+        private int escape = TransformerDelimited.NONE;
+        private String commentPrefix = null;
+        private boolean trim = false;
+        private boolean ignoreEmptyLines = true;
+        private boolean reuseRecord = false;
+
+        DelimitedBuilder() {
+        }
+
+        public DelimitedBuilder delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * Sets the quote character. Within a quoted field delimiters and new
+         * lines are literal and a doubled quote is a literal quote.
+         * 
+         * @param quote
+         *            quote character
+         * @return this
+         */
+        public DelimitedBuilder quote(char quote) {
+            this.quote = quote;
+            return this;
+        }
+
+        public DelimitedBuilder noQuote() {
+            this.quote = TransformerDelimited.NONE;
+            return this;
+        }
+
+        /**
+         * Sets the escape character. The character following the escape
+         * character is always literal.
+         * 
+         * @param escape
+         *            escape character
+         * @return this
+         */
+        public DelimitedBuilder escape(char escape) {
+            this.escape = escape;
+            return this;
+        }
+
+        /**
+         * Sets the prefix of lines to be ignored. Pass null or the empty
+         * string to disable comment lines.
+         * 
+         * @param commentPrefix
+         *            prefix of comment lines
+         * @return this
+         */
+        public DelimitedBuilder commentPrefix(String commentPrefix) {
+            this.commentPrefix = commentPrefix;
+            return this;
+        }
+
+        /**
+         * Sets whether leading and trailing whitespace is removed from
+         * unquoted fields.
+         * 
+         * @param trim
+         *            if true trim unquoted fields
+         * @return this
+         */
+        public DelimitedBuilder trim(boolean trim) {
+            this.trim = trim;
+            return this;
+        }
+
+        public DelimitedBuilder ignoreEmptyLines(boolean ignoreEmptyLines) {
+            this.ignoreEmptyLines = ignoreEmptyLines;
+            return this;
+        }
+
+        /**
+         * Sets whether the same {@link List} instance is emitted for every
+         * record. When true a record is only valid until the next record is
+         * requested so downstream must consume records synchronously (no
+         * {@code observeOn}, {@code toList}, {@code buffer} etc. without
+         * copying first).
+         * 
+         * @param reuseRecord
+         *            if true reuse the record list
+         * @return this
+         */
+        public DelimitedBuilder reuseRecord(boolean reuseRecord) {
+            this.reuseRecord = reuseRecord;
+            return this;
+        }
+
+        public Transformer<String, List<String>> transformer() {
+            return TransformerDelimited.records(delimiter, quote, escape, commentPrefix, trim,
+                    ignoreEmptyLines, reuseRecord);
+        }
+
+        public Observable<List<String>> from(Observable<String> source) {
+            return source.compose(transformer());
+        }
+
+        public Observable<List<String>> from(InputStream is, Charset charset) {
+            return from(Strings.from(is, charset));
+        }
+
+        public Observable<List<String>> from(File file, Charset charset) {
+            return from(Strings.from(file, charset));
+        }
+
+    }
+
     private static class SplitLinesHolder {
         static final Func1<String, String> trim = new Func1<String, String>() {
             @Override
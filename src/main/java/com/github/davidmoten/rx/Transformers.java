@@ -4,6 +4,7 @@ import java.nio.charset.CharsetDecoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -27,19 +28,24 @@ import com.github.davidmoten.rx.internal.operators.OperatorFromTransformer;
 import com.github.davidmoten.rx.internal.operators.OperatorSampleFirst;
 import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax;
 import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax.Metric;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMaxDouble;
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMaxLong;
 import com.github.davidmoten.rx.internal.operators.OrderedMerge;
 import com.github.davidmoten.rx.internal.operators.TransformerDecode;
 import com.github.davidmoten.rx.internal.operators.TransformerDelayFinalUnsubscribe;
 import com.github.davidmoten.rx.internal.operators.TransformerLimitSubscribers;
 import com.github.davidmoten.rx.internal.operators.TransformerOnBackpressureBufferRequestLimiting;
 import com.github.davidmoten.rx.internal.operators.TransformerOnTerminateResume;
+import com.github.davidmoten.rx.internal.operators.TransformerSort;
 import com.github.davidmoten.rx.internal.operators.TransformerStateMachine;
 import com.github.davidmoten.rx.internal.operators.TransformerStringSplit;
+import com.github.davidmoten.rx.internal.operators.TransformerTopK;
 import com.github.davidmoten.rx.util.BackpressureStrategy;
 import com.github.davidmoten.rx.util.MapWithIndex;
 import com.github.davidmoten.rx.util.MapWithIndex.Indexed;
 import com.github.davidmoten.rx.util.Pair;
 import com.github.davidmoten.util.Optional;
+import com.github.davidmoten.util.Preconditions;
 
 import rx.Notification;
 import rx.Observable;
@@ -64,6 +70,8 @@ public final class Transformers {
 
     static final int DEFAULT_INITIAL_BATCH = 1;
 
+    private static final int DEFAULT_SORT_CHUNK_SIZE = 65536;
+
     public static <T, R> Operator<R, T> toOperator(
             Func1<? super Observable<T>, ? extends Observable<R>> function) {
         return OperatorFromTransformer.toOperator(function);
@@ -117,6 +125,196 @@ public final class Transformers {
         };
     }
 
+    /**
+     * Returns a transformer that sorts the source using bounded memory by
+     * sorting runs of {@link Options#rolloverEvery()} items concurrently on
+     * the computation scheduler, spilling the runs to files created by
+     * {@link Options#fileFactory()} (written and read with buffers of
+     * {@link Options#bufferSizeBytes()}) and emitting the merge of the runs
+     * as requested. A source that fits in one partial run is not spilled. Up
+     * to one run per available processor is sorted at a time while the next
+     * run is gathered so peak memory is about {@code (processors + 1)} times
+     * the run size. Run files are deleted on termination or unsubscription.
+     * The run size must be set (to at most {@link Integer#MAX_VALUE}) so
+     * {@link Options#disableRollover()} cannot be used.
+     * 
+     * @param comparator
+     *            the ordering
+     * @param serializer
+     *            serializes items to the run files
+     * @param options
+     *            run size and file options
+     * @param <T>
+     *            item type
+     * @return sorting transformer
+     */
+    public static <T> Transformer<T, T> sort(Comparator<? super T> comparator,
+            DataSerializer<T> serializer, Options options) {
+        return sort(comparator, serializer, options, Schedulers.computation());
+    }
+
+    public static <T> Transformer<T, T> sort(Comparator<? super T> comparator,
+            DataSerializer<T> serializer, Options options, Scheduler scheduler) {
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkNotNull(serializer);
+        Preconditions.checkNotNull(options);
+        Preconditions.checkNotNull(scheduler);
+        return TransformerSort.external(comparator, serializer, options, scheduler);
+    }
+
+    /**
+     * Returns a transformer that sorts the source in memory using all cores.
+     * The source is gathered into chunks of {@code chunkSize} items which are
+     * sorted concurrently on the computation scheduler as they fill and the
+     * sorted chunks are merged lazily as downstream requests, so the first
+     * item is emitted as soon as the last chunk is sorted rather than after
+     * the whole result has been assembled.
+     * 
+     * @param comparator
+     *            the ordering
+     * @param chunkSize
+     *            number of items sorted by each task
+     * @param <T>
+     *            item type
+     * @return sorting transformer
+     */
+    public static <T> Transformer<T, T> sortParallel(Comparator<? super T> comparator,
+            int chunkSize) {
+        return sortParallel(comparator, chunkSize, Schedulers.computation());
+    }
+
+    public static <T> Transformer<T, T> sortParallel(Comparator<? super T> comparator,
+            int chunkSize, Scheduler scheduler) {
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkArgument(chunkSize > 0, "chunkSize must be greater than 0");
+        Preconditions.checkNotNull(scheduler);
+        return TransformerSort.parallel(comparator, chunkSize, scheduler);
+    }
+
+    public static <T> Transformer<T, T> sortParallel(Comparator<? super T> comparator) {
+        return sortParallel(comparator, DEFAULT_SORT_CHUNK_SIZE);
+    }
+
+    public static <T extends Comparable<? super T>> Transformer<T, T> sortParallel() {
+        return sortParallel(Transformers.<T> naturalComparator());
+    }
+
+    /**
+     * Returns a transformer that emits the {@code k} greatest items of the
+     * source (according to the comparator) in descending order when the
+     * source completes. Equivalent to a stable descending sort followed by
+     * {@code take(k)} but only O(k) items are retained and the cost is
+     * O(n log k).
+     * 
+     * @param k
+     *            number of items to emit
+     * @param comparator
+     *            the ordering
+     * @param <T>
+     *            item type
+     * @return top k transformer
+     */
+    public static <T> Transformer<T, T> topK(int k, Comparator<? super T> comparator) {
+        Preconditions.checkArgument(k >= 0, "k cannot be negative");
+        Preconditions.checkNotNull(comparator);
+        return TransformerTopK.create(k, comparator);
+    }
+
+    public static <T extends Comparable<? super T>> Transformer<T, T> topK(int k) {
+        return topK(k, Transformers.<T> naturalComparator());
+    }
+
+    /**
+     * Returns a transformer that emits the {@code k} least items of the
+     * source (according to the comparator) in ascending order when the source
+     * completes. Equivalent to {@code sort(comparator)} followed by
+     * {@code take(k)} but only O(k) items are retained.
+     * 
+     * @param k
+     *            number of items to emit
+     * @param comparator
+     *            the ordering
+     * @param <T>
+     *            item type
+     * @return bottom k transformer
+     */
+    public static <T> Transformer<T, T> bottomK(int k, Comparator<? super T> comparator) {
+        Preconditions.checkNotNull(comparator);
+        return topK(k, Collections.reverseOrder(comparator));
+    }
+
+    public static <T extends Comparable<? super T>> Transformer<T, T> bottomK(int k) {
+        return bottomK(k, Transformers.<T> naturalComparator());
+    }
+
+    /**
+     * Returns a transformer that emits a list of the {@code k} greatest items
+     * (in descending order) of each consecutive window of
+     * {@code windowSize} items.
+     * 
+     * @param k
+     *            number of items in each list
+     * @param comparator
+     *            the ordering
+     * @param windowSize
+     *            number of source items per window
+     * @param <T>
+     *            item type
+     * @return windowed top k transformer
+     */
+    public static <T> Transformer<T, List<T>> topKEvery(int k, Comparator<? super T> comparator,
+            int windowSize) {
+        Preconditions.checkArgument(k >= 0, "k cannot be negative");
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than 0");
+        return TransformerTopK.every(k, comparator, windowSize);
+    }
+
+    /**
+     * Returns a transformer that emits a list of the {@code k} greatest items
+     * (in descending order) of each consecutive time window of the given
+     * duration.
+     * 
+     * @param k
+     *            number of items in each list
+     * @param comparator
+     *            the ordering
+     * @param duration
+     *            window duration
+     * @param unit
+     *            window duration unit
+     * @param scheduler
+     *            scheduler that times the windows
+     * @param <T>
+     *            item type
+     * @return windowed top k transformer
+     */
+    public static <T> Transformer<T, List<T>> topKEvery(int k, Comparator<? super T> comparator,
+            long duration, TimeUnit unit, Scheduler scheduler) {
+        Preconditions.checkArgument(k >= 0, "k cannot be negative");
+        Preconditions.checkNotNull(comparator);
+        Preconditions.checkNotNull(unit);
+        Preconditions.checkNotNull(scheduler);
+        return TransformerTopK.every(k, comparator, duration, unit, scheduler);
+    }
+
+    public static <T> Transformer<T, List<T>> topKEvery(int k, Comparator<? super T> comparator,
+            long duration, TimeUnit unit) {
+        return topKEvery(k, comparator, duration, unit, Schedulers.computation());
+    }
+
+    public static <T> Transformer<T, List<T>> bottomKEvery(int k,
+            Comparator<? super T> comparator, int windowSize) {
+        Preconditions.checkNotNull(comparator);
+        return topKEvery(k, Collections.reverseOrder(comparator), windowSize);
+    }
+
+    public static <T> Transformer<T, List<T>> bottomKEvery(int k,
+            Comparator<? super T> comparator, long duration, TimeUnit unit) {
+        Preconditions.checkNotNull(comparator);
+        return topKEvery(k, Collections.reverseOrder(comparator), duration, unit);
+    }
+
     public static <T> Transformer<T, Set<T>> toSet() {
         return new Transformer<T, Set<T>>() {
 
@@ -728,6 +926,61 @@ public final class Transformers {
         return windowMin(windowSize, Transformers.<T> naturalComparator());
     }
 
+    /**
+     * Returns the minimum of each sliding window of {@code windowSize}
+     * doubles (ordered as by {@link Double#compare(double, double)}). Like
+     * {@link #windowMin(int)} but compares primitive values held in ring
+     * buffers so no allocation happens per element.
+     * 
+     * @param windowSize
+     *            number of items in the window
+     * @return transformer emitting the minimum of each window once the first
+     *         window is full
+     */
+    public static Transformer<Double, Double> windowMinDouble(final int windowSize) {
+        return windowDouble(windowSize, Metric.MIN);
+    }
+
+    public static Transformer<Double, Double> windowMaxDouble(final int windowSize) {
+        return windowDouble(windowSize, Metric.MAX);
+    }
+
+    public static Transformer<Long, Long> windowMinLong(final int windowSize) {
+        return windowLong(windowSize, Metric.MIN);
+    }
+
+    public static Transformer<Long, Long> windowMaxLong(final int windowSize) {
+        return windowLong(windowSize, Metric.MAX);
+    }
+
+    public static Transformer<Integer, Integer> windowMinInt(final int windowSize) {
+        return windowLong(windowSize, Metric.MIN);
+    }
+
+    public static Transformer<Integer, Integer> windowMaxInt(final int windowSize) {
+        return windowLong(windowSize, Metric.MAX);
+    }
+
+    private static <T extends Number> Transformer<T, T> windowDouble(final int windowSize,
+            final Metric metric) {
+        return new Transformer<T, T>() {
+            @Override
+            public Observable<T> call(Observable<T> o) {
+                return o.lift(new OperatorWindowMinMaxDouble<T>(windowSize, metric));
+            }
+        };
+    }
+
+    private static <T extends Number> Transformer<T, T> windowLong(final int windowSize,
+            final Metric metric) {
+        return new Transformer<T, T>() {
+            @Override
+            public Observable<T> call(Observable<T> o) {
+                return o.lift(new OperatorWindowMinMaxLong<T>(windowSize, metric));
+            }
+        };
+    }
+
     private static class NaturalComparatorHolder {
         static final Comparator<Comparable<Object>> INSTANCE = new Comparator<Comparable<Object>>() {
 
@@ -739,7 +992,7 @@ public final class Transformers {
     }
 
     @SuppressWarnings("unchecked")
-    private static <T extends Comparable<T>> Comparator<T> naturalComparator() {
+    private static <T extends Comparable<? super T>> Comparator<T> naturalComparator() {
         return (Comparator<T>) (Comparator<?>) NaturalComparatorHolder.INSTANCE;
     }
 
@@ -0,0 +1,11 @@
+package com.github.davidmoten.rx.exceptions;
+
+public final class FrameTooLongException extends RuntimeException {
+
+    private static final long serialVersionUID = -2906437123358170431L;
+
+    public FrameTooLongException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,11 @@
+package com.github.davidmoten.rx.exceptions;
+
+public final class MatchOverflowException extends RuntimeException {
+
+    private static final long serialVersionUID = 4720381760429313590L;
+
+    public MatchOverflowException(String message) {
+        super(message);
+    }
+
+}
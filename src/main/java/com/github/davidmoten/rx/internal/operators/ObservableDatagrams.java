@@ -0,0 +1,250 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.util.BytePool;
+import com.github.davidmoten.rx.util.Datagram;
+import com.github.davidmoten.rx.util.PooledBytes;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Receives datagrams on a non-blocking {@link DatagramChannel} using a
+ * {@link Selector} run on a worker of the given scheduler. Each time the
+ * channel becomes readable up to {@code maxBatch} datagrams are received
+ * (without blocking) and emitted together as one list, so the cost of a
+ * wakeup and an emission is shared by many packets. Payloads are copied from
+ * one direct receive buffer into buffers acquired from a {@link BytePool}.
+ * Each emitted list counts as one item for backpressure; datagrams that
+ * arrive while there is no outstanding request are read and discarded (and
+ * counted as dropped) so that the socket receive buffer does not fill with
+ * stale packets.
+ */
+public final class ObservableDatagrams {
+
+    private ObservableDatagrams() {
+        // prevent instantiation
+    }
+
+    /**
+     * Receives counter updates from the receive loop.
+     */
+    public interface Stats {
+
+        void received(int count);
+
+        void dropped(int count);
+    }
+
+    public static final Stats NO_STATS = new Stats() {
+
+        @Override
+        public void received(int count) {
+            // do nothing
+        }
+
+        @Override
+        public void dropped(int count) {
+            // do nothing
+        }
+    };
+
+    public static Observable<List<Datagram>> create(final int port, final int bufferSize,
+            final int maxBatch, final int receiveBufferSize, final int poolSize,
+            final Stats stats, final Scheduler scheduler, final Action1<Integer> onBound) {
+        return Observable.create(new OnSubscribe<List<Datagram>>() {
+            @Override
+            public void call(Subscriber<? super List<Datagram>> child) {
+                subscribe(child, port, bufferSize, maxBatch, receiveBufferSize, poolSize, stats,
+                        scheduler, onBound);
+            }
+        });
+    }
+
+    private static void subscribe(Subscriber<? super List<Datagram>> child, int port,
+            int bufferSize, int maxBatch, int receiveBufferSize, int poolSize,
+            Stats stats, Scheduler scheduler, Action1<Integer> onBound) {
+        final DatagramChannel channel;
+        final Selector selector;
+        try {
+            channel = DatagramChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setReuseAddress(true);
+                if (receiveBufferSize > 0) {
+                    channel.socket().setReceiveBufferSize(receiveBufferSize);
+                }
+                channel.socket().bind(new InetSocketAddress(port));
+                selector = Selector.open();
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        } catch (IOException e) {
+            child.onError(e);
+            return;
+        }
+        onBound.call(channel.socket().getLocalPort());
+        final Receiver receiver = new Receiver(child, channel, selector,
+                BytePool.create(bufferSize, poolSize), maxBatch, stats, scheduler.createWorker());
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                receiver.close();
+            }
+        }));
+        child.setProducer(receiver);
+        receiver.start();
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Receiver extends AtomicLong implements Producer, Action0 {
+
+        private final Subscriber<? super List<Datagram>> child;
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final BytePool pool;
+        private final int maxBatch;
+        private final Stats stats;
+        private final Worker worker;
+        // accessed only on the worker
+        private final ByteBuffer buffer;
+
+        Receiver(Subscriber<? super List<Datagram>> child, DatagramChannel channel,
+                Selector selector, BytePool pool, int maxBatch, Stats stats,
+                Worker worker) {
+            this.child = child;
+            this.channel = channel;
+            this.selector = selector;
+            this.pool = pool;
+            this.maxBatch = maxBatch;
+            this.stats = stats;
+            this.worker = worker;
+            this.buffer = ByteBuffer.allocateDirect(pool.bufferSize());
+        }
+
+        void start() {
+            worker.schedule(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0) {
+                BackpressureUtils.getAndAddRequest(this, n);
+            }
+        }
+
+        void close() {
+            selector.wakeup();
+        }
+
+        @Override
+        public void call() {
+            try {
+                channel.register(selector, SelectionKey.OP_READ);
+                while (!child.isUnsubscribed()) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    drain();
+                }
+            } catch (IOException e) {
+                if (!child.isUnsubscribed()) {
+                    child.onError(e);
+                }
+            } finally {
+                closeQuietly(channel);
+                closeQuietly(selector);
+                worker.unsubscribe();
+            }
+        }
+
+        private void drain() throws IOException {
+            while (!child.isUnsubscribed()) {
+                if (get() == 0) {
+                    int dropped = 0;
+                    while (dropped < maxBatch) {
+                        buffer.clear();
+                        if (channel.receive(buffer) == null) {
+                            break;
+                        }
+                        dropped++;
+                    }
+                    if (dropped > 0) {
+                        stats.dropped(dropped);
+                    }
+                    if (dropped < maxBatch) {
+                        return;
+                    }
+                } else {
+                    List<Datagram> batch = receiveBatch();
+                    if (batch == null) {
+                        return;
+                    }
+                    stats.received(batch.size());
+                    child.onNext(batch);
+                    BackpressureUtils.produced(this, 1);
+                    if (batch.size() < maxBatch) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private List<Datagram> receiveBatch() throws IOException {
+            List<Datagram> batch = null;
+            while (batch == null || batch.size() < maxBatch) {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (sender == null) {
+                    break;
+                }
+                buffer.flip();
+                int length = buffer.remaining();
+                PooledBytes bytes = pool.acquire();
+                buffer.get(bytes.array(), 0, length);
+                bytes.slice(0, length);
+                if (batch == null) {
+                    batch = new ArrayList<Datagram>(maxBatch);
+                }
+                batch.add(new Datagram(sender, bytes));
+            }
+            return batch;
+        }
+    }
+
+    private static void closeQuietly(Channel c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void closeQuietly(Selector selector) {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
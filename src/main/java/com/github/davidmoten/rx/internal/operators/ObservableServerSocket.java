@@ -2,6 +2,7 @@ package com.github.davidmoten.rx.internal.operators;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
@@ -15,6 +16,7 @@ import com.github.davidmoten.rx.Functions;
 
 import rx.Observable;
 import rx.Observer;
+import rx.Scheduler;
 import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Action2;
@@ -32,9 +34,82 @@ public final class ObservableServerSocket {
             final Func0<? extends ServerSocket> serverSocketFactory, final int timeoutMs,
             final int bufferSize, Action0 preAcceptAction, int acceptTimeoutMs,
             Func1<? super Socket, Boolean> acceptSocket) {
-        Func1<ServerSocket, Observable<Observable<byte[]>>> observableFactory = createObservableFactory(
-                timeoutMs, bufferSize, preAcceptAction, acceptSocket);
-        return Observable.<Observable<byte[]>, ServerSocket> using( //
+        return accept(serverSocketFactory, timeoutMs, preAcceptAction, acceptTimeoutMs,
+                acceptSocket, new Func1<Socket, Observable<byte[]>>() {
+                    @Override
+                    public Observable<byte[]> call(Socket socket) {
+                        return createSocketObservable(socket, bufferSize);
+                    }
+                });
+    }
+
+    /**
+     * Returns a stream that never emits, that serves each accepted connection
+     * by writing the stream returned by {@code handler} for the bytes read
+     * from the connection back to the connection. Each connection is read on
+     * its own thread from {@code scheduler} and written on another. Writes are
+     * coalesced into arrays of up to {@code bufferSize} bytes and at most
+     * {@code prefetch} arrays from the handler are waiting to be written at
+     * any time. A connection is closed once the handler stream terminates or
+     * the connection fails (a failed connection does not affect the server).
+     */
+    public static Observable<Void> handle(final Func0<? extends ServerSocket> serverSocketFactory,
+            final int timeoutMs, final int bufferSize, Action0 preAcceptAction,
+            int acceptTimeoutMs, Func1<? super Socket, Boolean> acceptSocket,
+            final Func1<? super Observable<byte[]>, ? extends Observable<byte[]>> handler,
+            final int prefetch, final Scheduler scheduler) {
+        return accept(serverSocketFactory, timeoutMs, preAcceptAction, acceptTimeoutMs,
+                acceptSocket, new Func1<Socket, Socket>() {
+                    @Override
+                    public Socket call(Socket socket) {
+                        return socket;
+                    }
+                }).flatMap(new Func1<Socket, Observable<Void>>() {
+                    @Override
+                    public Observable<Void> call(Socket socket) {
+                        return handleSocket(socket, bufferSize, handler, prefetch, scheduler);
+                    }
+                });
+    }
+
+    private static Observable<Void> handleSocket(final Socket socket, final int bufferSize,
+            final Func1<? super Observable<byte[]>, ? extends Observable<byte[]>> handler,
+            final int prefetch, final Scheduler scheduler) {
+        return Observable.using( //
+                Functions.constant0(socket), //
+                new Func1<Socket, Observable<Void>>() {
+                    @Override
+                    public Observable<Void> call(Socket s) {
+                        final InputStream in;
+                        final OutputStream out;
+                        try {
+                            in = s.getInputStream();
+                            out = s.getOutputStream();
+                        } catch (IOException e) {
+                            return Observable.error(e);
+                        }
+                        return handler.call(Bytes.from(in, bufferSize)) //
+                                .lift(new OperatorCoalescingWrite(out, bufferSize, prefetch,
+                                        scheduler));
+                    }
+                }, //
+                new Action1<Socket>() {
+                    @Override
+                    public void call(Socket s) {
+                        closeQuietly(s);
+                    }
+                }, true) //
+                .onErrorResumeNext(Observable.<Void> empty()) //
+                .subscribeOn(scheduler);
+    }
+
+    private static <T> Observable<T> accept(
+            final Func0<? extends ServerSocket> serverSocketFactory, final int timeoutMs,
+            Action0 preAcceptAction, int acceptTimeoutMs, Func1<? super Socket, Boolean> acceptSocket,
+            Func1<Socket, T> connection) {
+        Func1<ServerSocket, Observable<T>> observableFactory = createObservableFactory(timeoutMs,
+                preAcceptAction, acceptSocket, connection);
+        return Observable.<T, ServerSocket> using( //
                 createServerSocketFactory(serverSocketFactory, acceptTimeoutMs), //
                 observableFactory, //
                 new Action1<ServerSocket>() {
@@ -68,38 +143,37 @@ public final class ObservableServerSocket {
         return s;
     }
 
-    private static Func1<ServerSocket, Observable<Observable<byte[]>>> createObservableFactory(
-            final int timeoutMs, final int bufferSize, final Action0 preAcceptAction,
-            final Func1<? super Socket, Boolean> acceptSocket) {
-        return new Func1<ServerSocket, Observable<Observable<byte[]>>>() {
+    private static <T> Func1<ServerSocket, Observable<T>> createObservableFactory(
+            final int timeoutMs, final Action0 preAcceptAction,
+            final Func1<? super Socket, Boolean> acceptSocket, final Func1<Socket, T> connection) {
+        return new Func1<ServerSocket, Observable<T>>() {
             @Override
-            public Observable<Observable<byte[]>> call(ServerSocket serverSocket) {
-                return createServerSocketObservable(serverSocket, timeoutMs, bufferSize,
-                        preAcceptAction, acceptSocket);
+            public Observable<T> call(ServerSocket serverSocket) {
+                return createServerSocketObservable(serverSocket, timeoutMs, preAcceptAction,
+                        acceptSocket, connection);
             }
         };
     }
 
-    private static Observable<Observable<byte[]>> createServerSocketObservable(
-            ServerSocket serverSocket, final long timeoutMs, final int bufferSize,
-            final Action0 preAcceptAction, final Func1<? super Socket, Boolean> acceptSocket) {
+    private static <T> Observable<T> createServerSocketObservable(ServerSocket serverSocket,
+            final long timeoutMs, final Action0 preAcceptAction,
+            final Func1<? super Socket, Boolean> acceptSocket, final Func1<Socket, T> connection) {
         return Observable.create( //
-                SyncOnSubscribe.<ServerSocket, Observable<byte[]>> createSingleState( //
+                SyncOnSubscribe.<ServerSocket, T> createSingleState( //
                         Functions.constant0(serverSocket), //
-                        new Action2<ServerSocket, Observer<? super Observable<byte[]>>>() {
+                        new Action2<ServerSocket, Observer<? super T>>() {
 
                             @Override
-                            public void call(ServerSocket ss,
-                                    Observer<? super Observable<byte[]>> observer) {
-                                acceptConnection(timeoutMs, bufferSize, ss, observer,
-                                        preAcceptAction, acceptSocket);
+                            public void call(ServerSocket ss, Observer<? super T> observer) {
+                                acceptConnection(timeoutMs, ss, observer, preAcceptAction,
+                                        acceptSocket, connection);
                             }
                         }));
     }
 
-    private static void acceptConnection(long timeoutMs, int bufferSize, ServerSocket ss,
-            Observer<? super Observable<byte[]>> observer, Action0 preAcceptAction,
-            Func1<? super Socket, Boolean> acceptSocket) {
+    private static <T> void acceptConnection(long timeoutMs, ServerSocket ss,
+            Observer<? super T> observer, Action0 preAcceptAction,
+            Func1<? super Socket, Boolean> acceptSocket, Func1<Socket, T> connection) {
         Socket socket;
         while (true) {
             try {
@@ -108,7 +182,8 @@ public final class ObservableServerSocket {
                 if (!acceptSocket.call(socket)) {
                     closeQuietly(socket);
                 } else {
-                    observer.onNext(createSocketObservable(socket, timeoutMs, bufferSize));
+                    setTimeout(socket, timeoutMs);
+                    observer.onNext(connection.call(socket));
                     break;
                 }
             } catch (SocketTimeoutException e) {
@@ -129,9 +204,8 @@ public final class ObservableServerSocket {
         }
     }
 
-    private static Observable<byte[]> createSocketObservable(final Socket socket, long timeoutMs,
+    private static Observable<byte[]> createSocketObservable(final Socket socket,
             final int bufferSize) {
-        setTimeout(socket, timeoutMs);
         return Observable.using( //
                 Checked.f0(new F0<InputStream>() {
                     @Override
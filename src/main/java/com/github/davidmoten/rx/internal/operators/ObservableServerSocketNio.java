@@ -0,0 +1,504 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.internal.operators.BackpressureUtils;
+import rx.plugins.RxJavaHooks;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * A server socket built on non-blocking channels where all connections are
+ * served by a small number of event loops (each a {@link Selector} run on a
+ * worker of the given scheduler). New connections are accepted only while
+ * there is demand for them and a connection is read from only while its
+ * subscriber has outstanding requests (by toggling {@code OP_READ} interest),
+ * so idle connections consume no threads and no buffers. Emissions happen on
+ * the event loop threads.
+ */
+public final class ObservableServerSocketNio {
+
+    private ObservableServerSocketNio() {
+        // prevent instantiation
+    }
+
+    public static Observable<Observable<byte[]>> create(final int port, final int backlog,
+            final int eventLoops, final int bufferSize, final Scheduler scheduler,
+            final Action1<Integer> onBound) {
+        return Observable.create(new OnSubscribe<Observable<byte[]>>() {
+            @Override
+            public void call(Subscriber<? super Observable<byte[]>> child) {
+                subscribe(child, port, backlog, eventLoops, bufferSize, scheduler, onBound);
+            }
+        });
+    }
+
+    private static void subscribe(Subscriber<? super Observable<byte[]>> child, int port,
+            int backlog, int eventLoops, int bufferSize, Scheduler scheduler,
+            Action1<Integer> onBound) {
+        final ServerSocketChannel channel;
+        final Server server;
+        try {
+            channel = ServerSocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setReuseAddress(true);
+                channel.socket().bind(new InetSocketAddress(port), backlog);
+                server = new Server(eventLoops, bufferSize, scheduler);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        } catch (IOException e) {
+            child.onError(e);
+            return;
+        }
+        onBound.call(channel.socket().getLocalPort());
+        final Acceptor acceptor = new Acceptor(child, channel, server);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                acceptor.close();
+            }
+        }));
+        child.setProducer(acceptor);
+        server.start();
+        acceptor.register();
+    }
+
+    /**
+     * Called on an event loop thread when the selection key of a channel is
+     * ready.
+     */
+    interface Handler {
+        void ready(SelectionKey key);
+    }
+
+    /**
+     * The event loops of a server. The loops are stopped once the server
+     * socket and all connections have been closed.
+     */
+    static final class Server {
+
+        private final EventLoop[] loops;
+        // the server socket holds one reference and each connection one
+        private final AtomicInteger references = new AtomicInteger(1);
+        private int next;
+
+        Server(int eventLoops, int bufferSize, Scheduler scheduler) throws IOException {
+            this.loops = new EventLoop[eventLoops];
+            for (int i = 0; i < eventLoops; i++) {
+                try {
+                    loops[i] = new EventLoop(scheduler.createWorker(), bufferSize);
+                } catch (IOException e) {
+                    for (int j = 0; j < i; j++) {
+                        loops[j].abort();
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        void start() {
+            for (EventLoop loop : loops) {
+                loop.start();
+            }
+        }
+
+        EventLoop acceptLoop() {
+            return loops[0];
+        }
+
+        // only called by the accept loop thread
+        EventLoop nextLoop() {
+            EventLoop loop = loops[next];
+            next = (next + 1) % loops.length;
+            return loop;
+        }
+
+        void acquire() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                for (EventLoop loop : loops) {
+                    loop.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a {@link Selector} on a worker, dispatching ready keys to their
+     * attached {@link Handler} and running submitted tasks. All reads, writes
+     * and changes of interest for the channels registered with the selector
+     * happen on this thread.
+     */
+    static final class EventLoop implements Action0 {
+
+        private final Worker worker;
+        private final Selector selector;
+        private final Queue<Action0> tasks = new ConcurrentLinkedQueue<Action0>();
+        // shared by all connections of this loop for reads
+        final ByteBuffer readBuffer;
+        private volatile boolean running = true;
+
+        EventLoop(Worker worker, int bufferSize) throws IOException {
+            this.worker = worker;
+            this.selector = Selector.open();
+            this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void start() {
+            worker.schedule(this);
+        }
+
+        void execute(Action0 task) {
+            tasks.offer(task);
+            selector.wakeup();
+        }
+
+        SelectionKey register(SelectableChannel channel, int ops, Handler handler)
+                throws ClosedChannelException {
+            return channel.register(selector, ops, handler);
+        }
+
+        void stop() {
+            running = false;
+            selector.wakeup();
+        }
+
+        // releases the resources of a loop that was never started
+        void abort() {
+            closeQuietly(selector);
+            worker.unsubscribe();
+        }
+
+        @Override
+        public void call() {
+            try {
+                while (running) {
+                    selector.select();
+                    runTasks();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (key.isValid()) {
+                            ((Handler) key.attachment()).ready(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                RxJavaHooks.onError(e);
+            } catch (RuntimeException e) {
+                RxJavaHooks.onError(e);
+            } finally {
+                runTasks();
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(selector);
+                worker.unsubscribe();
+            }
+        }
+
+        private void runTasks() {
+            Action0 task;
+            while ((task = tasks.poll()) != null) {
+                task.call();
+            }
+        }
+    }
+
+    /**
+     * Accepts connections on the accept loop while the subscriber to the
+     * server has outstanding requests.
+     */
+    @SuppressWarnings("serial")
+    private static final class Acceptor extends AtomicLong implements Producer, Handler {
+
+        private final Subscriber<? super Observable<byte[]>> child;
+        private final ServerSocketChannel channel;
+        private final Server server;
+        private final EventLoop loop;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        // accessed only on the accept loop
+        private SelectionKey key;
+
+        Acceptor(Subscriber<? super Observable<byte[]>> child, ServerSocketChannel channel,
+                Server server) {
+            this.child = child;
+            this.channel = channel;
+            this.server = server;
+            this.loop = server.acceptLoop();
+        }
+
+        void register() {
+            loop.execute(new Action0() {
+                @Override
+                public void call() {
+                    if (closed.get()) {
+                        return;
+                    }
+                    try {
+                        key = loop.register(channel,
+                                get() > 0 ? SelectionKey.OP_ACCEPT : 0, Acceptor.this);
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0 && BackpressureUtils.getAndAddRequest(this, n) == 0) {
+                loop.execute(new Action0() {
+                    @Override
+                    public void call() {
+                        if (key != null && key.isValid()) {
+                            key.interestOps(SelectionKey.OP_ACCEPT);
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            try {
+                while (get() > 0 && !child.isUnsubscribed()) {
+                    SocketChannel sc = channel.accept();
+                    if (sc == null) {
+                        return;
+                    }
+                    sc.configureBlocking(false);
+                    server.acquire();
+                    Connection connection = new Connection(sc, server.nextLoop(), server);
+                    connection.register();
+                    child.onNext(Observable.create(connection));
+                    BackpressureUtils.produced(this, 1);
+                }
+                if (key.isValid()) {
+                    key.interestOps(0);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(IOException e) {
+            if (closed.compareAndSet(false, true)) {
+                closeServerSocket();
+                child.onError(e);
+            }
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                loop.execute(new Action0() {
+                    @Override
+                    public void call() {
+                        closeServerSocket();
+                    }
+                });
+            }
+        }
+
+        // called on the accept loop
+        private void closeServerSocket() {
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            server.release();
+        }
+    }
+
+    /**
+     * A single accepted connection that may be subscribed to once. Bytes are
+     * read into the shared buffer of the event loop and copied into emitted
+     * arrays.
+     */
+    @SuppressWarnings("serial")
+    static final class Connection extends AtomicLong
+            implements OnSubscribe<byte[]>, Producer, Handler {
+
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final Server server;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Subscriber<? super byte[]> child;
+        // accessed only on the event loop
+        private SelectionKey key;
+
+        Connection(SocketChannel channel, EventLoop loop, Server server) {
+            this.channel = channel;
+            this.loop = loop;
+            this.server = server;
+        }
+
+        void register() {
+            loop.execute(new Action0() {
+                @Override
+                public void call() {
+                    if (closed.get()) {
+                        return;
+                    }
+                    try {
+                        key = loop.register(channel, 0,
+                                Connection.this);
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void call(Subscriber<? super byte[]> subscriber) {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onError(
+                        new IllegalStateException("a connection can only be subscribed to once"));
+                return;
+            }
+            child = subscriber;
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    close();
+                }
+            }));
+            subscriber.setProducer(this);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0 && BackpressureUtils.getAndAddRequest(this, n) == 0) {
+                loop.execute(new Action0() {
+                    @Override
+                    public void call() {
+                        setInterest(SelectionKey.OP_READ, true);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void ready(SelectionKey key) {
+            if (key.isReadable()) {
+                read();
+            }
+        }
+
+        private void read() {
+            ByteBuffer buffer = loop.readBuffer;
+            try {
+                while (get() > 0) {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    if (count == -1) {
+                        if (closed.compareAndSet(false, true)) {
+                            closeChannel();
+                            child.onCompleted();
+                        }
+                        return;
+                    } else if (count == 0) {
+                        return;
+                    }
+                    buffer.flip();
+                    byte[] bytes = new byte[count];
+                    buffer.get(bytes);
+                    child.onNext(bytes);
+                    if (closed.get()) {
+                        return;
+                    }
+                    BackpressureUtils.produced(this, 1);
+                }
+                setInterest(SelectionKey.OP_READ, false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        // called on the event loop
+        private void setInterest(int op, boolean on) {
+            if (key != null && key.isValid()) {
+                int ops = key.interestOps();
+                key.interestOps(on ? ops | op : ops & ~op);
+            }
+        }
+
+        private void fail(IOException e) {
+            if (closed.compareAndSet(false, true)) {
+                closeChannel();
+                Subscriber<? super byte[]> c = child;
+                if (c != null) {
+                    c.onError(e);
+                }
+            }
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                loop.execute(new Action0() {
+                    @Override
+                    public void call() {
+                        closeChannel();
+                    }
+                });
+            }
+        }
+
+        // called on the event loop
+        private void closeChannel() {
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            server.release();
+        }
+    }
+
+    private static void closeQuietly(Channel c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void closeQuietly(Selector selector) {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
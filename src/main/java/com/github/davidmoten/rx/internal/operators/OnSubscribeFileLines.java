@@ -0,0 +1,236 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.Observer;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Emits the lines of a file by scanning the raw bytes for {@code '\n'} and
+ * only decoding complete lines. Only suitable for charsets where the byte
+ * {@code '\n'} cannot occur inside a multibyte character (for example UTF-8,
+ * US-ASCII and the ISO-8859 family).
+ * 
+ * <p>
+ * A byte range of the file can be read using positional reads so that
+ * several ranges of the same file can be read concurrently. If the range does
+ * not start at the beginning of a line then the first emitted line will be
+ * partial.
+ */
+public final class OnSubscribeFileLines extends SyncOnSubscribe<OnSubscribeFileLines.State, String> {
+
+    private static final byte NEW_LINE = '\n';
+
+    private final File file;
+    private final Charset charset;
+    private final int bufferSize;
+    private final long start;
+    private final long end;
+
+    public OnSubscribeFileLines(File file, Charset charset, int bufferSize) {
+        this(file, charset, bufferSize, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param file
+     *            file to read
+     * @param charset
+     *            charset to decode lines with
+     * @param bufferSize
+     *            read buffer size in bytes
+     * @param start
+     *            position of the first byte to read (inclusive)
+     * @param end
+     *            position after the last byte to read (exclusive)
+     */
+    public OnSubscribeFileLines(File file, Charset charset, int bufferSize, long start,
+            long end) {
+        this.file = file;
+        this.charset = charset;
+        this.bufferSize = bufferSize;
+        this.start = start;
+        this.end = end;
+    }
+
+    static final class State {
+        final FileChannel channel;
+        // reused for every read
+        final ByteBuffer buffer;
+        final long end;
+        // position in the file of the next read
+        long position;
+        // accumulates the bytes of the current line, grows as required
+        byte[] line;
+        int lineLength;
+        boolean eof;
+
+        State(FileChannel channel, int bufferSize, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            // start with nothing to read
+            this.buffer.flip();
+            this.line = new byte[Math.min(bufferSize, 256)];
+        }
+
+        void append(int length) {
+            if (lineLength + length > line.length) {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+            }
+            buffer.get(line, lineLength, length);
+            lineLength += length;
+        }
+    }
+
+    @Override
+    protected State generateState() {
+        try {
+            return new State(new FileInputStream(file).getChannel(), bufferSize, start, end);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    @Override
+    protected State next(State state, Observer<? super String> observer) {
+        ByteBuffer buffer = state.buffer;
+        try {
+            while (true) {
+                int start = buffer.position();
+                int limit = buffer.limit();
+                for (int i = start; i < limit; i++) {
+                    if (buffer.get(i) == NEW_LINE) {
+                        state.append(i - start);
+                        // skip the new line
+                        buffer.get();
+                        emitLine(state, observer);
+                        return state;
+                    }
+                }
+                // no new line in the remaining bytes so keep them and read
+                // more
+                state.append(limit - start);
+                if (state.eof) {
+                    if (state.lineLength > 0) {
+                        emitLine(state, observer);
+                    }
+                    observer.onCompleted();
+                    return state;
+                }
+                buffer.clear();
+                long remaining = state.end - state.position;
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int count;
+                if (remaining == 0) {
+                    count = -1;
+                } else {
+                    count = state.channel.read(buffer, state.position);
+                }
+                buffer.flip();
+                if (count == -1) {
+                    state.eof = true;
+                } else {
+                    state.position += count;
+                }
+            }
+        } catch (IOException e) {
+            observer.onError(e);
+            return state;
+        }
+    }
+
+    private void emitLine(State state, Observer<? super String> observer) {
+        String s = new String(state.line, 0, state.lineLength, charset);
+        state.lineLength = 0;
+        observer.onNext(s);
+    }
+
+    /**
+     * Returns {@code chunks + 1} (or fewer) increasing positions in the file
+     * starting with 0 and ending with the file length such that every
+     * position apart from the first is immediately after a {@code '\n'} or
+     * at the end of the file. Consecutive positions delimit byte ranges of
+     * roughly equal size that can be read independently.
+     * 
+     * @param file
+     *            file to split into ranges
+     * @param chunks
+     *            the desired number of ranges
+     * @return range boundaries
+     */
+    public static long[] lineAlignedBoundaries(File file, int chunks) {
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            long size = channel.size();
+            long[] boundaries = new long[chunks + 1];
+            int count = 1;
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            for (int i = 1; i < chunks; i++) {
+                long nominal = size / chunks * i;
+                long previous = boundaries[count - 1];
+                if (nominal <= previous) {
+                    continue;
+                }
+                long boundary = nextLineStart(channel, nominal - 1, size, buffer);
+                if (boundary > previous && boundary < size) {
+                    boundaries[count++] = boundary;
+                }
+            }
+            boundaries[count++] = size;
+            return Arrays.copyOf(boundaries, count);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size,
+            ByteBuffer buffer) throws IOException {
+        while (position < size) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count == -1) {
+                break;
+            }
+            for (int i = 0; i < count; i++) {
+                if (buffer.get(i) == NEW_LINE) {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        return size;
+    }
+
+    @Override
+    protected void onUnsubscribe(State state) {
+        try {
+            state.channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.internal.operators.BackpressureUtils;
+import rx.internal.util.atomic.SpscAtomicArrayQueue;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Reads a file on a worker of the given scheduler into a bounded queue of
+ * buffers ahead of downstream requests so that disk reads overlap with
+ * downstream processing. Emissions happen on the requesting thread or on the
+ * reading worker.
+ */
+public final class OnSubscribeFileReadAhead implements OnSubscribe<byte[]> {
+
+    private final File file;
+    private final int size;
+    private final int readAhead;
+    private final Scheduler scheduler;
+
+    public OnSubscribeFileReadAhead(File file, int size, int readAhead, Scheduler scheduler) {
+        this.file = file;
+        this.size = size;
+        this.readAhead = readAhead;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void call(Subscriber<? super byte[]> child) {
+        final FileChannel channel;
+        try {
+            channel = new FileInputStream(file).getChannel();
+        } catch (IOException e) {
+            child.onError(e);
+            return;
+        }
+        final Worker worker = scheduler.createWorker();
+        final ReadAheadProducer producer = new ReadAheadProducer(child, channel, worker, size,
+                readAhead);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                // close the channel on the worker so that it is not closed
+                // during a read
+                worker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        closeQuietly(channel);
+                        worker.unsubscribe();
+                    }
+                });
+            }
+        }));
+        child.setProducer(producer);
+        producer.scheduleRead();
+    }
+
+    @SuppressWarnings("serial")
+    private static final class ReadAheadProducer extends AtomicLong implements Producer, Action0 {
+
+        private final Subscriber<? super byte[]> child;
+        private final FileChannel channel;
+        private final Worker worker;
+        private final int readAhead;
+        // only accessed by the worker
+        private final ByteBuffer buffer;
+        private final Queue<byte[]> queue;
+        // number of buffers read but not yet emitted
+        private final AtomicInteger buffered = new AtomicInteger();
+        private final AtomicBoolean reading = new AtomicBoolean();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean done;
+        private Throwable error;
+
+        ReadAheadProducer(Subscriber<? super byte[]> child, FileChannel channel, Worker worker,
+                int size, int readAhead) {
+            this.child = child;
+            this.channel = channel;
+            this.worker = worker;
+            this.readAhead = readAhead;
+            this.buffer = ByteBuffer.allocateDirect(size);
+            this.queue = new SpscAtomicArrayQueue<byte[]>(readAhead);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0) {
+                BackpressureUtils.getAndAddRequest(this, n);
+                drain();
+            }
+        }
+
+        void scheduleRead() {
+            if (!done && buffered.get() < readAhead && reading.compareAndSet(false, true)) {
+                worker.schedule(this);
+            }
+        }
+
+        // reads on the worker until the read ahead queue is full
+        @Override
+        public void call() {
+            try {
+                while (!done && !child.isUnsubscribed() && buffered.get() < readAhead) {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    if (count == -1) {
+                        closeQuietly(channel);
+                        done = true;
+                    } else if (count > 0) {
+                        buffer.flip();
+                        byte[] bytes = new byte[count];
+                        buffer.get(bytes);
+                        queue.offer(bytes);
+                        buffered.incrementAndGet();
+                    }
+                    drain();
+                }
+            } catch (IOException e) {
+                closeQuietly(channel);
+                if (!child.isUnsubscribed()) {
+                    error = e;
+                    done = true;
+                    drain();
+                }
+            } finally {
+                reading.set(false);
+            }
+            // a buffer may have been emitted after the loop condition was
+            // checked
+            scheduleRead();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                long r = get();
+                long e = 0;
+                while (e != r) {
+                    if (child.isUnsubscribed()) {
+                        return;
+                    }
+                    boolean d = done;
+                    byte[] bytes = queue.poll();
+                    if (bytes == null) {
+                        if (d) {
+                            terminate();
+                            return;
+                        }
+                        break;
+                    }
+                    buffered.decrementAndGet();
+                    child.onNext(bytes);
+                    e++;
+                }
+                if (e == r && done && queue.isEmpty() && !child.isUnsubscribed()) {
+                    terminate();
+                    return;
+                }
+                if (e != 0) {
+                    BackpressureUtils.produced(this, e);
+                    scheduleRead();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void terminate() {
+            if (error != null) {
+                child.onError(error);
+            } else {
+                child.onCompleted();
+            }
+            // the channel has already been closed by the worker
+            worker.unsubscribe();
+        }
+
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
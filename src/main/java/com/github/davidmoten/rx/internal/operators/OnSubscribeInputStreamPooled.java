@@ -0,0 +1,44 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.github.davidmoten.rx.util.BytePool;
+import com.github.davidmoten.rx.util.PooledBytes;
+
+import rx.Observer;
+import rx.observables.SyncOnSubscribe;
+
+public final class OnSubscribeInputStreamPooled extends SyncOnSubscribe<InputStream, PooledBytes> {
+
+    private final InputStream is;
+    private final BytePool pool;
+
+    public OnSubscribeInputStreamPooled(InputStream is, BytePool pool) {
+        this.is = is;
+        this.pool = pool;
+    }
+
+    @Override
+    protected InputStream generateState() {
+        return is;
+    }
+
+    @Override
+    protected InputStream next(InputStream is, Observer<? super PooledBytes> observer) {
+        PooledBytes buffer = pool.acquire();
+        try {
+            int count = is.read(buffer.array());
+            if (count == -1) {
+                buffer.release();
+                observer.onCompleted();
+            } else {
+                observer.onNext(buffer.slice(0, count));
+            }
+        } catch (IOException e) {
+            buffer.release();
+            observer.onError(e);
+        }
+        return is;
+    }
+}
@@ -1,25 +1,34 @@
 package com.github.davidmoten.rx.internal.operators;
 
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.github.davidmoten.rx.Actions;
+import com.github.davidmoten.rx.exceptions.MatchOverflowException;
+import com.github.davidmoten.rx.util.MatchEvictionPolicy;
 import com.github.davidmoten.util.Preconditions;
 
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
 import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.internal.operators.BackpressureUtils;
 import rx.internal.util.unsafe.MpscLinkedQueue;
 import rx.internal.util.unsafe.UnsafeAccess;
+import rx.schedulers.Schedulers;
 
 public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
 
@@ -29,24 +38,78 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
     private final Func1<? super B, ? extends K> bKey;
     private final Func2<? super A, ? super B, C> combiner;
     private final long requestSize;
+    private final int maxRetained;
+    private final MatchEvictionPolicy evictionPolicy;
+    private final long ttlMs;
+    private final Scheduler scheduler;
+    private final Action1<? super A> onEvictA;
+    private final Action1<? super B> onEvictB;
+    private final Stats stats;
 
     private static final Object NULL_SENTINEL = new Object();
 
+    // queued by the ttl timer to trigger expiry in the drain loop
+    private static final Object TICK = new Object();
+
+    /**
+     * Indicates that unmatched items are retained until matched.
+     */
+    public static final long NO_TTL = Long.MAX_VALUE;
+
     public OnSubscribeMatch(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
             Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
             long requestSize) {
+        this(a, b, aKey, bKey, combiner, requestSize, Integer.MAX_VALUE, MatchEvictionPolicy.ERROR,
+                NO_TTL, Schedulers.immediate(), Actions.doNothing1(),
+                Actions.doNothing1(), NO_STATS);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param maxRetained
+     *            maximum number of unmatched items retained per side
+     * @param evictionPolicy
+     *            applied when an item arrives for a side that is already
+     *            retaining {@code maxRetained} items
+     * @param ttlMs
+     *            time after arrival at which an unmatched item is evicted or
+     *            {@link #NO_TTL}
+     * @param scheduler
+     *            provides the current time and runs the expiry timer when
+     *            {@code ttlMs} is set
+     */
+    public OnSubscribeMatch(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
+            Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
+            long requestSize, int maxRetained, MatchEvictionPolicy evictionPolicy, long ttlMs,
+            Scheduler scheduler, Action1<? super A> onEvictA, Action1<? super B> onEvictB,
+            Stats stats) {
         Preconditions.checkNotNull(a, "a should not be null");
         Preconditions.checkNotNull(b, "b should not be null");
         Preconditions.checkNotNull(aKey, "aKey cannot be null");
         Preconditions.checkNotNull(bKey, "bKey cannot be null");
         Preconditions.checkNotNull(combiner, "combiner cannot be null");
         Preconditions.checkArgument(requestSize >= 1, "requestSize must be >=1");
+        Preconditions.checkArgument(maxRetained >= 1, "maxRetained must be >=1");
+        Preconditions.checkNotNull(evictionPolicy, "evictionPolicy cannot be null");
+        Preconditions.checkArgument(ttlMs > 0, "ttlMs must be >0");
+        Preconditions.checkNotNull(scheduler, "scheduler cannot be null");
+        Preconditions.checkNotNull(onEvictA, "onEvictA cannot be null");
+        Preconditions.checkNotNull(onEvictB, "onEvictB cannot be null");
+        Preconditions.checkNotNull(stats, "stats cannot be null");
         this.a = a;
         this.b = b;
         this.aKey = aKey;
         this.bKey = bKey;
         this.combiner = combiner;
         this.requestSize = requestSize;
+        this.maxRetained = maxRetained;
+        this.evictionPolicy = evictionPolicy;
+        this.ttlMs = ttlMs;
+        this.scheduler = scheduler;
+        this.onEvictA = onEvictA;
+        this.onEvictB = onEvictB;
+        this.stats = stats;
     }
 
     @Override
@@ -56,10 +119,23 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         MySubscriber<B, K> bSub = new MySubscriber<B, K>(Source.B, receiverHolder, requestSize);
         child.add(aSub);
         child.add(bSub);
-        MyProducer<A, B, K, C> producer = new MyProducer<A, B, K, C>(a, b, aKey, bKey, combiner,
-                aSub, bSub, child, requestSize);
+        final Worker worker = scheduler.createWorker();
+        child.add(worker);
+        final MyProducer<A, B, K, C> producer = new MyProducer<A, B, K, C>(aKey, bKey, combiner,
+                aSub, bSub, child, requestSize, maxRetained, evictionPolicy, ttlMs, worker,
+                onEvictA, onEvictB, stats);
         receiverHolder.set(producer);
         child.setProducer(producer);
+        if (ttlMs != NO_TTL) {
+            worker.schedulePeriodically(new Action0() {
+                @Override
+                public void call() {
+                    producer.tick();
+                }
+            }, ttlMs, ttlMs, TimeUnit.MILLISECONDS);
+        } else {
+            worker.unsubscribe();
+        }
         a.unsafeSubscribe(aSub);
         b.unsafeSubscribe(bSub);
     }
@@ -70,8 +146,8 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         // extends AtomicInteger as a work-in-progress atomic (wip)
 
         private final Queue<Object> queue;
-        private final Map<K, Queue<A>> as = new HashMap<K, Queue<A>>();
-        private final Map<K, Queue<B>> bs = new HashMap<K, Queue<B>>();
+        private final Pending<K, A> as = new Pending<K, A>();
+        private final Pending<K, B> bs = new Pending<K, B>();
         private final Func1<? super A, ? extends K> aKey;
         private final Func1<? super B, ? extends K> bKey;
         private final Func2<? super A, ? super B, C> combiner;
@@ -79,8 +155,16 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         private final MySubscriber<A, K> aSub;
         private final MySubscriber<B, K> bSub;
         private final long requestSize;
+        private final int maxRetained;
+        private final MatchEvictionPolicy evictionPolicy;
+        private final long ttlMs;
+        private final Worker worker;
+        private final Action1<? super A> onEvictA;
+        private final Action1<? super B> onEvictB;
+        private final Stats stats;
 
         private final AtomicLong requested = new AtomicLong(0);
+        private final AtomicBoolean tickQueued = new AtomicBoolean();
 
         // mutable fields, guarded by `this` atomics
         private int requestFromA = 0;
@@ -94,10 +178,11 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         private static final int COMPLETED_B = 2;
         private static final int COMPLETED_BOTH = 3;
 
-        MyProducer(Observable<A> a, Observable<B> b, Func1<? super A, ? extends K> aKey,
-                Func1<? super B, ? extends K> bKey, Func2<? super A, ? super B, C> combiner,
-                MySubscriber<A, K> aSub, MySubscriber<B, K> bSub, Subscriber<? super C> child,
-                long requestSize) {
+        MyProducer(Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+                Func2<? super A, ? super B, C> combiner, MySubscriber<A, K> aSub,
+                MySubscriber<B, K> bSub, Subscriber<? super C> child, long requestSize,
+                int maxRetained, MatchEvictionPolicy evictionPolicy, long ttlMs, Worker worker,
+                Action1<? super A> onEvictA, Action1<? super B> onEvictB, Stats stats) {
             this.aKey = aKey;
             this.bKey = bKey;
             this.combiner = combiner;
@@ -105,6 +190,13 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
             this.aSub = aSub;
             this.bSub = bSub;
             this.requestSize = requestSize;
+            this.maxRetained = maxRetained;
+            this.evictionPolicy = evictionPolicy;
+            this.ttlMs = ttlMs;
+            this.worker = worker;
+            this.onEvictA = onEvictA;
+            this.onEvictB = onEvictB;
+            this.stats = stats;
             if (UnsafeAccess.isUnsafeAvailable()) {
                 queue = new MpscLinkedQueue<Object>();
             } else {
@@ -146,6 +238,11 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                         } else if (em == Emitted.ONE) {
                             emitted += 1;
                         }
+                    } else if (v == TICK) {
+                        tickQueued.set(false);
+                        if (!expire(worker.now()) || finishIfUnmatchable()) {
+                            return;
+                        }
                     } else if (v instanceof Source) {
                         // source completed
                         Status status = handleCompleted((Source) v);
@@ -174,6 +271,7 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                     // reduce requested by emitted
                     BackpressureUtils.produced(requested, emitted);
                 }
+                stats.pending(as.size(), bs.size());
                 missed = this.addAndGet(-missed);
                 if (missed == 0 ) {
                     return;
@@ -183,6 +281,15 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
 
         private Emitted handleItem(Object value, Source source) {
             final Emitted result;
+            final long now;
+            if (ttlMs == NO_TTL) {
+                now = 0;
+            } else {
+                now = worker.now();
+                if (!expire(now)) {
+                    return Emitted.FINISHED;
+                }
+            }
 
             // logic duplication occurs below
             // would be nice to simplify without making code
@@ -199,14 +306,15 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                     child.onError(e);
                     return Emitted.FINISHED;
                 }
-                Queue<B> q = bs.get(key);
-                if (q == null) {
+                B b = bs.poll(key);
+                if (b == null) {
                     // cache value
-                    add(as, key, a);
+                    if (!retain(as, key, a, now, onEvictA, Source.A)) {
+                        return Emitted.FINISHED;
+                    }
                     result = Emitted.NONE;
                 } else {
                     // emit match
-                    B b = poll(bs, q, key);
                     C c;
                     try {
                         c = combiner.call(replaceSentinel(a), replaceSentinel(b));
@@ -218,16 +326,7 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                     child.onNext(c);
                     result = Emitted.ONE;
                 }
-                // if the other source has completed and there
-                // is nothing to match with then we should stop
-                if (completed == COMPLETED_B && bs.isEmpty()) {
-                    // can finish
-                    clear();
-                    child.onCompleted();
-                    return Emitted.FINISHED;
-                } else {
-                    requestFromA += 1;
-                }
+                requestFromA += 1;
             } else {
                 // look for match
                 @SuppressWarnings("unchecked")
@@ -240,14 +339,15 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                     child.onError(e);
                     return Emitted.FINISHED;
                 }
-                Queue<A> q = as.get(key);
-                if (q == null) {
+                A a = as.poll(key);
+                if (a == null) {
                     // cache value
-                    add(bs, key, b);
+                    if (!retain(bs, key, b, now, onEvictB, Source.B)) {
+                        return Emitted.FINISHED;
+                    }
                     result = Emitted.NONE;
                 } else {
                     // emit match
-                    A a = poll(as, q, key);
                     C c;
                     try {
                         c = combiner.call(replaceSentinel(a), replaceSentinel(b));
@@ -259,22 +359,88 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
                     child.onNext(c);
                     result = Emitted.ONE;
                 }
-                // if the other source has completed and there
-                // is nothing to match with then we should stop
-                if (completed == COMPLETED_A && as.isEmpty()) {
-                    // can finish
-                    clear();
-                    child.onCompleted();
-                    return Emitted.FINISHED;
-                } else {
-                    requestFromB += 1;
-                }
+                requestFromB += 1;
+            }
+            // if the other source has completed and there
+            // is nothing to match with then we should stop
+            if (finishIfUnmatchable()) {
+                return Emitted.FINISHED;
             }
             // requests are batched so that each source gets a turn
             checkToRequestMore();
             return result;
         }
 
+        /**
+         * Retains an unmatched item applying the retention limit. Returns false
+         * if the stream was terminated.
+         */
+        private <T> boolean retain(Pending<K, T> pending, K key, T value, long now,
+                Action1<? super T> onEvict, Source source) {
+            if (pending.size() >= maxRetained) {
+                if (evictionPolicy == MatchEvictionPolicy.OLDEST) {
+                    if (!evict(pending.removeOldest(), onEvict, source)) {
+                        return false;
+                    }
+                } else if (evictionPolicy == MatchEvictionPolicy.NEWEST) {
+                    return evict(value, onEvict, source);
+                } else {
+                    clear();
+                    child.onError(new MatchOverflowException("more than " + maxRetained
+                            + " unmatched items retained from source " + source));
+                    return false;
+                }
+            }
+            pending.add(key, value, now);
+            return true;
+        }
+
+        /**
+         * Evicts the items of both sides that arrived {@code ttlMs} or more
+         * before {@code now}. Returns false if the stream was terminated.
+         */
+        private boolean expire(long now) {
+            return expire(as, now, onEvictA, Source.A) && expire(bs, now, onEvictB, Source.B);
+        }
+
+        private <T> boolean expire(Pending<K, T> pending, long now, Action1<? super T> onEvict,
+                Source source) {
+            while (!pending.isEmpty() && now - pending.oldestTime() >= ttlMs) {
+                if (!evict(pending.removeOldest(), onEvict, source)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private <T> boolean evict(T value, Action1<? super T> onEvict, Source source) {
+            if (source == Source.A) {
+                stats.evictedA();
+            } else {
+                stats.evictedB();
+            }
+            try {
+                onEvict.call(replaceSentinel(value));
+                return true;
+            } catch (Throwable e) {
+                clear();
+                child.onError(e);
+                return false;
+            }
+        }
+
+        private boolean finishIfUnmatchable() {
+            if ((completed == COMPLETED_B && bs.isEmpty())
+                    || (completed == COMPLETED_A && as.isEmpty())) {
+                // can finish
+                clear();
+                child.onCompleted();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
         private enum Emitted {
             ONE, NONE, FINISHED;
         }
@@ -337,26 +503,11 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
         private void clear() {
             as.clear();
             bs.clear();
+            stats.pending(0, 0);
             queue.clear();
             aSub.unsubscribe();
             bSub.unsubscribe();
-        }
-
-        private static <K, T> void add(Map<K, Queue<T>> map, K key, T value) {
-            Queue<T> q = map.get(key);
-            if (q == null) {
-                q = new LinkedList<T>();
-                map.put(key, q);
-            }
-            q.offer(value);
-        }
-
-        private static <K, T> T poll(Map<K, Queue<T>> map, Queue<T> q, K key) {
-            T t = q.poll();
-            if (q.isEmpty()) {
-                map.remove(key);
-            }
-            return t;
+            worker.unsubscribe();
         }
 
         @Override
@@ -365,6 +516,14 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
             drain();
         }
 
+        void tick() {
+            // at most one tick is queued at a time so that ticks don't
+            // accumulate while there is no downstream demand
+            if (tickQueued.compareAndSet(false, true)) {
+                offer(TICK);
+            }
+        }
+
         private static <T> T replaceSentinel(T t) {
             if (t == NULL_SENTINEL) {
                 return null;
@@ -375,6 +534,149 @@ public final class OnSubscribeMatch<A, B, K, C> implements OnSubscribe<C> {
 
     }
 
+    /**
+     * Unmatched items of one side. Items with the same key form a chain from
+     * the map entry for that key (so a key with a single item costs one node
+     * and no queue) and all items form a doubly linked list in arrival order
+     * so that the oldest item can be evicted in constant time. The oldest item
+     * is always the head of the chain for its key.
+     */
+    static final class Pending<K, T> {
+
+        private final Map<K, Node<K, T>> heads = new HashMap<K, Node<K, T>>();
+        private Node<K, T> oldest;
+        private Node<K, T> newest;
+        private int size;
+
+        void add(K key, T value, long time) {
+            Node<K, T> node = new Node<K, T>(key, value, time);
+            if (newest == null) {
+                oldest = node;
+            } else {
+                newest.next = node;
+                node.previous = newest;
+            }
+            newest = node;
+            Node<K, T> head = heads.get(key);
+            if (head == null) {
+                node.last = node;
+                heads.put(key, node);
+            } else {
+                head.last.nextSameKey = node;
+                head.last = node;
+            }
+            size++;
+        }
+
+        /**
+         * Removes and returns the oldest item with the given key or returns
+         * null if there is none.
+         */
+        T poll(K key) {
+            Node<K, T> head = heads.get(key);
+            if (head == null) {
+                return null;
+            } else {
+                remove(head);
+                return head.value;
+            }
+        }
+
+        T removeOldest() {
+            Node<K, T> node = oldest;
+            remove(node);
+            return node.value;
+        }
+
+        long oldestTime() {
+            return oldest.time;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            heads.clear();
+            oldest = null;
+            newest = null;
+            size = 0;
+        }
+
+        // node must be the head of the chain for its key
+        private void remove(Node<K, T> node) {
+            Node<K, T> nextSameKey = node.nextSameKey;
+            if (nextSameKey == null) {
+                heads.remove(node.key);
+            } else {
+                nextSameKey.last = node.last;
+                heads.put(node.key, nextSameKey);
+            }
+            if (node.previous == null) {
+                oldest = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                newest = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            size--;
+        }
+    }
+
+    private static final class Node<K, T> {
+        final K key;
+        final T value;
+        final long time;
+        Node<K, T> previous;
+        Node<K, T> next;
+        Node<K, T> nextSameKey;
+        // only maintained on the head of a chain
+        Node<K, T> last;
+
+        Node(K key, T value, long time) {
+            this.key = key;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Receives counter updates from the drain loop.
+     */
+    public interface Stats {
+
+        void pending(long a, long b);
+
+        void evictedA();
+
+        void evictedB();
+    }
+
+    public static final Stats NO_STATS = new Stats() {
+
+        @Override
+        public void pending(long a, long b) {
+            // do nothing
+        }
+
+        @Override
+        public void evictedA() {
+            // do nothing
+        }
+
+        @Override
+        public void evictedB() {
+            // do nothing
+        }
+    };
+
     interface Receiver {
         void offer(Object item);
     }
@@ -0,0 +1,442 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.util.JoinType;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.internal.operators.BackpressureUtils;
+import rx.internal.util.atomic.SpscAtomicArrayQueue;
+import rx.plugins.RxJavaHooks;
+
+/**
+ * Joins two sources that are both sorted by key (ascending according to a
+ * comparator) by advancing whichever source has the smaller key. Only the
+ * run of items from {@code b} with the current key is held in memory (plus at
+ * most {@code requestSize} prefetched items per source) and each item from
+ * {@code a} with that key is combined with every item in the run. If a source
+ * is not sorted then items are not matched reliably.
+ */
+public final class OnSubscribeMergeJoin<A, B, K, C> implements OnSubscribe<C> {
+
+    private final Observable<A> a;
+    private final Observable<B> b;
+    private final Func1<? super A, ? extends K> aKey;
+    private final Func1<? super B, ? extends K> bKey;
+    private final Comparator<? super K> comparator;
+    private final Func2<? super A, ? super B, C> combiner;
+    private final JoinType joinType;
+    private final int requestSize;
+
+    private static final Object NULL_SENTINEL = new Object();
+
+    public OnSubscribeMergeJoin(Observable<A> a, Observable<B> b,
+            Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+            Comparator<? super K> comparator, Func2<? super A, ? super B, C> combiner,
+            JoinType joinType, int requestSize) {
+        Preconditions.checkNotNull(a, "a should not be null");
+        Preconditions.checkNotNull(b, "b should not be null");
+        Preconditions.checkNotNull(aKey, "aKey cannot be null");
+        Preconditions.checkNotNull(bKey, "bKey cannot be null");
+        Preconditions.checkNotNull(comparator, "comparator cannot be null");
+        Preconditions.checkNotNull(combiner, "combiner cannot be null");
+        Preconditions.checkNotNull(joinType, "joinType cannot be null");
+        Preconditions.checkArgument(requestSize >= 1, "requestSize must be >=1");
+        this.a = a;
+        this.b = b;
+        this.aKey = aKey;
+        this.bKey = bKey;
+        this.comparator = comparator;
+        this.combiner = combiner;
+        this.joinType = joinType;
+        this.requestSize = requestSize;
+    }
+
+    @Override
+    public void call(Subscriber<? super C> child) {
+        JoinProducer<A, B, K, C> producer = new JoinProducer<A, B, K, C>(aKey, bKey, comparator,
+                combiner, joinType, requestSize, child);
+        child.add(producer.aSub);
+        child.add(producer.bSub);
+        child.setProducer(producer);
+        a.unsafeSubscribe(producer.aSub);
+        b.unsafeSubscribe(producer.bSub);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class JoinProducer<A, B, K, C> extends AtomicInteger
+            implements Producer {
+        // extends AtomicInteger as a work-in-progress atomic (wip)
+
+        private final Func1<? super A, ? extends K> aKey;
+        private final Func1<? super B, ? extends K> bKey;
+        private final Comparator<? super K> comparator;
+        private final Func2<? super A, ? super B, C> combiner;
+        private final JoinType joinType;
+        private final Subscriber<? super C> child;
+        final SourceSubscriber<A> aSub;
+        final SourceSubscriber<B> bSub;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        // mutable fields, guarded by `this` atomics
+
+        // the current run of items from b with key runKey
+        private final List<B> run = new ArrayList<B>();
+        private K runKey;
+        private boolean runActive;
+        private boolean runComplete;
+        private boolean runMatched;
+
+        // the item from a being combined with the run (or the run being
+        // emitted unmatched if emittingRun is true) from run index runIndex
+        private A currentA;
+        private boolean emittingA;
+        private boolean emittingRun;
+        private int runIndex;
+
+        // keys of the last peeked items so that keys are calculated once
+        private Object peekedA;
+        private K peekedAKey;
+        private Object peekedB;
+        private K peekedBKey;
+
+        JoinProducer(Func1<? super A, ? extends K> aKey, Func1<? super B, ? extends K> bKey,
+                Comparator<? super K> comparator, Func2<? super A, ? super B, C> combiner,
+                JoinType joinType, int requestSize, Subscriber<? super C> child) {
+            this.aKey = aKey;
+            this.bKey = bKey;
+            this.comparator = comparator;
+            this.combiner = combiner;
+            this.joinType = joinType;
+            this.child = child;
+            this.aSub = new SourceSubscriber<A>(this, requestSize);
+            this.bSub = new SourceSubscriber<B>(this, requestSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (BackpressureUtils.validate(n)) {
+                BackpressureUtils.getAndAddRequest(requested, n);
+                drain();
+            }
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                long r = requested.get();
+                long e = 0;
+                try {
+                    while (true) {
+                        if (child.isUnsubscribed()) {
+                            clear();
+                            return;
+                        }
+                        Step step = step(r == e);
+                        if (step == Step.EMITTED) {
+                            e++;
+                        } else if (step == Step.WAIT) {
+                            break;
+                        } else if (step == Step.FINISHED) {
+                            return;
+                        }
+                    }
+                } catch (Throwable ex) {
+                    // key function, comparator or combiner failed
+                    clear();
+                    child.onError(ex);
+                    return;
+                }
+                if (e > 0) {
+                    BackpressureUtils.produced(requested, e);
+                }
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private enum Step {
+            EMITTED, CONSUMED, WAIT, FINISHED;
+        }
+
+        /**
+         * Advances the join by one emission or by consuming one item.
+         * 
+         * @param full
+         *            true if there is no outstanding downstream demand
+         */
+        @SuppressWarnings("unchecked")
+        private Step step(boolean full) {
+            // read done before error (onError sets error then done) so that an
+            // error is never mistaken for completion, and read done before
+            // peeking so that no item is missed
+            boolean aDone = aSub.done;
+            boolean bDone = bSub.done;
+            Throwable error = aDone ? aSub.error : null;
+            if (error == null && bDone) {
+                error = bSub.error;
+            }
+            if (error != null) {
+                clear();
+                child.onError(error);
+                return Step.FINISHED;
+            }
+            if (emittingA || emittingRun) {
+                if (runIndex < run.size()) {
+                    if (full) {
+                        return Step.WAIT;
+                    }
+                    B bValue = run.get(runIndex++);
+                    emit(emittingA ? currentA : null, bValue);
+                    return Step.EMITTED;
+                } else if (emittingA) {
+                    emittingA = false;
+                    currentA = null;
+                } else {
+                    emittingRun = false;
+                    endRun();
+                }
+                return Step.CONSUMED;
+            }
+            if (runActive && !runComplete) {
+                // extend the run with the next item from b if it has the same key
+                Object bItem = bSub.queue.peek();
+                if (bItem != null) {
+                    if (comparator.compare(keyB(bItem), runKey) == 0) {
+                        run.add((B) replaceSentinel(bItem));
+                        bSub.poll();
+                        return Step.CONSUMED;
+                    } else {
+                        runComplete = true;
+                    }
+                } else if (bDone) {
+                    runComplete = true;
+                } else {
+                    return Step.WAIT;
+                }
+            }
+            Object aItem = aSub.queue.peek();
+            if (runActive) {
+                // the run is complete
+                if (aItem == null && !aDone) {
+                    return Step.WAIT;
+                } else if (aItem != null && comparator.compare(keyA(aItem), runKey) == 0) {
+                    aSub.poll();
+                    currentA = (A) replaceSentinel(aItem);
+                    emittingA = true;
+                    runIndex = 0;
+                    runMatched = true;
+                } else if (joinType == JoinType.FULL_OUTER && !runMatched) {
+                    emittingRun = true;
+                    runIndex = 0;
+                } else {
+                    endRun();
+                }
+                return Step.CONSUMED;
+            }
+            Object bItem = bSub.queue.peek();
+            boolean aExhausted = aItem == null && aDone;
+            boolean bExhausted = bItem == null && bDone;
+            if ((aExhausted && bExhausted) || (aExhausted && joinType != JoinType.FULL_OUTER)
+                    || (bExhausted && joinType == JoinType.INNER)) {
+                // nothing more can be emitted
+                return complete();
+            } else if ((aItem == null && !aDone) || (bItem == null && !bDone)) {
+                return Step.WAIT;
+            } else if (bItem == null) {
+                // b is exhausted so the remaining items of a are unmatched
+                if (full) {
+                    return Step.WAIT;
+                }
+                aSub.poll();
+                emit(replaceSentinel(aItem), null);
+                return Step.EMITTED;
+            } else if (aItem == null) {
+                // a is exhausted so the remaining items of b are unmatched
+                if (full) {
+                    return Step.WAIT;
+                }
+                bSub.poll();
+                emit(null, replaceSentinel(bItem));
+                return Step.EMITTED;
+            }
+            K kb = keyB(bItem);
+            int c = comparator.compare(keyA(aItem), kb);
+            if (c < 0) {
+                if (joinType == JoinType.INNER) {
+                    aSub.poll();
+                    return Step.CONSUMED;
+                } else if (full) {
+                    return Step.WAIT;
+                }
+                aSub.poll();
+                emit(replaceSentinel(aItem), null);
+                return Step.EMITTED;
+            } else if (c > 0) {
+                if (joinType != JoinType.FULL_OUTER) {
+                    bSub.poll();
+                    return Step.CONSUMED;
+                } else if (full) {
+                    return Step.WAIT;
+                }
+                bSub.poll();
+                emit(null, replaceSentinel(bItem));
+                return Step.EMITTED;
+            } else {
+                // start a run
+                bSub.poll();
+                run.add((B) replaceSentinel(bItem));
+                runKey = kb;
+                runActive = true;
+                runComplete = false;
+                runMatched = false;
+                return Step.CONSUMED;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void emit(Object aValue, Object bValue) {
+            child.onNext(combiner.call((A) aValue, (B) bValue));
+        }
+
+        private void endRun() {
+            run.clear();
+            runKey = null;
+            runActive = false;
+        }
+
+        private Step complete() {
+            clear();
+            child.onCompleted();
+            return Step.FINISHED;
+        }
+
+        @SuppressWarnings("unchecked")
+        private K keyA(Object item) {
+            if (item != peekedA) {
+                peekedAKey = aKey.call((A) replaceSentinel(item));
+                peekedA = item;
+            }
+            return peekedAKey;
+        }
+
+        @SuppressWarnings("unchecked")
+        private K keyB(Object item) {
+            if (item != peekedB) {
+                peekedBKey = bKey.call((B) replaceSentinel(item));
+                peekedB = item;
+            }
+            return peekedBKey;
+        }
+
+        private void clear() {
+            aSub.unsubscribe();
+            bSub.unsubscribe();
+            aSub.queue.clear();
+            bSub.queue.clear();
+            run.clear();
+            currentA = null;
+            runKey = null;
+            peekedA = null;
+            peekedAKey = null;
+            peekedB = null;
+            peekedBKey = null;
+        }
+
+    }
+
+    private static final class SourceSubscriber<T> extends Subscriber<T> {
+
+        private final JoinProducer<?, ?, ?, ?> parent;
+        private final int requestSize;
+        final Queue<Object> queue;
+
+        // only accessed by the drain loop
+        private int consumed;
+
+        volatile boolean done;
+        volatile Throwable error;
+
+        SourceSubscriber(JoinProducer<?, ?, ?, ?> parent, int requestSize) {
+            this.parent = parent;
+            this.requestSize = requestSize;
+            this.queue = new SpscAtomicArrayQueue<Object>(requestSize);
+            request(requestSize);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) {
+                return;
+            }
+            if (!queue.offer(t == null ? NULL_SENTINEL : t)) {
+                // the source ignored backpressure
+                unsubscribe();
+                onError(new MissingBackpressureException());
+                return;
+            }
+            parent.drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.drain();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            if (done) {
+                RxJavaHooks.onError(e);
+                return;
+            }
+            error = e;
+            done = true;
+            parent.drain();
+        }
+
+        /**
+         * Removes the head of the queue and requests another batch once a
+         * batch has been consumed.
+         */
+        void poll() {
+            queue.poll();
+            consumed++;
+            if (consumed == requestSize) {
+                consumed = 0;
+                request(requestSize);
+            }
+        }
+
+    }
+
+    private static Object replaceSentinel(Object t) {
+        if (t == NULL_SENTINEL) {
+            return null;
+        } else {
+            return t;
+        }
+    }
+
+}
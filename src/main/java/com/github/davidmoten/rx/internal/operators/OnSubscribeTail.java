@@ -0,0 +1,205 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.util.Positioned;
+
+import rx.Observable.OnSubscribe;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Emits the bytes appended to a file as it grows, starting from a given
+ * position. Reads only happen when there is outstanding demand and new data is
+ * checked for by polling the file on a worker of the given scheduler (and
+ * immediately when demand arrives). If the file is truncated or the path is
+ * found to refer to a different file (log rotation) then reading restarts at
+ * the beginning of the file at that path once the open file has been read to
+ * its end. All reads and emissions happen on the worker.
+ */
+public final class OnSubscribeTail implements OnSubscribe<Positioned<byte[]>> {
+
+    private final File file;
+    private final long startPosition;
+    private final long pollIntervalMs;
+    private final int bufferSize;
+    private final Scheduler scheduler;
+
+    public OnSubscribeTail(File file, long startPosition, long pollIntervalMs, int bufferSize,
+            Scheduler scheduler) {
+        this.file = file;
+        this.startPosition = startPosition;
+        this.pollIntervalMs = pollIntervalMs;
+        this.bufferSize = bufferSize;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void call(Subscriber<? super Positioned<byte[]>> child) {
+        final Worker worker = scheduler.createWorker();
+        final TailProducer producer = new TailProducer(child, worker, file, startPosition,
+                bufferSize);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                // close the channel on the worker so that it is not closed
+                // during a read
+                worker.schedule(new Action0() {
+                    @Override
+                    public void call() {
+                        producer.close();
+                        worker.unsubscribe();
+                    }
+                });
+            }
+        }));
+        child.setProducer(producer);
+        worker.schedulePeriodically(producer, pollIntervalMs, pollIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("serial")
+    private static final class TailProducer extends AtomicLong implements Producer, Action0 {
+
+        private final Subscriber<? super Positioned<byte[]>> child;
+        private final Worker worker;
+        private final File file;
+        private final ByteBuffer buffer;
+
+        // accessed only on the worker
+        private FileChannel channel;
+        private long position;
+        private boolean done;
+
+        TailProducer(Subscriber<? super Positioned<byte[]>> child, Worker worker, File file,
+                long startPosition, int bufferSize) {
+            this.child = child;
+            this.worker = worker;
+            this.file = file;
+            this.position = startPosition;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0 && BackpressureUtils.getAndAddRequest(this, n) == 0) {
+                worker.schedule(this);
+            }
+        }
+
+        // reads on the worker while there is demand and new data
+        @Override
+        public void call() {
+            if (done || child.isUnsubscribed()) {
+                return;
+            }
+            try {
+                long r = get();
+                long e = 0;
+                while (e != r) {
+                    if (channel == null && !open()) {
+                        break;
+                    }
+                    buffer.clear();
+                    int count = channel.read(buffer, position);
+                    if (count > 0) {
+                        buffer.flip();
+                        byte[] bytes = new byte[count];
+                        buffer.get(bytes);
+                        position += count;
+                        child.onNext(Positioned.create(bytes, position));
+                        if (child.isUnsubscribed()) {
+                            return;
+                        }
+                        e++;
+                    } else if (!checkRotated()) {
+                        break;
+                    }
+                    if (e == r) {
+                        r = BackpressureUtils.produced(this, e);
+                        e = 0;
+                    }
+                }
+                if (e != 0) {
+                    BackpressureUtils.produced(this, e);
+                }
+            } catch (IOException ex) {
+                done = true;
+                close();
+                child.onError(ex);
+                worker.unsubscribe();
+            }
+        }
+
+        /**
+         * Opens the file if it exists and returns true if opened.
+         */
+        private boolean open() throws IOException {
+            if (!file.exists()) {
+                return false;
+            }
+            channel = new FileInputStream(file).getChannel();
+            if (position > channel.size()) {
+                // the file has been replaced or truncated since the position
+                // was recorded
+                position = 0;
+            }
+            return true;
+        }
+
+        /**
+         * Called when the open file has been read to its end. Returns true if
+         * the open file has been truncated or replaced, in which case reading
+         * continues from the start of the file.
+         */
+        private boolean checkRotated() throws IOException {
+            long size = channel.size();
+            if (size > position) {
+                // more was written after the read
+                return true;
+            } else if (size < position) {
+                // truncated in place
+                position = 0;
+                return true;
+            }
+            // the open file has been read to its end so check if the path now
+            // refers to a different file. If it is the same file then its
+            // length cannot be greater than the size read after it and cannot
+            // be less than the position without the above truncation check
+            // applying
+            long length = file.length();
+            if (file.exists() && (length < position || length > channel.size())) {
+                close();
+                position = 0;
+                return true;
+            } else {
+                // a moved file not yet recreated is waited for
+                return false;
+            }
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+                channel = null;
+            }
+        }
+
+    }
+
+}
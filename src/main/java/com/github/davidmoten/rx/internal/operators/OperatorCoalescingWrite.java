@@ -0,0 +1,182 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.Observable.Operator;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Action0;
+import rx.internal.util.atomic.SpscAtomicArrayQueue;
+
+/**
+ * Writes the source byte arrays to an {@link OutputStream} on a worker of the
+ * given scheduler. Arrays that have arrived since the last write are gathered
+ * into one buffer and written (and flushed) together, so there is a write per
+ * batch rather than a write per array. At most {@code prefetch} arrays are
+ * requested ahead of being written so a blocked write (for example when a
+ * socket send buffer is full) applies backpressure to the source. Emits
+ * nothing and completes once everything has been written and flushed.
+ */
+public final class OperatorCoalescingWrite implements Operator<Void, byte[]> {
+
+    private final OutputStream out;
+    private final int bufferSize;
+    private final int prefetch;
+    private final Scheduler scheduler;
+
+    public OperatorCoalescingWrite(OutputStream out, int bufferSize, int prefetch,
+            Scheduler scheduler) {
+        this.out = out;
+        this.bufferSize = bufferSize;
+        this.prefetch = prefetch;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Subscriber<? super byte[]> call(Subscriber<? super Void> child) {
+        Worker worker = scheduler.createWorker();
+        WriteSubscriber parent = new WriteSubscriber(child, out, bufferSize, prefetch, worker);
+        child.add(worker);
+        child.add(parent);
+        return parent;
+    }
+
+    private static final class WriteSubscriber extends Subscriber<byte[]> implements Action0 {
+
+        private final Subscriber<? super Void> child;
+        private final OutputStream out;
+        private final int prefetch;
+        private final Worker worker;
+        private final Queue<byte[]> queue;
+        private final AtomicInteger wip = new AtomicInteger();
+        // accessed only on the worker
+        private final byte[] buffer;
+        private int position;
+
+        private volatile boolean done;
+        private Throwable error;
+        private boolean finished;
+
+        WriteSubscriber(Subscriber<? super Void> child, OutputStream out, int bufferSize,
+                int prefetch, Worker worker) {
+            this.child = child;
+            this.out = out;
+            this.prefetch = prefetch;
+            this.worker = worker;
+            this.queue = new SpscAtomicArrayQueue<byte[]>(prefetch);
+            this.buffer = new byte[bufferSize];
+        }
+
+        @Override
+        public void onStart() {
+            request(prefetch);
+        }
+
+        @Override
+        public void onNext(byte[] bytes) {
+            if (!queue.offer(bytes)) {
+                onError(new MissingBackpressureException());
+                return;
+            }
+            schedule();
+        }
+
+        @Override
+        public void onCompleted() {
+            done = true;
+            schedule();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            done = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this);
+            }
+        }
+
+        // drains on the worker
+        @Override
+        public void call() {
+            int missed = 1;
+            while (true) {
+                if (finished) {
+                    return;
+                }
+                try {
+                    long consumed = 0;
+                    while (true) {
+                        boolean d = done;
+                        byte[] bytes = queue.poll();
+                        if (bytes == null) {
+                            if (position > 0 || consumed > 0) {
+                                writeBuffer();
+                                out.flush();
+                            }
+                            if (d) {
+                                finish();
+                                return;
+                            }
+                            break;
+                        }
+                        append(bytes);
+                        consumed++;
+                    }
+                    if (consumed > 0) {
+                        request(consumed);
+                    }
+                } catch (IOException e) {
+                    finished = true;
+                    unsubscribe();
+                    child.onError(e);
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void append(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.length - position) {
+                writeBuffer();
+            }
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        private void writeBuffer() throws IOException {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        private void finish() {
+            finished = true;
+            Throwable e = error;
+            if (e != null) {
+                child.onError(e);
+            } else {
+                child.onCompleted();
+            }
+        }
+
+    }
+
+}
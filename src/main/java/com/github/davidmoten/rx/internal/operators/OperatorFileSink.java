@@ -0,0 +1,285 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.util.SyncPolicy;
+
+import rx.Observable.Operator;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Writes byte arrays to a sequence of files, coalescing small arrays into
+ * large writes through a reusable direct buffer. A file is closed (rolled
+ * over) once it has reached a maximum size or age and each file is emitted
+ * downstream once it has been closed. The last file is closed and emitted on
+ * completion of the source.
+ */
+public final class OperatorFileSink implements Operator<File, byte[]> {
+
+    private final Func1<Integer, File> fileFactory;
+    private final int bufferSize;
+    private final long rolloverSizeBytes;
+    private final long rolloverEveryMs;
+    private final SyncPolicy syncPolicy;
+    private final boolean append;
+    private final Scheduler scheduler;
+
+    public OperatorFileSink(Func1<Integer, File> fileFactory, int bufferSize,
+            long rolloverSizeBytes, long rolloverEveryMs, SyncPolicy syncPolicy, boolean append,
+            Scheduler scheduler) {
+        this.fileFactory = fileFactory;
+        this.bufferSize = bufferSize;
+        this.rolloverSizeBytes = rolloverSizeBytes;
+        this.rolloverEveryMs = rolloverEveryMs;
+        this.syncPolicy = syncPolicy;
+        this.append = append;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Subscriber<? super byte[]> call(Subscriber<? super File> child) {
+        final SinkSubscriber parent = new SinkSubscriber(child, this);
+        child.add(parent);
+        child.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                parent.cancel();
+            }
+        }));
+        child.setProducer(new Producer() {
+            @Override
+            public void request(long n) {
+                parent.requestMore(n);
+            }
+        });
+        return parent;
+    }
+
+    private static final class SinkSubscriber extends Subscriber<byte[]> {
+
+        private final Subscriber<? super File> child;
+        private final OperatorFileSink op;
+        private final ByteBuffer buffer;
+        private final AtomicLong requested = new AtomicLong();
+        // holds at most the last file emitted on completion
+        private final Queue<File> queue = new ArrayDeque<File>(1);
+
+        private int index;
+        private File file;
+        private FileChannel channel;
+        private long fileBytes;
+        private long fileOpenedAt;
+        private boolean done;
+
+        // 1 while the writer (or the cancel that closed the channel) is using
+        // the channel so that the channel is never closed part way through a
+        // write on another thread
+        private final AtomicInteger busy = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        SinkSubscriber(Subscriber<? super File> child, OperatorFileSink op) {
+            this.child = child;
+            this.op = op;
+            this.buffer = ByteBuffer.allocateDirect(op.bufferSize);
+        }
+
+        void requestMore(long n) {
+            if (n > 0 && BackpressureUtils.postCompleteRequest(requested, n, queue, child)) {
+                request(n);
+            }
+        }
+
+        @Override
+        public void onNext(byte[] bytes) {
+            if (done || !enter()) {
+                return;
+            }
+            File closed = null;
+            try {
+                if (channel != null && op.rolloverEveryMs != Long.MAX_VALUE
+                        && now() - fileOpenedAt >= op.rolloverEveryMs) {
+                    closed = closeFile();
+                }
+                if (channel == null) {
+                    openFile();
+                }
+                write(bytes);
+                if (closed == null && fileBytes >= op.rolloverSizeBytes) {
+                    closed = closeFile();
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } finally {
+                exit();
+            }
+            if (closed == null) {
+                request(1);
+            } else {
+                BackpressureUtils.produced(requested, 1);
+                child.onNext(closed);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (done || !enter()) {
+                return;
+            }
+            File closed;
+            try {
+                if (channel == null && index == 0) {
+                    // create the file even if there were no emissions
+                    openFile();
+                }
+                closed = closeFile();
+            } catch (IOException e) {
+                fail(e);
+                return;
+            } finally {
+                exit();
+            }
+            done = true;
+            if (closed != null) {
+                queue.offer(closed);
+            }
+            BackpressureUtils.postCompleteDone(requested, queue, child);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            if (done || !enter()) {
+                return;
+            }
+            done = true;
+            try {
+                closeQuietly();
+            } finally {
+                exit();
+            }
+            child.onError(e);
+        }
+
+        private void fail(IOException e) {
+            done = true;
+            unsubscribe();
+            closeQuietly();
+            // a write-behind worker is interrupted on unsubscribe which closes
+            // the channel, that failure is not reported to the child
+            if (!child.isUnsubscribed()) {
+                child.onError(e);
+            }
+        }
+
+        private long now() {
+            return op.scheduler.now();
+        }
+
+        private void openFile() throws IOException {
+            file = op.fileFactory.call(index++);
+            channel = new FileOutputStream(file, op.append).getChannel();
+            fileBytes = 0;
+            fileOpenedAt = now();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                // too big to coalesce so write directly
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+            fileBytes += bytes.length;
+        }
+
+        private void flush() throws IOException {
+            if (buffer.position() > 0) {
+                buffer.flip();
+                writeFully(buffer);
+                buffer.clear();
+            }
+        }
+
+        private void writeFully(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+            if (op.syncPolicy == SyncPolicy.EVERY_WRITE) {
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Flushes and closes the current file and returns it (or returns null
+         * if no file is open).
+         */
+        private File closeFile() throws IOException {
+            if (channel == null) {
+                return null;
+            }
+            try {
+                flush();
+                if (op.syncPolicy == SyncPolicy.ON_CLOSE) {
+                    channel.force(false);
+                }
+            } finally {
+                channel.close();
+                channel = null;
+            }
+            return file;
+        }
+
+        /**
+         * Called on unsubscribe. Closes the channel now if no write is in
+         * progress, otherwise the writer closes it when it exits.
+         */
+        void cancel() {
+            cancelled = true;
+            if (busy.compareAndSet(0, 1)) {
+                // stays busy so that no more writes happen
+                closeQuietly();
+            }
+        }
+
+        private boolean enter() {
+            return !cancelled && busy.compareAndSet(0, 1);
+        }
+
+        private void exit() {
+            busy.set(0);
+            if (cancelled && busy.compareAndSet(0, 1)) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            FileChannel c = channel;
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+    }
+
+}
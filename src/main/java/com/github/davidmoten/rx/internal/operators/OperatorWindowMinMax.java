@@ -1,10 +1,6 @@
 package com.github.davidmoten.rx.internal.operators;
 
-import java.util.ArrayDeque;
 import java.util.Comparator;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
 
 import com.github.davidmoten.util.Preconditions;
 
@@ -15,7 +11,9 @@ import rx.Subscriber;
 /**
  * Uses a double-ended queue and collapses entries when they are redundant
  * (whenever a value is added to the queue all values at the end of the queue
- * that are greater or equal to that value are removed).
+ * that are greater or equal to that value are removed). The queue is a ring
+ * of arrays that starts small and doubles (up to {@code windowSize}) when
+ * full so no allocation happens per element once it has grown.
  * 
  * @param <T>
  *            generic type of stream emissions
@@ -45,11 +43,14 @@ public final class OperatorWindowMinMax<T> implements Operator<T, T> {
 
             long count = 0;
 
-            // queue of indices
-            final Deque<Long> q = new ArrayDeque<Long>();
-
-            // map index to value
-            final Map<Long, T> values = new HashMap<Long, T>();
+            // ring of indices with the values at the same positions, holding
+            // at most windowSize entries from head (inclusive) to tail
+            // (exclusive)
+            long[] indices = new long[initialCapacity(windowSize)];
+            Object[] values = new Object[indices.length];
+            int head = 0;
+            int tail = 0;
+            int size = 0;
 
             @Override
             public void onCompleted() {
@@ -61,35 +62,67 @@ public final class OperatorWindowMinMax<T> implements Operator<T, T> {
                 child.onError(e);
             }
 
+            @SuppressWarnings("unchecked")
             @Override
             public void onNext(T t) {
                 count++;
+                // if window past the head index then remove it
+                if (size > 0 && indices[head] == count - windowSize) {
+                    values[head] = null;
+                    head = next(head);
+                    size--;
+                }
                 // add to queue
                 addToQueue(t);
                 if (count >= windowSize) {
-                    // emit max
-
                     // head of queue is max
-                    Long head = q.peekFirst();
-                    final T value;
-                    if (head == count - windowSize) {
-                        // if window past that index then remove from map
-                        values.remove(q.pollFirst());
-                        value = values.get(q.peekFirst());
-                    } else {
-                        value = values.get(head);
-                    }
-                    child.onNext(value);
+                    child.onNext((T) values[head]);
                 }
             }
 
+            @SuppressWarnings("unchecked")
             private void addToQueue(T t) {
-                Long v;
-                while ((v = q.peekLast()) != null && compare(t, values.get(v)) <= 0) {
-                    values.remove(q.pollLast());
+                while (size > 0) {
+                    int last = previous(tail);
+                    if (compare(t, (T) values[last]) <= 0) {
+                        values[last] = null;
+                        tail = last;
+                        size--;
+                    } else {
+                        break;
+                    }
                 }
-                values.put(count, t);
-                q.offerLast(count);
+                if (size == indices.length) {
+                    grow();
+                }
+                indices[tail] = count;
+                values[tail] = t;
+                tail = next(tail);
+                size++;
+            }
+
+            private void grow() {
+                int capacity = (int) Math.min((long) indices.length * 2, windowSize);
+                long[] newIndices = new long[capacity];
+                Object[] newValues = new Object[capacity];
+                // unroll the ring so that head is at 0
+                int n = indices.length - head;
+                System.arraycopy(indices, head, newIndices, 0, n);
+                System.arraycopy(indices, 0, newIndices, n, head);
+                System.arraycopy(values, head, newValues, 0, n);
+                System.arraycopy(values, 0, newValues, n, head);
+                indices = newIndices;
+                values = newValues;
+                head = 0;
+                tail = size;
+            }
+
+            private int next(int position) {
+                return position == indices.length - 1 ? 0 : position + 1;
+            }
+
+            private int previous(int position) {
+                return position == 0 ? indices.length - 1 : position - 1;
             }
 
             @Override
@@ -101,6 +134,12 @@ public final class OperatorWindowMinMax<T> implements Operator<T, T> {
         };
     }
 
+    private static final int INITIAL_CAPACITY = 16;
+
+    static int initialCapacity(int windowSize) {
+        return Math.min(windowSize, INITIAL_CAPACITY);
+    }
+
     private int compare(T a, T b) {
         if (metric == Metric.MIN) {
             return comparator.compare(a, b);
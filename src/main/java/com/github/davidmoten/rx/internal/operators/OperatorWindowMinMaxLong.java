@@ -0,0 +1,133 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import com.github.davidmoten.rx.internal.operators.OperatorWindowMinMax.Metric;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable.Operator;
+import rx.Producer;
+import rx.Subscriber;
+
+/**
+ * Sliding window minimum or maximum of numbers compared as {@code long}
+ * values. Like {@link OperatorWindowMinMax} but the monotonic queue keeps the
+ * {@code long} values in a primitive ring (which grows like the ring of
+ * {@link OperatorWindowMinMax}) so that comparisons don't unbox or call a
+ * comparator. The emitted items are the source items themselves so no
+ * allocation happens per element.
+ * 
+ * @param <T>
+ *            generic type of stream emissions
+ */
+public final class OperatorWindowMinMaxLong<T extends Number> implements Operator<T, T> {
+
+    private final int windowSize;
+    private final Metric metric;
+
+    public OperatorWindowMinMaxLong(int windowSize, Metric metric) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be greater than zero");
+        Preconditions.checkNotNull(metric, "metric cannot be null");
+        this.windowSize = windowSize;
+        this.metric = metric;
+    }
+
+    @Override
+    public Subscriber<? super T> call(final Subscriber<? super T> child) {
+        final boolean min = metric == Metric.MIN;
+        return new Subscriber<T>(child) {
+
+            long count = 0;
+
+            // ring of indices with the values and items at the same
+            // positions, holding at most windowSize entries from head
+            // (inclusive) to tail (exclusive)
+            long[] indices = new long[OperatorWindowMinMax.initialCapacity(windowSize)];
+            long[] values = new long[indices.length];
+            Object[] items = new Object[indices.length];
+            int head = 0;
+            int tail = 0;
+            int size = 0;
+
+            @Override
+            public void onCompleted() {
+                child.onCompleted();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                child.onError(e);
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public void onNext(T t) {
+                count++;
+                // if window past the head index then remove it
+                if (size > 0 && indices[head] == count - windowSize) {
+                    items[head] = null;
+                    head = next(head);
+                    size--;
+                }
+                long v = t.longValue();
+                // remove the values at the end made redundant by v
+                while (size > 0) {
+                    int last = previous(tail);
+                    if (min ? v <= values[last] : v >= values[last]) {
+                        items[last] = null;
+                        tail = last;
+                        size--;
+                    } else {
+                        break;
+                    }
+                }
+                if (size == indices.length) {
+                    grow();
+                }
+                indices[tail] = count;
+                values[tail] = v;
+                items[tail] = t;
+                tail = next(tail);
+                size++;
+                if (count >= windowSize) {
+                    // head of queue is min or max
+                    child.onNext((T) items[head]);
+                }
+            }
+
+            private void grow() {
+                int capacity = (int) Math.min((long) indices.length * 2, windowSize);
+                long[] newIndices = new long[capacity];
+                long[] newValues = new long[capacity];
+                Object[] newItems = new Object[capacity];
+                // unroll the ring so that head is at 0
+                int n = indices.length - head;
+                System.arraycopy(indices, head, newIndices, 0, n);
+                System.arraycopy(indices, 0, newIndices, n, head);
+                System.arraycopy(values, head, newValues, 0, n);
+                System.arraycopy(values, 0, newValues, n, head);
+                System.arraycopy(items, head, newItems, 0, n);
+                System.arraycopy(items, 0, newItems, n, head);
+                indices = newIndices;
+                values = newValues;
+                items = newItems;
+                head = 0;
+                tail = size;
+            }
+
+            private int next(int position) {
+                return position == indices.length - 1 ? 0 : position + 1;
+            }
+
+            private int previous(int position) {
+                return position == 0 ? indices.length - 1 : position - 1;
+            }
+
+            @Override
+            public void setProducer(final Producer producer) {
+                child.setProducer(producer);
+                producer.request(windowSize - 1);
+            }
+
+        };
+    }
+
+}
@@ -87,6 +87,14 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
         }
     }
 
+    /**
+     * Selects the smallest head of the sources using a loser tree so that
+     * each emission costs O(log n) comparisons rather than a scan of all n
+     * sources. The tree is built once every source has a value (or has
+     * completed) and after each emission only the path from the winning
+     * source's leaf to the root is replayed, once that source has its next
+     * value.
+     */
     static final class MergeProducer<T> extends AtomicLong implements Producer {
         /** */
         private static final long serialVersionUID = -812969080497027108L;
@@ -102,6 +110,19 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
         boolean emitting;
         boolean missed;
 
+        // the following are accessed only by the emitting thread
+
+        // tree[0] is the index of the overall winner, tree[1..n-1] hold the
+        // index of the loser at each internal node, leaf i is node i + n
+        final int[] tree;
+        // the current head of each source (valid while in the tree)
+        final Object[] heads;
+        // sources that have completed and been emptied rank after everything
+        final boolean[] exhausted;
+        boolean initialized;
+        // the source whose head was emitted and must be replayed, or -1
+        int pending = -1;
+
         @SuppressWarnings("rawtypes")
         public MergeProducer(SourceSubscriber[] sources, Subscriber<? super T> child,
                 Comparator<? super T> comparator, boolean delayErrors) {
@@ -110,6 +131,9 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             this.errors = new MpscLinkedQueue<Throwable>();
             this.child = child;
             this.comparator = comparator;
+            this.tree = new int[sources.length];
+            this.heads = new Object[sources.length];
+            this.exhausted = new boolean[sources.length];
         }
 
         @Override
@@ -134,46 +158,15 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             // lift into local variables, just in case
             @SuppressWarnings("unchecked")
             final SourceSubscriber<T>[] sources = this.sources;
-            final int n = sources.length;
             final Subscriber<? super T> child = this.child;
+            final int[] tree = this.tree;
 
             for (;;) {
-                if (child.isUnsubscribed()) {
-                    return;
-                }
-                // eagerly check for errors
-                if (!delayErrors && !errors.isEmpty()) {
-                    child.onError(errors.poll());
-                    return;
-                }
                 // the current requested
                 long r = get();
                 // aggregate total emissions
                 long e = 0;
-                // even without request, terminal events can be fired if the
-                // state is right
-                if (r == 0) {
-                    int doneCount = 0;
-                    // for each source
-                    for (SourceSubscriber<T> s : sources) {
-                        // if completed earlier
-                        if (s == null) {
-                            doneCount++;
-                        } else {
-                            // or just completed
-                            if (s.done && s.queue.isEmpty()) {
-                                doneCount++;
-                            }
-                        }
-                    }
-                    // if all of them are completed
-                    if (doneCount == n) {
-                        reportErrorOrComplete(child);
-                        return;
-                    }
-                }
-                // until there is request
-                while (r != 0L) {
+                while (true) {
                     if (child.isUnsubscribed()) {
                         return;
                     }
@@ -182,84 +175,37 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
                         child.onError(errors.poll());
                         return;
                     }
-                    // indicates that every active source has at least one value
-                    boolean fullRow = true;
-                    // indicates that at least one value is available
-                    boolean hasAtLeastOne = false;
-                    // holds the smallest of the available values
-                    T minimum = null;
-                    // indicates which source's value is taken so it can be
-                    // polled/replenished
-                    int toPoll = -1;
-                    // number of completed sources
-                    int doneCount = 0;
-                    // for each source
-                    for (int i = 0; i < n; i++) {
-                        SourceSubscriber<T> s = sources[i];
-                        // terminated and emptied sources are ignored
-                        if (s == null) {
-                            doneCount++;
-                            continue;
-                        }
-                        // read the terminal indicator first
-                        boolean d = s.done;
-                        // peek into the queue
-                        Object o = s.queue.peek();
-                        // no value available
-                        if (o == null) {
-                            // because it terminated?
-                            if (d) {
-                                sources[i] = null;
-                                doneCount++;
-                                continue;
-                            }
-                            // otherwise, indicate not all queues are ready
-                            fullRow = false;
-                            break;
-                        }
-                        // if we already found a value, compare it against the
-                        // current
-                        if (hasAtLeastOne) {
-                            T v = NotificationLite.getValue(o);
-                            int c = comparator.compare(minimum, v);
-                            if (c > 0) {
-                                minimum = v;
-                                toPoll = i;
-                            }
-                        } else {
-                            // this is the first value found
-                            minimum = NotificationLite.getValue(o);
-                            hasAtLeastOne = true;
-                            toPoll = i;
-                        }
+                    // if some sources aren't ready, just quit
+                    if (!ready()) {
+                        break;
                     }
-                    // in case all of the sources completed
-                    if (doneCount == n) {
+                    int winner = tree.length == 0 ? -1 : tree[0];
+                    // even without request, terminal events can be fired if
+                    // the state is right
+                    if (winner == -1 || exhausted[winner]) {
                         reportErrorOrComplete(child);
                         return;
                     }
-                    // if there was a full row of available values
-                    if (fullRow) {
-                        // given the winner
-                        if (toPoll >= 0) {
-                            SourceSubscriber<T> s = sources[toPoll];
-                            // remove the winning value from its queue
-                            s.queue.poll();
-                            // request replenishment
-                            s.requestMore(1);
-                        }
-                        // emit the smallest
-                        child.onNext(minimum);
-                        // decrement the available request and increment the
-                        // emit count
-                        if (r != Long.MAX_VALUE) {
-                            r--;
-                            e++;
-                        }
-                    } else {
-                        // if some sources weren't ready, just quit
+                    if (r == 0L) {
                         break;
                     }
+                    @SuppressWarnings("unchecked")
+                    T value = (T) heads[winner];
+                    heads[winner] = null;
+                    SourceSubscriber<T> s = sources[winner];
+                    // remove the winning value from its queue
+                    s.queue.poll();
+                    // request replenishment in batches
+                    s.consumed();
+                    pending = winner;
+                    // emit the smallest
+                    child.onNext(value);
+                    // decrement the available request and increment the
+                    // emit count
+                    if (r != Long.MAX_VALUE) {
+                        r--;
+                        e++;
+                    }
                 }
 
                 // if there was emission, adjust the downstream request amount
@@ -277,6 +223,89 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             }
         }
 
+        /**
+         * Returns true if the tree holds the head of every source (so that
+         * tree[0] is the winner) and false if a source has yet to produce its
+         * next value.
+         */
+        private boolean ready() {
+            final int n = tree.length;
+            if (!initialized) {
+                // every source needs a value or to have completed
+                for (int i = 0; i < n; i++) {
+                    if (!load(i)) {
+                        return false;
+                    }
+                }
+                // the virtual leaf n beats everything so that each adjust
+                // pushes it further from the root until it is gone
+                for (int i = 0; i < n; i++) {
+                    tree[i] = n;
+                }
+                for (int i = n - 1; i >= 0; i--) {
+                    adjust(i);
+                }
+                initialized = true;
+            } else if (pending >= 0) {
+                if (!load(pending)) {
+                    return false;
+                }
+                adjust(pending);
+                pending = -1;
+            }
+            return true;
+        }
+
+        // reads the head of source i into heads, returns false if none yet
+        private boolean load(int i) {
+            @SuppressWarnings("unchecked")
+            SourceSubscriber<T> s = sources[i];
+            // read the terminal indicator first
+            boolean d = s.done;
+            // peek into the queue
+            Object o = s.queue.peek();
+            if (o == null) {
+                if (d) {
+                    exhausted[i] = true;
+                    return true;
+                }
+                return false;
+            }
+            heads[i] = NotificationLite.getValue(o);
+            return true;
+        }
+
+        // replays the matches from leaf i to the root
+        private void adjust(int i) {
+            final int[] tree = this.tree;
+            int winner = i;
+            for (int node = (i + tree.length) >> 1; node > 0; node >>= 1) {
+                int other = tree[node];
+                if (beats(other, winner)) {
+                    tree[node] = winner;
+                    winner = other;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        private boolean beats(int a, int b) {
+            final int n = tree.length;
+            if (a == n) {
+                return true;
+            } else if (b == n) {
+                return false;
+            } else if (exhausted[a]) {
+                return false;
+            } else if (exhausted[b]) {
+                return true;
+            }
+            @SuppressWarnings("unchecked")
+            int c = comparator.compare((T) heads[a], (T) heads[b]);
+            // ties go to the lower index so that order is stable
+            return c < 0 || (c == 0 && a < b);
+        }
+
         void reportErrorOrComplete(Subscriber<? super T> child) {
             if (delayErrors && !errors.isEmpty()) {
                 if (errors.size() == 1) {
@@ -291,9 +320,14 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
     }
 
     static final class SourceSubscriber<T> extends Subscriber<T> {
+        // request more once three quarters of the buffer has been consumed
+        private static final int LIMIT = RxRingBuffer.SIZE - (RxRingBuffer.SIZE >> 2);
+
         final RxRingBuffer queue;
         final MergeProducer<T> parent;
         volatile boolean done;
+        // accessed only by the emitting thread
+        int consumed;
 
         public SourceSubscriber(MergeProducer<T> parent) {
             queue = RxRingBuffer.getSpscInstance();
@@ -306,8 +340,11 @@ public final class OrderedMerge<T> implements OnSubscribe<T> {
             request(RxRingBuffer.SIZE);
         }
 
-        public void requestMore(long n) {
-            request(n);
+        void consumed() {
+            if (++consumed == LIMIT) {
+                consumed = 0;
+                request(LIMIT);
+            }
         }
 
         @Override
@@ -0,0 +1,482 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Streaming compression and decompression of byte array chunks in the
+ * deflate (zlib) and gzip formats. Each subscription uses one
+ * {@link Deflater} or {@link Inflater} and one reusable output buffer. Output
+ * chunks are produced lazily as downstream requests them so backpressure is
+ * respected without buffering the output of a whole input chunk.
+ */
+public final class TransformerCompression {
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private TransformerCompression() {
+        // prevent instantiation
+    }
+
+    public static Transformer<byte[], byte[]> deflate(final int level, final boolean gzip,
+            final int bufferSize) {
+        return transformer(new Func0<Codec>() {
+            @Override
+            public Codec call() {
+                return new DeflateCodec(level, gzip, bufferSize);
+            }
+        });
+    }
+
+    public static Transformer<byte[], byte[]> inflate(final boolean gzip, final int bufferSize) {
+        return transformer(new Func0<Codec>() {
+            @Override
+            public Codec call() {
+                if (gzip) {
+                    return new GunzipCodec(bufferSize);
+                } else {
+                    return new InflateCodec(bufferSize);
+                }
+            }
+        });
+    }
+
+    private static Transformer<byte[], byte[]> transformer(final Func0<Codec> codecFactory) {
+        return new Transformer<byte[], byte[]>() {
+            @Override
+            public Observable<byte[]> call(final Observable<byte[]> source) {
+                Func1<Codec, Observable<byte[]>> observableFactory = new Func1<Codec, Observable<byte[]>>() {
+                    @Override
+                    public Observable<byte[]> call(final Codec codec) {
+                        Observable<byte[]> last = Observable.defer(new Func0<Observable<byte[]>>() {
+                            @Override
+                            public Observable<byte[]> call() {
+                                return Observable.from(codec.finish());
+                            }
+                        });
+                        return source.flatMapIterable(new Func1<byte[], Iterable<byte[]>>() {
+                            @Override
+                            public Iterable<byte[]> call(byte[] chunk) {
+                                return codec.process(chunk);
+                            }
+                        }).concatWith(last);
+                    }
+                };
+                return Observable.using(codecFactory, observableFactory, CodecEndHolder.INSTANCE,
+                        true);
+            }
+        };
+    }
+
+    private static final class CodecEndHolder {
+        static final Action1<Codec> INSTANCE = new Action1<Codec>() {
+            @Override
+            public void call(Codec codec) {
+                codec.end();
+            }
+        };
+    }
+
+    private static abstract class Codec {
+
+        final byte[] buffer;
+
+        Codec(int bufferSize) {
+            this.buffer = new byte[bufferSize];
+        }
+
+        /**
+         * Returns the output for the given input chunk. The output is
+         * computed lazily as the returned Iterable is iterated.
+         */
+        abstract Iterable<byte[]> process(byte[] chunk);
+
+        /**
+         * Returns the output remaining after the end of the input.
+         */
+        abstract Iterable<byte[]> finish();
+
+        abstract void end();
+
+    }
+
+    /**
+     * An iterator whose next value is computed by {@link #compute()} which
+     * returns null when there are no more values.
+     */
+    private static abstract class LazyIterator implements Iterable<byte[]>, Iterator<byte[]> {
+
+        private byte[] next;
+
+        abstract byte[] compute();
+
+        @Override
+        public Iterator<byte[]> iterator() {
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = compute();
+            }
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] b = next;
+            next = null;
+            return b;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class DeflateCodec extends Codec {
+
+        private final Deflater deflater;
+        private final boolean gzip;
+        private final CRC32 crc = new CRC32();
+        private boolean headerWritten;
+
+        DeflateCodec(int level, boolean gzip, int bufferSize) {
+            super(bufferSize);
+            this.deflater = new Deflater(level, gzip);
+            this.gzip = gzip;
+        }
+
+        @Override
+        Iterable<byte[]> process(final byte[] chunk) {
+            deflater.setInput(chunk);
+            if (gzip) {
+                crc.update(chunk);
+            }
+            return new LazyIterator() {
+                @Override
+                byte[] compute() {
+                    byte[] header = header();
+                    if (header != null) {
+                        return header;
+                    }
+                    while (!deflater.needsInput()) {
+                        int n = deflater.deflate(buffer);
+                        if (n > 0) {
+                            return Arrays.copyOf(buffer, n);
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        Iterable<byte[]> finish() {
+            deflater.finish();
+            return new LazyIterator() {
+                boolean trailerWritten;
+
+                @Override
+                byte[] compute() {
+                    byte[] header = header();
+                    if (header != null) {
+                        return header;
+                    }
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        if (n > 0) {
+                            return Arrays.copyOf(buffer, n);
+                        }
+                    }
+                    if (gzip && !trailerWritten) {
+                        trailerWritten = true;
+                        return trailer();
+                    }
+                    return null;
+                }
+            };
+        }
+
+        private byte[] header() {
+            if (gzip && !headerWritten) {
+                headerWritten = true;
+                return new byte[] { (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED,
+                        0, 0, 0, 0, 0, 0, 0 };
+            } else {
+                return null;
+            }
+        }
+
+        private byte[] trailer() {
+            byte[] b = new byte[GZIP_TRAILER_SIZE];
+            writeInt(b, 0, crc.getValue());
+            writeInt(b, 4, deflater.getBytesRead());
+            return b;
+        }
+
+        @Override
+        void end() {
+            deflater.end();
+        }
+
+    }
+
+    private static final class InflateCodec extends Codec {
+
+        private final Inflater inflater = new Inflater();
+        private boolean started;
+
+        InflateCodec(int bufferSize) {
+            super(bufferSize);
+        }
+
+        @Override
+        Iterable<byte[]> process(final byte[] chunk) {
+            if (!inflater.finished()) {
+                started = true;
+                inflater.setInput(chunk);
+            }
+            return new LazyIterator() {
+                @Override
+                byte[] compute() {
+                    return inflate(inflater, buffer);
+                }
+            };
+        }
+
+        @Override
+        Iterable<byte[]> finish() {
+            if (started && !inflater.finished()) {
+                throw new IORuntimeException(new EOFException("unexpected end of deflate stream"));
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        void end() {
+            inflater.end();
+        }
+
+    }
+
+    private enum GzipState {
+        HEADER, EXTRA_LENGTH, EXTRA, NAME, COMMENT, HEADER_CRC, BODY, TRAILER;
+    }
+
+    private static final class GunzipCodec extends Codec {
+
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        // accumulates the fixed size parts of the header and the trailer
+        private final byte[] fixed = new byte[GZIP_HEADER_SIZE];
+        private GzipState state = GzipState.HEADER;
+        private int count;
+        private int flags;
+        private int extraLength;
+
+        GunzipCodec(int bufferSize) {
+            super(bufferSize);
+        }
+
+        @Override
+        Iterable<byte[]> process(final byte[] chunk) {
+            return new LazyIterator() {
+                int offset;
+
+                @Override
+                byte[] compute() {
+                    while (true) {
+                        if (state == GzipState.BODY) {
+                            if (inflater.needsInput() && offset < chunk.length) {
+                                inflater.setInput(chunk, offset, chunk.length - offset);
+                                offset = chunk.length;
+                            }
+                            byte[] b = inflate(inflater, buffer);
+                            if (b != null) {
+                                crc.update(b);
+                                return b;
+                            } else if (inflater.finished()) {
+                                offset = chunk.length - inflater.getRemaining();
+                                state = GzipState.TRAILER;
+                                count = 0;
+                            } else {
+                                return null;
+                            }
+                        } else if (offset < chunk.length) {
+                            offset = consume(chunk, offset);
+                        } else {
+                            return null;
+                        }
+                    }
+                }
+            };
+        }
+
+        /**
+         * Consumes header or trailer bytes and returns the new offset.
+         */
+        private int consume(byte[] chunk, int offset) {
+            int b = chunk[offset] & 0xff;
+            switch (state) {
+            case HEADER:
+                fixed[count++] = (byte) b;
+                if (count == GZIP_HEADER_SIZE) {
+                    if (readShort(fixed, 0) != GZIP_MAGIC) {
+                        throw new IORuntimeException(new ZipException("not in gzip format"));
+                    }
+                    if (fixed[2] != Deflater.DEFLATED) {
+                        throw new IORuntimeException(
+                                new ZipException("unsupported compression method"));
+                    }
+                    flags = fixed[3] & 0xff;
+                    count = 0;
+                    nextHeaderField(GzipState.HEADER);
+                }
+                break;
+            case EXTRA_LENGTH:
+                fixed[count++] = (byte) b;
+                if (count == 2) {
+                    extraLength = readShort(fixed, 0);
+                    count = 0;
+                    state = GzipState.EXTRA;
+                    if (extraLength == 0) {
+                        nextHeaderField(GzipState.EXTRA);
+                    }
+                }
+                break;
+            case EXTRA:
+                count++;
+                if (count == extraLength) {
+                    count = 0;
+                    nextHeaderField(GzipState.EXTRA);
+                }
+                break;
+            case NAME:
+            case COMMENT:
+                if (b == 0) {
+                    nextHeaderField(state);
+                }
+                break;
+            case HEADER_CRC:
+                count++;
+                if (count == 2) {
+                    count = 0;
+                    nextHeaderField(GzipState.HEADER_CRC);
+                }
+                break;
+            case TRAILER:
+                fixed[count++] = (byte) b;
+                if (count == GZIP_TRAILER_SIZE) {
+                    if (readInt(fixed, 0) != crc.getValue()) {
+                        throw new IORuntimeException(new ZipException("corrupt gzip trailer"));
+                    }
+                    if (readInt(fixed, 4) != (inflater.getBytesWritten() & 0xffffffffL)) {
+                        throw new IORuntimeException(new ZipException("corrupt gzip trailer"));
+                    }
+                    // another gzip member may follow
+                    inflater.reset();
+                    crc.reset();
+                    count = 0;
+                    state = GzipState.HEADER;
+                }
+                break;
+            default:
+                throw new IllegalStateException("unexpected state " + state);
+            }
+            return offset + 1;
+        }
+
+        private void nextHeaderField(GzipState completed) {
+            GzipState[] order = GzipState.values();
+            for (int i = completed.ordinal() + 1; i < GzipState.BODY.ordinal(); i++) {
+                GzipState s = order[i];
+                if (s == GzipState.EXTRA_LENGTH && (flags & FEXTRA) != 0
+                        || s == GzipState.NAME && (flags & FNAME) != 0
+                        || s == GzipState.COMMENT && (flags & FCOMMENT) != 0
+                        || s == GzipState.HEADER_CRC && (flags & FHCRC) != 0) {
+                    state = s;
+                    return;
+                }
+            }
+            state = GzipState.BODY;
+        }
+
+        @Override
+        Iterable<byte[]> finish() {
+            if (state != GzipState.HEADER || count != 0) {
+                throw new IORuntimeException(new EOFException("unexpected end of gzip stream"));
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        void end() {
+            inflater.end();
+        }
+
+    }
+
+    /**
+     * Returns the next inflated chunk or null if more input is required or
+     * the stream has finished.
+     */
+    private static byte[] inflate(Inflater inflater, byte[] buffer) {
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                int n = inflater.inflate(buffer);
+                if (n > 0) {
+                    return Arrays.copyOf(buffer, n);
+                } else if (inflater.needsDictionary()) {
+                    throw new IORuntimeException(new ZipException("dictionary required"));
+                }
+            }
+            return null;
+        } catch (DataFormatException e) {
+            throw new IORuntimeException(new ZipException(e.getMessage()));
+        }
+    }
+
+    private static int readShort(byte[] b, int offset) {
+        return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+    }
+
+    private static long readInt(byte[] b, int offset) {
+        return (readShort(b, offset) | ((long) readShort(b, offset + 2) << 16)) & 0xffffffffL;
+    }
+
+    private static void writeInt(byte[] b, int offset, long value) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+        b[offset + 2] = (byte) (value >> 16);
+        b[offset + 3] = (byte) (value >> 24);
+    }
+
+}
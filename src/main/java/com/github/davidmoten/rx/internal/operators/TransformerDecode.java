@@ -5,104 +5,242 @@ import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.github.davidmoten.rx.Transformers;
-
+import rx.Observable;
+import rx.Observable.Operator;
 import rx.Observable.Transformer;
+import rx.Producer;
 import rx.Subscriber;
-import rx.functions.Func0;
-import rx.functions.Func2;
-import rx.functions.Func3;
-
+import rx.internal.operators.BackpressureUtils;
+
+/**
+ * Decodes a stream of byte arrays into a stream of strings reusing one byte
+ * buffer and one char buffer per subscription. Chunks that are entirely ASCII
+ * (with no partial character pending from the previous chunk) bypass the
+ * {@link CharsetDecoder} when the charset is ASCII compatible.
+ */
 public final class TransformerDecode {
 
-    public static Transformer<byte[], String> decode(final CharsetDecoder decoder) {
-        Func0<ByteBuffer> initialState = new Func0<ByteBuffer>() {
+    private TransformerDecode() {
+        // prevent instantiation
+    }
 
+    public static Transformer<byte[], String> decode(final CharsetDecoder decoder) {
+        return new Transformer<byte[], String>() {
             @Override
-            public ByteBuffer call() {
-                return null;
+            public Observable<String> call(Observable<byte[]> source) {
+                return source.lift(new DecodeOperator(decoder));
             }
         };
-        Func3<ByteBuffer, byte[], Subscriber<String>, ByteBuffer> transition = new Func3<ByteBuffer, byte[], Subscriber<String>, ByteBuffer>() {
+    }
 
-            @Override
-            public ByteBuffer call(ByteBuffer last, byte[] next, Subscriber<String> o) {
-                Result result = process(next, last, false, decoder, o);
-                return result.leftOver;
-            }
-        };
-        Func2<ByteBuffer, Subscriber<String>, Boolean> completion = new Func2<ByteBuffer, Subscriber<String>, Boolean>() {
+    private static final class DecodeOperator implements Operator<String, byte[]> {
 
-            @Override
-            public Boolean call(ByteBuffer last, Subscriber<String> subscriber) {
-                return process(null, last, true, decoder, subscriber).canEmitFurther;
-            }
-        };
+        private final CharsetDecoder decoder;
+
+        DecodeOperator(CharsetDecoder decoder) {
+            this.decoder = decoder;
+        }
 
-        return Transformers.stateMachine(initialState, transition, completion);
+        @Override
+        public Subscriber<? super byte[]> call(final Subscriber<? super String> child) {
+            final DecodeSubscriber parent = new DecodeSubscriber(child, decoder);
+            child.add(parent);
+            child.setProducer(new Producer() {
+                @Override
+                public void request(long n) {
+                    parent.requestMore(n);
+                }
+            });
+            return parent;
+        }
     }
 
-    private static final class Result {
-        final ByteBuffer leftOver;
-        final boolean canEmitFurther;
+    private static final class DecodeSubscriber extends Subscriber<byte[]> {
+
+        private static final int INITIAL_PENDING_CAPACITY = 16;
+
+        private final Subscriber<? super String> child;
+        private final CharsetDecoder decoder;
+        private final boolean asciiCompatible;
+        private final float maxCharsPerByte;
+        private final AtomicLong requested = new AtomicLong();
+        // holds at most the final string emitted on completion
+        private final Queue<String> queue = new ArrayDeque<String>(1);
+
+        // bytes not yet decoded (in write mode), grows as required
+        private ByteBuffer pending = ByteBuffer.allocate(INITIAL_PENDING_CAPACITY);
+        // reused for the decoded characters of every chunk, grows as required
+        private CharBuffer chars = CharBuffer.allocate(0);
+        private boolean done;
+
+        DecodeSubscriber(Subscriber<? super String> child, CharsetDecoder decoder) {
+            this.child = child;
+            this.decoder = decoder;
+            this.asciiCompatible = isAsciiCompatible(decoder);
+            this.maxCharsPerByte = decoder.maxCharsPerByte();
+            decoder.reset();
+        }
 
-        Result(ByteBuffer leftOver, boolean canEmitFurther) {
-            this.leftOver = leftOver;
-            this.canEmitFurther = canEmitFurther;
+        void requestMore(long n) {
+            if (n > 0 && BackpressureUtils.postCompleteRequest(requested, n, queue, child)) {
+                request(n);
+            }
         }
 
-    }
+        @Override
+        public void onNext(byte[] bytes) {
+            if (done) {
+                return;
+            }
+            String s;
+            if (pending.position() == 0) {
+                s = asciiCompatible ? decodeAscii(bytes) : null;
+                if (s == null) {
+                    s = decode(ByteBuffer.wrap(bytes), false);
+                }
+            } else {
+                s = decode(appendToPending(bytes), false);
+            }
+            if (s == null) {
+                // error emitted
+                return;
+            } else if (s.isEmpty()) {
+                request(1);
+            } else {
+                BackpressureUtils.produced(requested, 1);
+                child.onNext(s);
+            }
+        }
 
-    public static Result process(byte[] next, ByteBuffer last, boolean endOfInput,
-            CharsetDecoder decoder, Subscriber<String> o) {
-        if (o.isUnsubscribed())
-            return new Result(null, false);
-
-        ByteBuffer bb;
-        if (last != null) {
-            if (next != null) {
-                // merge leftover in front of the next bytes
-                bb = ByteBuffer.allocate(last.remaining() + next.length);
-                bb.put(last);
-                bb.put(next);
-                bb.flip();
-            } else { // next == null
-                bb = last;
-            }
-        } else { // last == null
-            if (next != null) {
-                bb = ByteBuffer.wrap(next);
-            } else { // next == null
-                return new Result(null, true);
+        @Override
+        public void onCompleted() {
+            if (done) {
+                return;
+            }
+            pending.flip();
+            String s = decode(pending, true);
+            if (s == null) {
+                return;
+            }
+            done = true;
+            if (!s.isEmpty()) {
+                queue.offer(s);
             }
+            BackpressureUtils.postCompleteDone(requested, queue, child);
         }
 
-        CharBuffer cb = CharBuffer.allocate((int) (bb.limit() * decoder.averageCharsPerByte()));
-        CoderResult cr = decoder.decode(bb, cb, endOfInput);
-        cb.flip();
+        @Override
+        public void onError(Throwable e) {
+            if (done) {
+                return;
+            }
+            done = true;
+            child.onError(e);
+        }
 
-        if (cr.isError()) {
-            try {
-                cr.throwException();
-            } catch (CharacterCodingException e) {
-                o.onError(e);
-                return new Result(null, false);
+        /**
+         * Returns the chunk as a string if every byte is ASCII otherwise
+         * returns null.
+         */
+        private String decodeAscii(byte[] bytes) {
+            char[] a = ensureCharCapacity(bytes.length).array();
+            for (int i = 0; i < bytes.length; i++) {
+                byte b = bytes[i];
+                if (b < 0) {
+                    return null;
+                }
+                a[i] = (char) b;
             }
+            return new String(a, 0, bytes.length);
         }
 
-        ByteBuffer leftOver;
-        if (bb.remaining() > 0) {
-            leftOver = bb;
-        } else {
-            leftOver = null;
+        /**
+         * Copies the bytes after any pending bytes and returns the pending
+         * buffer ready for reading.
+         */
+        private ByteBuffer appendToPending(byte[] bytes) {
+            ensurePendingCapacity(bytes.length);
+            pending.put(bytes);
+            pending.flip();
+            return pending;
         }
 
-        String string = cb.toString();
-        if (!string.isEmpty())
-            o.onNext(string);
+        private void ensurePendingCapacity(int extra) {
+            if (pending.remaining() < extra) {
+                ByteBuffer b = ByteBuffer
+                        .allocate(Math.max(pending.capacity() * 2, pending.position() + extra));
+                pending.flip();
+                b.put(pending);
+                pending = b;
+            }
+        }
+
+        /**
+         * Decodes the bytes and keeps the undecoded remainder in the pending
+         * buffer. Returns null if a decoding error was emitted.
+         */
+        private String decode(ByteBuffer in, boolean endOfInput) {
+            CharBuffer out = ensureCharCapacity(
+                    (int) Math.ceil(in.remaining() * (double) maxCharsPerByte) + 1);
+            out.clear();
+            CoderResult cr;
+            while ((cr = decoder.decode(in, out, endOfInput)).isOverflow()) {
+                out = growChars(out);
+            }
+            if (endOfInput && cr.isUnderflow()) {
+                while ((cr = decoder.flush(out)).isOverflow()) {
+                    out = growChars(out);
+                }
+            }
+            if (cr.isError()) {
+                try {
+                    cr.throwException();
+                } catch (CharacterCodingException e) {
+                    done = true;
+                    unsubscribe();
+                    child.onError(e);
+                    return null;
+                }
+            }
+            if (in == pending) {
+                pending.compact();
+            } else {
+                pending.clear();
+                ensurePendingCapacity(in.remaining());
+                pending.put(in);
+            }
+            out.flip();
+            if (out.remaining() == 0) {
+                return "";
+            } else {
+                return out.toString();
+            }
+        }
+
+        private CharBuffer growChars(CharBuffer out) {
+            CharBuffer b = CharBuffer.allocate(out.capacity() * 2 + 16);
+            out.flip();
+            b.put(out);
+            chars = b;
+            return b;
+        }
+
+        private CharBuffer ensureCharCapacity(int capacity) {
+            if (chars.capacity() < capacity) {
+                chars = CharBuffer.allocate(Math.max(capacity, chars.capacity() * 2));
+            }
+            return chars;
+        }
+
+    }
 
-        return new Result(leftOver, true);
+    private static boolean isAsciiCompatible(CharsetDecoder decoder) {
+        String name = decoder.charset().name();
+        return name.equals("UTF-8") || name.equals("US-ASCII") || name.equals("ISO-8859-1");
     }
 
 }
@@ -0,0 +1,341 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Tokenizes a stream of character chunks into delimited records in a single
+ * pass over the characters (no regex and no intermediate line strings).
+ * Supports quoted fields (where a doubled quote is a literal quote and
+ * delimiters and new lines are literal), an escape character, comment lines,
+ * trimming of unquoted fields and skipping of empty lines. Records are
+ * terminated by {@code '\n'} and a {@code '\r'} immediately before the
+ * {@code '\n'} is dropped.
+ *
+ * <p>
+ * When {@code reuseRecord} is true the same {@link List} instance is emitted
+ * for every record and is overwritten once the next record is requested, so
+ * downstream must consume each record synchronously.
+ */
+public final class TransformerDelimited {
+
+    /**
+     * Use this value for {@code quote} or {@code escape} to disable that
+     * feature.
+     */
+    public static final int NONE = -1;
+
+    private TransformerDelimited() {
+        // prevent instantiation
+    }
+
+    public static Transformer<String, List<String>> records(final char delimiter,
+            final int quote, final int escape, final String commentPrefix, final boolean trim,
+            final boolean ignoreEmptyLines, final boolean reuseRecord) {
+        return new Transformer<String, List<String>>() {
+
+            @Override
+            public Observable<List<String>> call(final Observable<String> source) {
+                return Observable.defer(new Func0<Observable<List<String>>>() {
+
+                    @Override
+                    public Observable<List<String>> call() {
+                        final Tokenizer tokenizer = new Tokenizer(delimiter, quote, escape,
+                                commentPrefix, trim, ignoreEmptyLines, reuseRecord);
+                        Observable<List<String>> last = Observable
+                                .defer(new Func0<Observable<List<String>>>() {
+                                    @Override
+                                    public Observable<List<String>> call() {
+                                        List<String> record = tokenizer.finish();
+                                        if (record == null) {
+                                            return Observable.empty();
+                                        } else {
+                                            return Observable.just(record);
+                                        }
+                                    }
+                                });
+                        return source.flatMapIterable(
+                                new Func1<String, Iterable<List<String>>>() {
+                                    @Override
+                                    public Iterable<List<String>> call(String chunk) {
+                                        return tokenizer.records(chunk);
+                                    }
+                                }).concatWith(last);
+                    }
+                });
+            }
+        };
+    }
+
+    private enum State {
+        FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED, COMMENT;
+    }
+
+    static final class Tokenizer {
+
+        private final char delimiter;
+        private final int quote;
+        private final int escape;
+        private final String commentPrefix;
+        private final boolean trim;
+        private final boolean ignoreEmptyLines;
+        private final boolean reuseRecord;
+
+        private final StringBuilder field = new StringBuilder();
+        private List<String> record = new ArrayList<String>();
+        private State state = State.FIELD_START;
+        private boolean fieldQuoted;
+        // true if any field of the current record was quoted
+        private boolean recordQuoted;
+        // characters before this index of field are not subject to removal
+        // of a trailing '\r'
+        private int protectedLength;
+        private boolean escapeNext;
+        // number of characters of the comment prefix matched so far or -1 if
+        // not matching
+        private int commentMatched;
+        // true if any character has been consumed for the current record
+        private boolean started;
+        // true if the current record has been emitted
+        private boolean emitted;
+
+        Tokenizer(char delimiter, int quote, int escape, String commentPrefix, boolean trim,
+                boolean ignoreEmptyLines, boolean reuseRecord) {
+            this.delimiter = delimiter;
+            this.quote = quote;
+            this.escape = escape;
+            this.commentPrefix = commentPrefix == null || commentPrefix.isEmpty() ? null
+                    : commentPrefix;
+            this.trim = trim;
+            this.ignoreEmptyLines = ignoreEmptyLines;
+            this.reuseRecord = reuseRecord;
+            this.commentMatched = this.commentPrefix == null ? -1 : 0;
+        }
+
+        Iterable<List<String>> records(final String chunk) {
+            return new Iterable<List<String>>() {
+                @Override
+                public Iterator<List<String>> iterator() {
+                    return new ChunkIterator(chunk);
+                }
+            };
+        }
+
+        private final class ChunkIterator implements Iterator<List<String>> {
+
+            private final String chunk;
+            private int index;
+            private boolean ready;
+
+            ChunkIterator(String chunk) {
+                this.chunk = chunk;
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (ready) {
+                    return true;
+                }
+                int length = chunk.length();
+                while (index < length) {
+                    if (process(chunk.charAt(index++))) {
+                        ready = true;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public List<String> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                emitted = true;
+                return record;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        /**
+         * Returns the final record if the input did not end with a record
+         * terminator, otherwise returns null.
+         */
+        List<String> finish() {
+            prepareRecord();
+            if (started && state != State.COMMENT) {
+                endField();
+                if (endRecord()) {
+                    emitted = true;
+                    return record;
+                }
+            }
+            return null;
+        }
+
+        private void prepareRecord() {
+            if (emitted) {
+                if (reuseRecord) {
+                    record.clear();
+                } else {
+                    record = new ArrayList<String>(record.size());
+                }
+                emitted = false;
+            }
+        }
+
+        /**
+         * Consumes the character and returns true if a record is complete.
+         */
+        private boolean process(char c) {
+            prepareRecord();
+            if (state == State.COMMENT) {
+                if (c == '\n') {
+                    resetRecord();
+                }
+                return false;
+            }
+            started = true;
+            if (commentMatched >= 0) {
+                if (c == commentPrefix.charAt(commentMatched)) {
+                    commentMatched++;
+                    if (commentMatched == commentPrefix.length()) {
+                        state = State.COMMENT;
+                        return false;
+                    }
+                } else {
+                    commentMatched = -1;
+                }
+            }
+            if (escapeNext) {
+                escapeNext = false;
+                field.append(c);
+                protectedLength = field.length();
+                return false;
+            }
+            if (c == escape && state != State.QUOTE_IN_QUOTED) {
+                escapeNext = true;
+                if (state == State.FIELD_START) {
+                    state = State.UNQUOTED;
+                }
+                return false;
+            }
+            switch (state) {
+            case FIELD_START:
+                if (c == quote) {
+                    state = State.QUOTED;
+                    fieldQuoted = true;
+                    return false;
+                } else {
+                    state = State.UNQUOTED;
+                    return unquoted(c);
+                }
+            case UNQUOTED:
+                return unquoted(c);
+            case QUOTED:
+                if (c == quote) {
+                    state = State.QUOTE_IN_QUOTED;
+                } else {
+                    field.append(c);
+                }
+                return false;
+            default:
+                // QUOTE_IN_QUOTED
+                if (c == quote) {
+                    // doubled quote is a literal quote
+                    field.append(c);
+                    state = State.QUOTED;
+                    return false;
+                } else {
+                    // quoted section has closed
+                    protectedLength = field.length();
+                    state = State.UNQUOTED;
+                    return unquoted(c);
+                }
+            }
+        }
+
+        private boolean unquoted(char c) {
+            if (c == delimiter) {
+                endField();
+                state = State.FIELD_START;
+                return false;
+            } else if (c == '\n') {
+                endField();
+                if (endRecord()) {
+                    return true;
+                } else {
+                    resetRecord();
+                    return false;
+                }
+            } else {
+                field.append(c);
+                return false;
+            }
+        }
+
+        private void endField() {
+            if (state == State.QUOTE_IN_QUOTED) {
+                protectedLength = field.length();
+            }
+            int length = field.length();
+            if (length > protectedLength && field.charAt(length - 1) == '\r') {
+                field.setLength(length - 1);
+            }
+            String s = field.toString();
+            if (trim && !fieldQuoted) {
+                s = s.trim();
+            }
+            record.add(s);
+            recordQuoted |= fieldQuoted;
+            field.setLength(0);
+            fieldQuoted = false;
+            protectedLength = 0;
+        }
+
+        /**
+         * Returns true if the record should be emitted and prepares for the
+         * next record.
+         */
+        private boolean endRecord() {
+            boolean empty = ignoreEmptyLines && record.size() == 1 && record.get(0).isEmpty()
+                    && !recordQuoted;
+            if (empty) {
+                return false;
+            } else {
+                startRecord();
+                return true;
+            }
+        }
+
+        private void resetRecord() {
+            record.clear();
+            field.setLength(0);
+            fieldQuoted = false;
+            protectedLength = 0;
+            escapeNext = false;
+            startRecord();
+        }
+
+        private void startRecord() {
+            state = State.FIELD_START;
+            started = false;
+            recordQuoted = false;
+            commentMatched = commentPrefix == null ? -1 : 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.github.davidmoten.rx.exceptions.FrameTooLongException;
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Reassembles frames from a stream of byte array chunks of arbitrary size.
+ * Frames are either prefixed by a big-endian unsigned length header or
+ * terminated by a delimiter. A frame that lies within a single chunk is copied
+ * once directly from the chunk. For length prefixed frames that span chunks
+ * the frame array is allocated as soon as the header has been read and is
+ * filled in place. For delimited frames that span chunks the partial frame is
+ * accumulated in one growable buffer per subscription. Frames are produced
+ * lazily as downstream requests them.
+ */
+public final class TransformerFrame {
+
+    private TransformerFrame() {
+        // prevent instantiation
+    }
+
+    public static Transformer<byte[], byte[]> byLength(final int headerBytes,
+            final int maxFrame) {
+        return frames(new Func0<Framer>() {
+            @Override
+            public Framer call() {
+                return new LengthFramer(headerBytes, maxFrame);
+            }
+        });
+    }
+
+    public static Transformer<byte[], byte[]> byDelimiter(final byte[] delimiter,
+            final int maxFrame) {
+        return frames(new Func0<Framer>() {
+            @Override
+            public Framer call() {
+                return new DelimiterFramer(delimiter, maxFrame);
+            }
+        });
+    }
+
+    private static Transformer<byte[], byte[]> frames(final Func0<Framer> framerFactory) {
+        return new Transformer<byte[], byte[]>() {
+
+            @Override
+            public Observable<byte[]> call(final Observable<byte[]> source) {
+                return Observable.defer(new Func0<Observable<byte[]>>() {
+
+                    @Override
+                    public Observable<byte[]> call() {
+                        final Framer framer = framerFactory.call();
+                        Observable<byte[]> last = Observable.defer(new Func0<Observable<byte[]>>() {
+                            @Override
+                            public Observable<byte[]> call() {
+                                byte[] frame = framer.finish();
+                                if (frame == null) {
+                                    return Observable.empty();
+                                } else {
+                                    return Observable.just(frame);
+                                }
+                            }
+                        });
+                        return source.flatMapIterable(new Func1<byte[], Iterable<byte[]>>() {
+                            @Override
+                            public Iterable<byte[]> call(final byte[] chunk) {
+                                return new Iterable<byte[]>() {
+                                    @Override
+                                    public Iterator<byte[]> iterator() {
+                                        return new ChunkIterator(framer, chunk);
+                                    }
+                                };
+                            }
+                        }).concatWith(last);
+                    }
+                });
+            }
+        };
+    }
+
+    private abstract static class Framer {
+
+        /**
+         * Consumes bytes of the chunk from {@code index} until a frame is
+         * complete and returns the frame (or returns null if the chunk is
+         * exhausted first). The position in the chunk is available from
+         * {@link #index}.
+         */
+        abstract byte[] next(byte[] chunk);
+
+        /**
+         * Returns the final frame at the end of the stream or null if none.
+         */
+        abstract byte[] finish();
+
+        // position in the current chunk
+        int index;
+    }
+
+    private static final class ChunkIterator implements Iterator<byte[]> {
+
+        private final Framer framer;
+        private final byte[] chunk;
+        private byte[] frame;
+
+        ChunkIterator(Framer framer, byte[] chunk) {
+            this.framer = framer;
+            this.chunk = chunk;
+            framer.index = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (frame == null) {
+                frame = framer.next(chunk);
+            }
+            return frame != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] f = frame;
+            frame = null;
+            return f;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static final class LengthFramer extends Framer {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private final int headerBytes;
+        private final int maxFrame;
+
+        // header bytes read so far of the current frame
+        private int headerRead;
+        private long length;
+        // the partially filled frame when it spans chunks
+        private byte[] frame;
+        private int filled;
+
+        LengthFramer(int headerBytes, int maxFrame) {
+            this.headerBytes = headerBytes;
+            this.maxFrame = maxFrame;
+        }
+
+        @Override
+        byte[] next(byte[] chunk) {
+            if (frame == null && headerRead == 0) {
+                // fast path: whole header and frame in the chunk
+                int n = chunk.length - index;
+                if (n >= headerBytes) {
+                    long len = 0;
+                    for (int i = 0; i < headerBytes; i++) {
+                        len = (len << 8) | (chunk[index + i] & 0xff);
+                    }
+                    checkLength(len);
+                    if (n - headerBytes >= len) {
+                        int start = index + headerBytes;
+                        index = start + (int) len;
+                        return Arrays.copyOfRange(chunk, start, index);
+                    }
+                }
+            }
+            while (headerRead < headerBytes) {
+                if (index == chunk.length) {
+                    return null;
+                }
+                length = (length << 8) | (chunk[index++] & 0xff);
+                headerRead++;
+                if (headerRead == headerBytes) {
+                    checkLength(length);
+                    frame = length == 0 ? EMPTY : new byte[(int) length];
+                    filled = 0;
+                }
+            }
+            int count = Math.min(frame.length - filled, chunk.length - index);
+            System.arraycopy(chunk, index, frame, filled, count);
+            index += count;
+            filled += count;
+            if (filled == frame.length) {
+                byte[] f = frame;
+                frame = null;
+                headerRead = 0;
+                length = 0;
+                return f;
+            } else {
+                return null;
+            }
+        }
+
+        private void checkLength(long len) {
+            // an 8 byte header with the top bit set is negative as a long
+            if (len < 0 || len > maxFrame) {
+                throw new FrameTooLongException("frame length "
+                        + (len < 0 ? "greater than " + Long.MAX_VALUE : String.valueOf(len))
+                        + " exceeds maximum of " + maxFrame);
+            }
+        }
+
+        @Override
+        byte[] finish() {
+            if (headerRead > 0) {
+                throw new IORuntimeException(
+                        new EOFException("stream ended part way through a frame"));
+            }
+            return null;
+        }
+    }
+
+    static final class DelimiterFramer extends Framer {
+
+        private final byte[] delimiter;
+        private final int maxFrame;
+        // KMP failure function of the delimiter
+        private final int[] failure;
+
+        // number of delimiter bytes matched so far
+        private int matched;
+        // bytes of the current frame (possibly including a partial delimiter)
+        // from previous chunks
+        private byte[] pending = new byte[0];
+        private int pendingLength;
+
+        DelimiterFramer(byte[] delimiter, int maxFrame) {
+            this.delimiter = delimiter;
+            this.maxFrame = maxFrame;
+            this.failure = failure(delimiter);
+        }
+
+        @Override
+        byte[] next(byte[] chunk) {
+            int start = index;
+            for (int i = start; i < chunk.length; i++) {
+                byte b = chunk[i];
+                while (matched > 0 && delimiter[matched] != b) {
+                    matched = failure[matched - 1];
+                }
+                if (delimiter[matched] == b) {
+                    matched++;
+                }
+                if (matched == delimiter.length) {
+                    matched = 0;
+                    index = i + 1;
+                    // end of the frame in the chunk (negative if part of the
+                    // delimiter is in pending)
+                    int end = i + 1 - delimiter.length;
+                    return frame(chunk, start, end);
+                }
+                if (pendingLength + i + 1 - start - matched > maxFrame) {
+                    throw tooLong();
+                }
+            }
+            index = chunk.length;
+            appendToPending(chunk, start, chunk.length);
+            return null;
+        }
+
+        private byte[] frame(byte[] chunk, int start, int end) {
+            byte[] f;
+            if (pendingLength == 0) {
+                f = Arrays.copyOfRange(chunk, start, end);
+            } else {
+                int fromPending = end < start ? pendingLength - (start - end) : pendingLength;
+                int fromChunk = Math.max(0, end - start);
+                f = new byte[fromPending + fromChunk];
+                System.arraycopy(pending, 0, f, 0, fromPending);
+                System.arraycopy(chunk, start, f, fromPending, fromChunk);
+                pendingLength = 0;
+            }
+            return f;
+        }
+
+        private void appendToPending(byte[] chunk, int start, int end) {
+            int n = end - start;
+            if (pending.length - pendingLength < n) {
+                pending = Arrays.copyOf(pending,
+                        Math.max(pending.length * 2, pendingLength + n));
+            }
+            System.arraycopy(chunk, start, pending, pendingLength, n);
+            pendingLength += n;
+        }
+
+        private FrameTooLongException tooLong() {
+            return new FrameTooLongException("frame length exceeds maximum of " + maxFrame);
+        }
+
+        @Override
+        byte[] finish() {
+            if (pendingLength == 0) {
+                return null;
+            } else {
+                // a partially matched delimiter at the end is part of the
+                // final frame
+                return Arrays.copyOf(pending, pendingLength);
+            }
+        }
+
+        private static int[] failure(byte[] delimiter) {
+            int[] f = new int[delimiter.length];
+            int k = 0;
+            for (int i = 1; i < delimiter.length; i++) {
+                while (k > 0 && delimiter[k] != delimiter[i]) {
+                    k = f[k - 1];
+                }
+                if (delimiter[k] == delimiter[i]) {
+                    k++;
+                }
+                f[i] = k;
+            }
+            return f;
+        }
+    }
+
+}
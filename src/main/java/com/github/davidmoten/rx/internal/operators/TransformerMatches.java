@@ -0,0 +1,140 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.davidmoten.rx.util.StringMatch;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+/**
+ * Finds the matches of a regex in a stream of string chunks without joining
+ * the chunks. Only the characters that could still be part of a match are
+ * retained between chunks: a match that touches the end of the current input
+ * (as reported by {@link Matcher#hitEnd()}) is deferred until more input
+ * arrives, unless it is already {@code maxMatchLength} characters long, in
+ * which case it is emitted as is.
+ */
+public final class TransformerMatches {
+
+    private TransformerMatches() {
+        // prevent instantiation
+    }
+
+    public static Transformer<String, StringMatch> matches(final Pattern pattern,
+            final int maxMatchLength) {
+        return new Transformer<String, StringMatch>() {
+
+            @Override
+            public Observable<StringMatch> call(final Observable<String> source) {
+                return Observable.defer(new Func0<Observable<StringMatch>>() {
+
+                    @Override
+                    public Observable<StringMatch> call() {
+                        final Scanner scanner = new Scanner(pattern, maxMatchLength);
+                        Observable<StringMatch> last = Observable
+                                .defer(new Func0<Observable<StringMatch>>() {
+                                    @Override
+                                    public Observable<StringMatch> call() {
+                                        return Observable.from(scanner.scan(true));
+                                    }
+                                });
+                        return source.flatMapIterable(new Func1<String, Iterable<StringMatch>>() {
+                            @Override
+                            public Iterable<StringMatch> call(String chunk) {
+                                scanner.append(chunk);
+                                return scanner.scan(false);
+                            }
+                        }).concatWith(last);
+                    }
+                });
+            }
+        };
+    }
+
+    static final class Scanner {
+
+        private final int maxMatchLength;
+        private final StringBuilder window = new StringBuilder();
+        private final Matcher matcher;
+        // offset in the stream of the first character of window
+        private long offset;
+        // position in window to continue searching from
+        private int position;
+
+        Scanner(Pattern pattern, int maxMatchLength) {
+            this.maxMatchLength = maxMatchLength;
+            this.matcher = pattern.matcher(window);
+            // so that lookbehind and anchors see the retained characters
+            // before the search position
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+        }
+
+        void append(String chunk) {
+            window.append(chunk);
+        }
+
+        List<StringMatch> scan(boolean endOfInput) {
+            List<StringMatch> list = null;
+            int length = window.length();
+            matcher.reset(window);
+            int keepFrom = length;
+            while (position <= length) {
+                matcher.region(position, length);
+                if (!matcher.find()) {
+                    if (!endOfInput && matcher.hitEnd()) {
+                        // a match could start in the tail given more input
+                        keepFrom = Math.max(position, length - maxMatchLength + 1);
+                    }
+                    break;
+                }
+                int start = matcher.start();
+                int end = matcher.end();
+                if (!endOfInput && matcher.hitEnd() && length - start < maxMatchLength) {
+                    // more input could change this match
+                    keepFrom = start;
+                    break;
+                }
+                if (list == null) {
+                    list = new ArrayList<StringMatch>();
+                }
+                list.add(toMatch(start, end));
+                position = end == start ? end + 1 : end;
+            }
+            discard(keepFrom);
+            if (list == null) {
+                return Collections.emptyList();
+            } else {
+                return list;
+            }
+        }
+
+        private StringMatch toMatch(int start, int end) {
+            String[] groups = new String[matcher.groupCount() + 1];
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = matcher.group(i);
+            }
+            return new StringMatch(offset + start, offset + end, groups);
+        }
+
+        private void discard(int keepFrom) {
+            // retain up to maxMatchLength characters before the search
+            // position for lookbehind
+            int from = Math.max(0, Math.min(keepFrom, position) - maxMatchLength);
+            if (from > 0) {
+                window.delete(0, from);
+                offset += from;
+                position -= from;
+            }
+            position = Math.max(position, keepFrom - from);
+        }
+    }
+
+}
@@ -0,0 +1,306 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.github.davidmoten.rx.buffertofile.DataSerializer;
+import com.github.davidmoten.rx.buffertofile.Options;
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+import rx.Observer;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.internal.util.RxRingBuffer;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Sorts a stream by splitting it into runs that are sorted concurrently on a
+ * scheduler and then emitting the k-way {@link OrderedMerge} of the sorted
+ * runs lazily as downstream requests. In the external mode every run is
+ * written to a file from {@link Options#fileFactory()} using the serializer
+ * (unless the source fits in one partial run which stays in memory), the
+ * files being deleted when the stream terminates or is unsubscribed. Up to
+ * one run per available processor is sorted at a time while the next run is
+ * gathered so peak memory is about {@code (processors + 1) * runSize} items.
+ * In the parallel mode all runs stay in memory. The sort is stable.
+ */
+public final class TransformerSort {
+
+    private static final int INITIAL_RUN_CAPACITY = 1024;
+
+    private TransformerSort() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a transformer that spills sorted runs of
+     * {@link Options#rolloverEvery()} items to files. If the source fits in
+     * one partial run no file is written. The run size is required (rollover by
+     * count cannot be disabled) because it bounds memory use.
+     */
+    public static <T> Transformer<T, T> external(Comparator<? super T> comparator,
+            DataSerializer<T> serializer, Options options, Scheduler scheduler) {
+        Preconditions.checkArgument(options.rolloverEvery() <= Integer.MAX_VALUE,
+                "options.rolloverEvery() is the number of items per sorted run "
+                        + "and must be set to at most Integer.MAX_VALUE");
+        int runSize = (int) options.rolloverEvery();
+        return create(comparator, runSize, scheduler, new Spill<T>(serializer, options));
+    }
+
+    public static <T> Transformer<T, T> parallel(Comparator<? super T> comparator,
+            int chunkSize, Scheduler scheduler) {
+        return create(comparator, chunkSize, scheduler, null);
+    }
+
+    private static <T> Transformer<T, T> create(final Comparator<? super T> comparator,
+            final int runSize, final Scheduler scheduler, final Spill<T> spill) {
+        final int parallelism = Runtime.getRuntime().availableProcessors();
+        return new Transformer<T, T>() {
+
+            @Override
+            public Observable<T> call(final Observable<T> source) {
+                return Observable.defer(new Func0<Observable<T>>() {
+
+                    @Override
+                    public Observable<T> call() {
+                        final Files files = new Files();
+                        // runs are gathered into lists that grow as needed
+                        // because buffer(runSize) and window(runSize)
+                        // allocate arrays of runSize up front
+                        Func1<T, Boolean> endOfRun = new Func1<T, Boolean>() {
+                            int count;
+
+                            @Override
+                            public Boolean call(T t) {
+                                if (++count == runSize) {
+                                    count = 0;
+                                    return true;
+                                } else {
+                                    return false;
+                                }
+                            }
+                        };
+                        return source //
+                                .compose(new OperatorBufferPredicateBoundary<T>(endOfRun,
+                                        RxRingBuffer.SIZE, Math.min(runSize, INITIAL_RUN_CAPACITY),
+                                        true)) //
+                                .map(new Func1<List<T>, Run<T>>() {
+                                    int index;
+
+                                    @Override
+                                    public Run<T> call(List<T> list) {
+                                        return new Run<T>(index++, list);
+                                    }
+                                }) //
+                                .flatMap(new Func1<Run<T>, Observable<Run<T>>>() {
+                                    @Override
+                                    public Observable<Run<T>> call(final Run<T> run) {
+                                        return Observable.fromCallable(new Callable<Run<T>>() {
+                                            @Override
+                                            public Run<T> call() throws IOException {
+                                                return sortAndSpill(run, runSize, comparator,
+                                                        spill, files);
+                                            }
+                                        }).subscribeOn(scheduler);
+                                    }
+                                }, parallelism) //
+                                .toSortedList(new Func2<Run<T>, Run<T>, Integer>() {
+                                    @Override
+                                    public Integer call(Run<T> a, Run<T> b) {
+                                        return a.index < b.index ? -1
+                                                : (a.index == b.index ? 0 : 1);
+                                    }
+                                }) //
+                                .flatMap(new Func1<List<Run<T>>, Observable<T>>() {
+                                    @Override
+                                    public Observable<T> call(List<Run<T>> runs) {
+                                        return merge(runs, comparator, spill);
+                                    }
+                                }) //
+                                .doOnTerminate(files) //
+                                .doOnUnsubscribe(files);
+                    }
+                });
+            }
+        };
+    }
+
+    private static <T> Run<T> sortAndSpill(Run<T> run, int runSize,
+            Comparator<? super T> comparator, Spill<T> spill, Files files) throws IOException {
+        Collections.sort(run.list, comparator);
+        if (spill == null || run.index == 0 && run.list.size() < runSize) {
+            // a partial first run is the only run so stays in memory
+            return run;
+        }
+        File file = spill.options.fileFactory().call();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), spill.options.bufferSizeBytes()));
+        // add after opening so that a file deleted on unsubscribe is not
+        // recreated
+        files.add(file);
+        try {
+            for (T t : run.list) {
+                spill.serializer.serialize(out, t);
+            }
+        } finally {
+            out.close();
+        }
+        return new Run<T>(run.index, file, run.list.size());
+    }
+
+    private static <T> Observable<T> merge(List<Run<T>> runs, Comparator<? super T> comparator,
+            Spill<T> spill) {
+        if (runs.isEmpty()) {
+            return Observable.empty();
+        }
+        List<Observable<T>> sources = new ArrayList<Observable<T>>(runs.size());
+        for (Run<T> run : runs) {
+            if (run.file == null) {
+                sources.add(Observable.from(run.list));
+            } else {
+                sources.add(read(run.file, run.count, spill.serializer,
+                        spill.options.bufferSizeBytes()));
+            }
+        }
+        if (sources.size() == 1) {
+            return sources.get(0);
+        } else {
+            return OrderedMerge.create(sources, comparator);
+        }
+    }
+
+    private static <T> Observable<T> read(final File file, final int count,
+            final DataSerializer<T> serializer, final int bufferSize) {
+        return Observable.create(new SyncOnSubscribe<Reader, T>() {
+
+            @Override
+            protected Reader generateState() {
+                try {
+                    return new Reader(new DataInputStream(
+                            new BufferedInputStream(new FileInputStream(file), bufferSize)));
+                } catch (IOException e) {
+                    throw new IORuntimeException(e);
+                }
+            }
+
+            @Override
+            protected Reader next(Reader reader, Observer<? super T> observer) {
+                if (reader.read == count) {
+                    observer.onCompleted();
+                } else {
+                    try {
+                        observer.onNext(serializer.deserialize(reader.in));
+                        reader.read++;
+                    } catch (IOException e) {
+                        observer.onError(e);
+                    }
+                }
+                return reader;
+            }
+
+            @Override
+            protected void onUnsubscribe(Reader reader) {
+                closeQuietly(reader.in);
+            }
+        });
+    }
+
+    private static final class Reader {
+        final DataInputStream in;
+        int read;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+    }
+
+    private static final class Spill<T> {
+        final DataSerializer<T> serializer;
+        final Options options;
+
+        Spill(DataSerializer<T> serializer, Options options) {
+            this.serializer = serializer;
+            this.options = options;
+        }
+    }
+
+    /**
+     * A sorted run held either in memory or in a file.
+     */
+    private static final class Run<T> {
+        final int index;
+        final List<T> list;
+        final File file;
+        final int count;
+
+        Run(int index, List<T> list) {
+            this.index = index;
+            this.list = list;
+            this.file = null;
+            this.count = list.size();
+        }
+
+        Run(int index, File file, int count) {
+            this.index = index;
+            this.list = null;
+            this.file = file;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The run files of one subscription. Calling this action deletes them
+     * and any file added afterwards (by a run still being written) is deleted
+     * as soon as it is added.
+     */
+    private static final class Files implements Action0 {
+
+        private final Queue<File> files = new ConcurrentLinkedQueue<File>();
+        private volatile boolean deleted;
+
+        void add(File file) {
+            files.add(file);
+            if (deleted) {
+                call();
+            }
+        }
+
+        @Override
+        public void call() {
+            deleted = true;
+            File file;
+            while ((file = files.poll()) != null) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
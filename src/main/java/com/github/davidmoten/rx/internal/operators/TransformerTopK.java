@@ -0,0 +1,265 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.Functions;
+
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.Observable.Transformer;
+import rx.Producer;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.functions.Action2;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.internal.operators.BackpressureUtils;
+
+/**
+ * Selects the {@code k} greatest items of a stream (according to a
+ * comparator) using a bounded binary heap so that memory is O(k) and time is
+ * O(n log k). The result is emitted in descending order on completion and is
+ * the same as sorting the stream in descending order (stably) and taking the
+ * first {@code k} items.
+ */
+public final class TransformerTopK {
+
+    private static final int INITIAL_HEAP_CAPACITY = 16;
+
+    private TransformerTopK() {
+        // prevent instantiation
+    }
+
+    public static <T> Transformer<T, T> create(final int k,
+            final Comparator<? super T> comparator) {
+        return new Transformer<T, T>() {
+
+            @Override
+            public Observable<T> call(Observable<T> source) {
+                return topK(source, k, comparator)
+                        .flatMapIterable(Functions.<List<T>> identity());
+            }
+        };
+    }
+
+    /**
+     * Returns a transformer that emits the top {@code k} items of each
+     * consecutive window of {@code windowSize} items as a list.
+     */
+    public static <T> Transformer<T, List<T>> every(final int k,
+            final Comparator<? super T> comparator, final int windowSize) {
+        return new Transformer<T, List<T>>() {
+
+            @Override
+            public Observable<List<T>> call(Observable<T> source) {
+                // window(windowSize) would pre-size a queue of windowSize
+                // for every window so fold into a heap instead
+                return source.lift(new EveryOperator<T>(k, comparator, windowSize));
+            }
+        };
+    }
+
+    /**
+     * Returns a transformer that emits the top {@code k} items of each
+     * consecutive time window as a list.
+     */
+    public static <T> Transformer<T, List<T>> every(final int k,
+            final Comparator<? super T> comparator, final long duration, final TimeUnit unit,
+            final Scheduler scheduler) {
+        return new Transformer<T, List<T>>() {
+
+            @Override
+            public Observable<List<T>> call(Observable<T> source) {
+                return source.window(duration, unit, scheduler)
+                        .concatMap(windowTopK(k, comparator));
+            }
+        };
+    }
+
+    private static <T> Func1<Observable<T>, Observable<List<T>>> windowTopK(final int k,
+            final Comparator<? super T> comparator) {
+        return new Func1<Observable<T>, Observable<List<T>>>() {
+            @Override
+            public Observable<List<T>> call(Observable<T> window) {
+                return topK(window, k, comparator);
+            }
+        };
+    }
+
+    private static <T> Observable<List<T>> topK(Observable<T> source, final int k,
+            final Comparator<? super T> comparator) {
+        return source.collect(new Func0<Heap<T>>() {
+            @Override
+            public Heap<T> call() {
+                return new Heap<T>(k, comparator);
+            }
+        }, new Action2<Heap<T>, T>() {
+            @Override
+            public void call(Heap<T> heap, T t) {
+                heap.add(t);
+            }
+        }).map(new Func1<Heap<T>, List<T>>() {
+            @Override
+            public List<T> call(Heap<T> heap) {
+                return heap.toDescendingList();
+            }
+        });
+    }
+
+    private static final class EveryOperator<T> implements Operator<List<T>, T> {
+
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private final int windowSize;
+
+        EveryOperator(int k, Comparator<? super T> comparator, int windowSize) {
+            this.k = k;
+            this.comparator = comparator;
+            this.windowSize = windowSize;
+        }
+
+        @Override
+        public Subscriber<? super T> call(Subscriber<? super List<T>> child) {
+            final EverySubscriber<T> parent = new EverySubscriber<T>(child, k, comparator,
+                    windowSize);
+            child.add(parent);
+            child.setProducer(new Producer() {
+                @Override
+                public void request(long n) {
+                    parent.requestMore(n);
+                }
+            });
+            return parent;
+        }
+    }
+
+    private static final class EverySubscriber<T> extends Subscriber<T> {
+
+        private final Subscriber<? super List<T>> child;
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private final int windowSize;
+        private final AtomicLong requested = new AtomicLong();
+        // holds at most the last partial window emitted on completion
+        private final Queue<List<T>> queue = new ArrayDeque<List<T>>(1);
+
+        private Heap<T> heap;
+        private int count;
+
+        EverySubscriber(Subscriber<? super List<T>> child, int k,
+                Comparator<? super T> comparator, int windowSize) {
+            this.child = child;
+            this.k = k;
+            this.comparator = comparator;
+            this.windowSize = windowSize;
+            request(0);
+        }
+
+        void requestMore(long n) {
+            if (n > 0 && BackpressureUtils.postCompleteRequest(requested, n, queue, child)) {
+                request(BackpressureUtils.multiplyCap(n, windowSize));
+            }
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (heap == null) {
+                heap = new Heap<T>(k, comparator);
+            }
+            heap.add(t);
+            if (++count == windowSize) {
+                List<T> list = heap.toDescendingList();
+                heap = null;
+                count = 0;
+                BackpressureUtils.produced(requested, 1);
+                child.onNext(list);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            if (heap != null) {
+                queue.offer(heap.toDescendingList());
+                heap = null;
+            }
+            BackpressureUtils.postCompleteDone(requested, queue, child);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            heap = null;
+            child.onError(e);
+        }
+    }
+
+    /**
+     * A min-heap of at most k entries whose root is the entry that would be
+     * evicted next: the smallest item and, among equal items, the one that
+     * arrived last.
+     */
+    static final class Heap<T> {
+
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private final PriorityQueue<Entry<T>> queue;
+        private long index;
+
+        Heap(int k, final Comparator<? super T> comparator) {
+            this.k = k;
+            this.comparator = comparator;
+            this.queue = new PriorityQueue<Entry<T>>(
+                    Math.max(1, Math.min(k, INITIAL_HEAP_CAPACITY)), new Comparator<Entry<T>>() {
+                @Override
+                public int compare(Entry<T> a, Entry<T> b) {
+                    int c = comparator.compare(a.value, b.value);
+                    if (c != 0) {
+                        return c;
+                    }
+                    // later arrivals rank lower
+                    return a.index < b.index ? 1 : (a.index == b.index ? 0 : -1);
+                }
+            });
+        }
+
+        void add(T t) {
+            long i = index++;
+            if (queue.size() < k) {
+                queue.offer(new Entry<T>(t, i));
+            } else if (k > 0 && comparator.compare(t, queue.peek().value) > 0) {
+                // only strictly greater items displace the root because an
+                // equal item that arrived later ranks lower
+                queue.poll();
+                queue.offer(new Entry<T>(t, i));
+            }
+        }
+
+        List<T> toDescendingList() {
+            List<Entry<T>> entries = new ArrayList<Entry<T>>(queue);
+            Collections.sort(entries, Collections.reverseOrder(queue.comparator()));
+            List<T> list = new ArrayList<T>(entries.size());
+            for (Entry<T> entry : entries) {
+                list.add(entry.value);
+            }
+            return list;
+        }
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final long index;
+
+        Entry(T value, long index) {
+            this.value = value;
+            this.index = index;
+        }
+    }
+
+}
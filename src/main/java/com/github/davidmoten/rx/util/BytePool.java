@@ -0,0 +1,72 @@
+package com.github.davidmoten.rx.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * A bounded pool of fixed size byte buffers. When the pool is empty a new
+ * buffer is allocated and when the pool is full released buffers are left
+ * for the garbage collector. The pool is thread-safe so buffers can be
+ * released on a different thread to the one that acquired them.
+ */
+public final class BytePool {
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> queue;
+
+    private BytePool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.queue = new ArrayBlockingQueue<byte[]>(maxPooled);
+    }
+
+    /**
+     * Returns a new pool.
+     * 
+     * @param bufferSize
+     *            size in bytes of each buffer
+     * @param maxPooled
+     *            the maximum number of released buffers retained for reuse
+     * @return a new pool
+     */
+    public static BytePool create(int bufferSize, int maxPooled) {
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        Preconditions.checkArgument(maxPooled > 0, "maxPooled must be greater than 0");
+        return new BytePool(bufferSize, maxPooled);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers currently available for reuse.
+     * 
+     * @return the number of pooled buffers
+     */
+    public int available() {
+        return queue.size();
+    }
+
+    /**
+     * Returns a buffer from the pool (or a newly allocated one if the pool is
+     * empty) with offset 0 and length 0.
+     * 
+     * @return a buffer owned by the caller until released
+     */
+    public PooledBytes acquire() {
+        byte[] array = queue.poll();
+        if (array == null) {
+            array = new byte[bufferSize];
+        }
+        // a new handle per acquisition so that a stale handle cannot release
+        // the array again once it has been reacquired
+        return new PooledBytes(array, this);
+    }
+
+    void release(byte[] array) {
+        // if the pool is full the buffer is discarded
+        queue.offer(array);
+    }
+
+}
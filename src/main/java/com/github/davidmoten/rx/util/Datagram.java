@@ -0,0 +1,46 @@
+package com.github.davidmoten.rx.util;
+
+import java.net.SocketAddress;
+
+/**
+ * A received datagram. The payload is held in a pooled buffer that must be
+ * released (via {@link #release()}) once the datagram has been processed.
+ */
+public final class Datagram {
+
+    private final SocketAddress sender;
+    private final PooledBytes bytes;
+
+    public Datagram(SocketAddress sender, PooledBytes bytes) {
+        this.sender = sender;
+        this.bytes = bytes;
+    }
+
+    public SocketAddress sender() {
+        return sender;
+    }
+
+    /**
+     * Returns the payload. Only valid until {@link #release()} is called.
+     * 
+     * @return payload
+     */
+    public PooledBytes bytes() {
+        return bytes;
+    }
+
+    public void release() {
+        bytes.release();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Datagram [sender=");
+        builder.append(sender);
+        builder.append(", length=");
+        builder.append(bytes.length());
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.davidmoten.rx.util;
+
+/**
+ * Which unmatched items a join emits. An unmatched item is passed to the
+ * combiner with {@code null} in place of the item from the other side.
+ */
+public enum JoinType {
+    /**
+     * Only matched pairs are emitted.
+     */
+    INNER,
+
+    /**
+     * Matched pairs and unmatched items from the first (left) source are
+     * emitted.
+     */
+    LEFT,
+
+    /**
+     * Matched pairs and unmatched items from both sources are emitted.
+     */
+    FULL_OUTER;
+}
@@ -0,0 +1,23 @@
+package com.github.davidmoten.rx.util;
+
+/**
+ * What a match does when an item arrives for a side that is already retaining
+ * the maximum number of unmatched items.
+ */
+public enum MatchEvictionPolicy {
+    /**
+     * Evicts the oldest unmatched item of that side and retains the new item.
+     */
+    OLDEST,
+
+    /**
+     * Evicts the new item without retaining it.
+     */
+    NEWEST,
+
+    /**
+     * Terminates the stream with a
+     * {@link com.github.davidmoten.rx.exceptions.MatchOverflowException}.
+     */
+    ERROR;
+}
@@ -0,0 +1,77 @@
+package com.github.davidmoten.rx.util;
+
+import java.util.Arrays;
+
+/**
+ * A slice of a byte array acquired from a {@link BytePool}. The slice has a
+ * single owner and the owner must call {@link #release()} once it has
+ * finished with the bytes. The bytes must not be accessed after release
+ * because the array will be reused. Use {@link #copy()} to retain the bytes.
+ * Each acquisition returns a new instance so a stale instance can never
+ * release an array that has since been acquired by someone else.
+ */
+public final class PooledBytes {
+
+    private final byte[] array;
+    private final BytePool pool;
+    private int offset;
+    private int length;
+    private boolean released;
+
+    PooledBytes(byte[] array, BytePool pool) {
+        this.array = array;
+        this.pool = pool;
+    }
+
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Sets the range of valid bytes in the array.
+     * 
+     * @param offset
+     *            index of the first valid byte
+     * @param length
+     *            number of valid bytes
+     * @return this
+     */
+    public PooledBytes slice(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException(
+                    "offset=" + offset + ", length=" + length + ", capacity=" + array.length);
+        }
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Returns a copy of the valid bytes.
+     * 
+     * @return a copy of the valid bytes
+     */
+    public byte[] copy() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    /**
+     * Returns the array to the pool. Calling this method more than once has
+     * no further effect.
+     */
+    public void release() {
+        if (!released) {
+            released = true;
+            pool.release(array);
+        }
+    }
+
+}
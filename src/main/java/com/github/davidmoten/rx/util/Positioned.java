@@ -0,0 +1,48 @@
+package com.github.davidmoten.rx.util;
+
+/**
+ * A value read from a file with the byte position in the file immediately
+ * after the value. Persisting the position allows reading to be resumed from
+ * that point later.
+ *
+ * @param <T>
+ *            value type
+ */
+public final class Positioned<T> {
+
+    private final T value;
+    private final long position;
+
+    public Positioned(T value, long position) {
+        this.value = value;
+        this.position = position;
+    }
+
+    public static <T> Positioned<T> create(T value, long position) {
+        return new Positioned<T>(value, position);
+    }
+
+    public T value() {
+        return value;
+    }
+
+    /**
+     * Returns the byte position in the file immediately after the value.
+     * 
+     * @return position to resume reading from
+     */
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Positioned [value=");
+        builder.append(value);
+        builder.append(", position=");
+        builder.append(position);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.davidmoten.rx.util;
+
+import java.util.Arrays;
+
+/**
+ * A regex match found in a stream of strings with the offsets of the match
+ * measured in characters from the start of the stream.
+ */
+public final class StringMatch {
+
+    private final long start;
+    private final long end;
+    // group 0 is the whole match, unmatched groups are null
+    private final String[] groups;
+
+    public StringMatch(long start, long end, String[] groups) {
+        this.start = start;
+        this.end = end;
+        this.groups = groups;
+    }
+
+    /**
+     * Returns the offset of the first character of the match.
+     * 
+     * @return start offset (inclusive)
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Returns the offset after the last character of the match.
+     * 
+     * @return end offset (exclusive)
+     */
+    public long end() {
+        return end;
+    }
+
+    public String group() {
+        return groups[0];
+    }
+
+    public String group(int index) {
+        return groups[index];
+    }
+
+    public int groupCount() {
+        return groups.length - 1;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (int) (start ^ (start >>> 32));
+        result = prime * result + (int) (end ^ (end >>> 32));
+        result = prime * result + Arrays.hashCode(groups);
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        StringMatch other = (StringMatch) obj;
+        return start == other.start && end == other.end && Arrays.equals(groups, other.groups);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("StringMatch [start=");
+        builder.append(start);
+        builder.append(", end=");
+        builder.append(end);
+        builder.append(", groups=");
+        builder.append(Arrays.toString(groups));
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.davidmoten.rx.util;
+
+/**
+ * When data written to a file is flushed to the storage device.
+ */
+public enum SyncPolicy {
+
+    /**
+     * Leave flushing of written data to storage to the operating system.
+     */
+    NEVER,
+
+    /**
+     * Flush written data to storage before a file is closed.
+     */
+    ON_CLOSE,
+
+    /**
+     * Flush written data to storage after every write to the file (a write
+     * happens whenever the coalescing buffer is full).
+     */
+    EVERY_WRITE;
+
+}
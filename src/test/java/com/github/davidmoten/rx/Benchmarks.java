@@ -1,6 +1,10 @@
 package com.github.davidmoten.rx;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
@@ -70,4 +74,67 @@ public class Benchmarks {
                 .compose(Transformers.split("o"));
     }
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Observable<byte[]> ASCII_CHUNKS = Observable
+            .from(chunks("the quick brown fox jumped over the lazy dog\n", 100, 8192));
+
+    private static final Observable<byte[]> MULTIBYTE_CHUNKS = Observable
+            .from(chunks("the quick brown \u00A1fox jumped over the lazy \u00A1dog\n", 100, 8191));
+
+    // run with -prof gc to report allocation per chunk
+    @Benchmark
+    public void perfDecodeAscii(Blackhole bh) {
+        Strings.decode(ASCII_CHUNKS, UTF8).subscribe(new LatchedObserver<String>(bh));
+    }
+
+    @Benchmark
+    public void perfDecodeMultibyteSpanningChunks(Blackhole bh) {
+        Strings.decode(MULTIBYTE_CHUNKS, UTF8).subscribe(new LatchedObserver<String>(bh));
+    }
+
+    private static List<byte[]> chunks(String line, int chunks, int chunkSize) {
+        StringBuilder s = new StringBuilder();
+        while (s.length() < chunks * chunkSize) {
+            s.append(line);
+        }
+        byte[] bytes = s.toString().getBytes(UTF8);
+        List<byte[]> list = new ArrayList<byte[]>();
+        for (int i = 0; i < chunks; i++) {
+            list.add(Arrays.copyOfRange(bytes, i * chunkSize, (i + 1) * chunkSize));
+        }
+        return list;
+    }
+
+    private static final byte[] CSV = csv(10000);
+
+    @Benchmark
+    public void perfSplitLines(Blackhole bh) {
+        Strings.splitLines(new ByteArrayInputStream(CSV), ",")
+                .subscribe(new LatchedObserver<List<String>>(bh));
+    }
+
+    @Benchmark
+    public void perfDelimited(Blackhole bh) {
+        Strings.delimited().commentPrefix("#").trim(true)
+                .from(new ByteArrayInputStream(CSV), UTF8)
+                .subscribe(new LatchedObserver<List<String>>(bh));
+    }
+
+    @Benchmark
+    public void perfDelimitedReuseRecord(Blackhole bh) {
+        Strings.delimited().commentPrefix("#").trim(true).reuseRecord(true)
+                .from(new ByteArrayInputStream(CSV), UTF8)
+                .subscribe(new LatchedObserver<List<String>>(bh));
+    }
+
+    private static byte[] csv(int lines) {
+        StringBuilder s = new StringBuilder("# a comment\n");
+        for (int i = 0; i < lines; i++) {
+            s.append(i).append(",fred,smith,2016-03-14T12:00:00Z,123.45,").append(i * 7)
+                    .append('\n');
+        }
+        return s.toString().getBytes(UTF8);
+    }
+
 }
@@ -2,25 +2,51 @@ package com.github.davidmoten.rx;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rx.testing.TestingHelper;
+import com.github.davidmoten.rx.util.BytePool;
+import com.github.davidmoten.rx.util.PooledBytes;
+import com.github.davidmoten.rx.util.Positioned;
+import com.github.davidmoten.rx.util.SyncPolicy;
 import com.github.davidmoten.rx.util.ZippedEntry;
 
 import rx.Observable;
 import rx.functions.Action1;
 import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.plugins.RxJavaHooks;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 public class BytesTest {
 
@@ -105,6 +131,120 @@ public class BytesTest {
         assertArrayEquals("abcdefg".getBytes(), bytes.toByteArray());
     }
 
+    @Test
+    public void testLinesFromFile() throws IOException {
+        File file = writeFile("target/testLinesFromFile", "a\nbc\n\ndef");
+        List<String> list = Bytes.lines(file).toList().toBlocking().single();
+        assertEquals(Arrays.asList("a", "bc", "", "def"), list);
+    }
+
+    @Test
+    public void testLinesFromFileWithTrailingNewLine() throws IOException {
+        File file = writeFile("target/testLinesFromFileTrailing", "a\nbc\n");
+        List<String> list = Bytes.lines(file).toList().toBlocking().single();
+        assertEquals(Arrays.asList("a", "bc"), list);
+    }
+
+    @Test
+    public void testLinesFromEmptyFile() throws IOException {
+        File file = writeFile("target/testLinesFromEmptyFile", "");
+        assertTrue(Bytes.lines(file).toList().toBlocking().single().isEmpty());
+    }
+
+    @Test
+    public void testLinesSpanningBuffersWithMultibyteCharacters() throws IOException {
+        Charset utf8 = Charset.forName("UTF-8");
+        File file = writeFile("target/testLinesSpanningBuffers",
+                "\u00A1hello\u00A1\nthere and everywhere\n\u00A1\u00A1\u00A1");
+        List<String> list = Bytes.lines(file, utf8, 3).toList().toBlocking().single();
+        assertEquals(Arrays.asList("\u00A1hello\u00A1", "there and everywhere",
+                "\u00A1\u00A1\u00A1"), list);
+    }
+
+    @Test
+    public void testLinesBackpressure() throws IOException {
+        File file = writeFile("target/testLinesBackpressure", "a\nb\nc");
+        Bytes.lines(file) //
+                .to(TestingHelper.<String> testWithRequest(2)) //
+                .assertValues("a", "b") //
+                .assertNoTerminalEvent() //
+                .requestMore(1) //
+                .assertValues("a", "b", "c") //
+                .assertCompleted();
+    }
+
+    private static File writeFile(String filename, String content) throws IOException {
+        File file = new File(filename);
+        file.delete();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void testFromPooledReusesBuffers() {
+        BytePool pool = BytePool.create(4, 2);
+        final List<byte[]> arrays = new ArrayList<byte[]>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Bytes.fromPooled(new ByteArrayInputStream("abcdefghij".getBytes()), pool)
+                .doOnNext(new Action1<PooledBytes>() {
+                    @Override
+                    public void call(PooledBytes b) {
+                        arrays.add(b.array());
+                        bytes.write(b.array(), b.offset(), b.length());
+                        b.release();
+                    }
+                }).subscribe();
+        assertArrayEquals("abcdefghij".getBytes(), bytes.toByteArray());
+        assertEquals(3, arrays.size());
+        // the same array is used for every read because it is released
+        // before the next read
+        assertTrue(arrays.get(0) == arrays.get(1));
+        assertTrue(arrays.get(1) == arrays.get(2));
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    public void testFromPooledCopyAndRelease() {
+        BytePool pool = BytePool.create(4, 2);
+        List<byte[]> list = Bytes.fromPooled(new ByteArrayInputStream("abcdefghij".getBytes()), pool)
+                .map(Bytes.copyAndRelease()).toList().toBlocking().single();
+        assertEquals(3, list.size());
+        assertArrayEquals("abcd".getBytes(), list.get(0));
+        assertArrayEquals("efgh".getBytes(), list.get(1));
+        assertArrayEquals("ij".getBytes(), list.get(2));
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    public void testBytePoolIsBounded() {
+        BytePool pool = BytePool.create(4, 2);
+        PooledBytes a = pool.acquire();
+        PooledBytes b = pool.acquire();
+        PooledBytes c = pool.acquire();
+        a.release();
+        b.release();
+        c.release();
+        // releasing twice has no effect
+        a.release();
+        assertEquals(2, pool.available());
+    }
+
+    @Test
+    public void testStaleReleaseDoesNotReturnReacquiredBuffer() {
+        BytePool pool = BytePool.create(4, 2);
+        PooledBytes a = pool.acquire();
+        a.release();
+        PooledBytes b = pool.acquire();
+        assertTrue(a.array() == b.array());
+        // a stale handle must not put b's array back in the pool
+        a.release();
+        assertEquals(0, pool.available());
+        PooledBytes c = pool.acquire();
+        assertTrue(b.array() != c.array());
+    }
+
     @Test
     public void testCollect() {
         byte[] a = { 1, 2, 3 };
@@ -135,4 +275,419 @@ public class BytesTest {
         assertTrue(Arrays.equals(new byte[] {}, result));
     }
 
+    @Test
+    public void testGzipReadableByGZIPInputStream() throws IOException {
+        byte[] data = randomText(100000);
+        byte[] gzipped = Observable.from(chunks(data, 1000)).compose(Bytes.gzip())
+                .compose(Bytes.collect()).toBlocking().single();
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+    }
+
+    @Test
+    public void testGunzipReadsGZIPOutputStreamInAnyChunkSize() throws IOException {
+        byte[] data = randomText(10000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        for (int size : new int[] { 1, 7, 100, 100000 }) {
+            byte[] result = Observable.from(chunks(bytes.toByteArray(), size))
+                    .compose(Bytes.gunzip(64)).compose(Bytes.collect()).toBlocking().single();
+            assertArrayEquals(data, result);
+        }
+    }
+
+    @Test
+    public void testGunzipConcatenatedMembersWithHeaderFields() {
+        byte[] a = "hello ".getBytes();
+        byte[] b = "there".getBytes();
+        byte[] member = Observable.just(a).compose(Bytes.gzip()).compose(Bytes.collect())
+                .toBlocking().single();
+        // set FNAME and FCOMMENT flags on a second member
+        byte[] second = Observable.just(b).compose(Bytes.gzip()).compose(Bytes.collect())
+                .toBlocking().single();
+        ByteArrayOutputStream withName = new ByteArrayOutputStream();
+        withName.write(second, 0, 3);
+        withName.write(8 | 16);
+        withName.write(second, 4, 6);
+        withName.write('f');
+        withName.write(0);
+        withName.write('c');
+        withName.write(0);
+        withName.write(second, 10, second.length - 10);
+        byte[] result = Observable.just(member, withName.toByteArray())
+                .compose(Bytes.gunzip()).compose(Bytes.collect()).toBlocking().single();
+        assertEquals("hello there", new String(result));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testGunzipTruncatedStreamFails() {
+        byte[] gzipped = Observable.just(randomText(1000)).compose(Bytes.gzip())
+                .compose(Bytes.collect()).toBlocking().single();
+        Observable.just(Arrays.copyOf(gzipped, gzipped.length - 4)).compose(Bytes.gunzip())
+                .toBlocking().last();
+    }
+
+    @Test
+    public void testDeflateInflateRoundTripAndCompatibility() throws IOException {
+        byte[] data = randomText(50000);
+        byte[] deflated = Observable.from(chunks(data, 333)).compose(Bytes.deflate(9, 100))
+                .compose(Bytes.collect()).toBlocking().single();
+        assertArrayEquals(data,
+                readAll(new InflaterInputStream(new ByteArrayInputStream(deflated))));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+        out.write(data);
+        out.close();
+        assertArrayEquals(data, Observable.from(chunks(bytes.toByteArray(), 50))
+                .compose(Bytes.inflate()).compose(Bytes.collect()).toBlocking().single());
+    }
+
+    @Test
+    public void testInflateBackpressure() {
+        byte[] deflated = Observable.just(randomText(1000)).compose(Bytes.deflate())
+                .compose(Bytes.collect()).toBlocking().single();
+        Observable.just(deflated) //
+                .compose(Bytes.inflate(100)) //
+                .to(TestingHelper.<byte[]> testWithRequest(3)) //
+                .assertValueCount(3) //
+                .assertNotCompleted() //
+                .requestMore(100) //
+                .assertValueCount(10) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testUnzipParallel() {
+        List<String> list = Bytes
+                .unzipParallel(new File("src/test/resources/test.zip"), 2,
+                        new Func1<ZippedEntry, Observable<String>>() {
+                            @Override
+                            public Observable<String> call(ZippedEntry entry) {
+                                return Strings.from(entry.getInputStream()).toList()
+                                        .map(new Func1<List<String>, String>() {
+                                            @Override
+                                            public String call(List<String> parts) {
+                                                StringBuilder s = new StringBuilder();
+                                                for (String part : parts) {
+                                                    s.append(part);
+                                                }
+                                                return s.toString();
+                                            }
+                                        });
+                            }
+                        })
+                .toList().toBlocking().single();
+        List<String> sorted = new ArrayList<String>(list);
+        Collections.sort(sorted);
+        assertEquals(Arrays.asList("hello there", "how are you going?"), sorted);
+    }
+
+    private static byte[] randomText(int length) {
+        Random random = new Random(1);
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) ('a' + random.nextInt(10));
+        }
+        return b;
+    }
+
+    private static List<byte[]> chunks(byte[] data, int size) {
+        List<byte[]> list = new ArrayList<byte[]>();
+        for (int i = 0; i < data.length; i += size) {
+            list.add(Arrays.copyOfRange(data, i, Math.min(data.length, i + size)));
+        }
+        return list;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        is.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testFromReadAhead() throws IOException {
+        byte[] data = randomText(100001);
+        File file = new File("target/testFromReadAhead");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+        for (int readAhead : new int[] { 1, 2, 8 }) {
+            List<byte[]> list = Bytes.fromReadAhead(file, 1000, readAhead).toList().toBlocking()
+                    .single();
+            assertEquals(101, list.size());
+            assertArrayEquals(data, Observable.from(list).compose(Bytes.collect()).toBlocking()
+                    .single());
+        }
+    }
+
+    @Test
+    public void testFromReadAheadBackpressure() throws IOException {
+        File file = writeFile("target/testFromReadAheadBackpressure", "abcdefghij");
+        TestingHelper.<byte[]> testWithRequest(2)
+                .call(Bytes.fromReadAhead(file, 3, 2, Schedulers.immediate())) //
+                .assertValueCount(2) //
+                .assertNotCompleted() //
+                .requestMore(10) //
+                .assertValueCount(4) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testFromReadAheadFileDoesNotExist() {
+        Bytes.fromReadAhead(new File("target/doesNotExist")) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertError(FileNotFoundException.class);
+    }
+
+    @Test
+    public void testWriteCoalescesToFile() throws IOException {
+        byte[] data = randomText(100001);
+        File file = new File("target/testWrite");
+        File result = Observable.from(chunks(data, 7)) //
+                .compose(Bytes.writer(file).bufferSize(1000).build()) //
+                .toBlocking().single();
+        assertEquals(file, result);
+        assertArrayEquals(data, readAll(new FileInputStream(file)));
+    }
+
+    @Test
+    public void testWriteEmptyCreatesFile() throws IOException {
+        File file = new File("target/testWriteEmpty");
+        writeFile(file.getPath(), "abc");
+        Observable.<byte[]> empty().compose(Bytes.write(file)).toBlocking().single();
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void testWriteRollsOverBySize() throws IOException {
+        byte[] data = randomText(1000);
+        final File base = new File("target/testWriteRollover");
+        List<File> files = Observable.from(chunks(data, 100)) //
+                .compose(Bytes.writer(base).rolloverSizeBytes(250).syncPolicy(SyncPolicy.ON_CLOSE)
+                        .build()) //
+                .toList().toBlocking().single();
+        assertEquals(4, files.size());
+        assertEquals(base, files.get(0));
+        assertEquals(new File(base.getPath() + ".3"), files.get(3));
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (int i = 0; i < files.size(); i++) {
+            byte[] b = readAll(new FileInputStream(files.get(i)));
+            assertEquals(i < 3 ? 300 : 100, b.length);
+            all.write(b);
+        }
+        assertArrayEquals(data, all.toByteArray());
+    }
+
+    @Test
+    public void testWriteRollsOverByTime() throws IOException {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<byte[]> subject = PublishSubject.create();
+        final File base = new File("target/testWriteRolloverByTime");
+        TestSubscriber<File> ts = TestSubscriber.create();
+        subject.compose(Bytes.writer(base).rolloverEvery(1, TimeUnit.SECONDS)
+                .writeBehind(scheduler, 4).build()).subscribe(ts);
+        subject.onNext(new byte[] { 1 });
+        subject.onNext(new byte[] { 2 });
+        scheduler.triggerActions();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        subject.onNext(new byte[] { 3 });
+        scheduler.triggerActions();
+        ts.assertValue(base);
+        subject.onCompleted();
+        scheduler.triggerActions();
+        ts.assertValues(base, new File(base.getPath() + ".1"));
+        ts.assertCompleted();
+        assertArrayEquals(new byte[] { 1, 2 }, readAll(new FileInputStream(base)));
+        assertArrayEquals(new byte[] { 3 },
+                readAll(new FileInputStream(new File(base.getPath() + ".1"))));
+    }
+
+    @Test
+    public void testWriteBackpressure() throws IOException {
+        final File base = new File("target/testWriteBackpressure");
+        TestingHelper.<File> testWithRequest(1)
+                .call(Observable.from(chunks(randomText(100), 10))
+                        .compose(Bytes.writer(base).rolloverSizeBytes(30).build())) //
+                .assertValueCount(1) //
+                .assertNotCompleted() //
+                .requestMore(10) //
+                .assertValueCount(4) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testWriteToDirectoryErrors() {
+        Observable.just(new byte[] { 1 }) //
+                .compose(Bytes.write(new File("target"))) //
+                .to(TestingHelper.<File> test()) //
+                .assertError(FileNotFoundException.class);
+    }
+
+    @Test
+    public void testWriteUnsubscribeDuringWriteClosesChannelOnWriterThread()
+            throws Exception {
+        Assume.assumeTrue(new File("/proc/self/fd").isDirectory());
+        final File base = new File("target/testWriteUnsubscribe");
+        final File second = new File(base.getPath() + ".1");
+        final CountDownLatch opening = new CountDownLatch(1);
+        final CountDownLatch unsubscribed = new CountDownLatch(1);
+        final List<Throwable> hookErrors = new CopyOnWriteArrayList<Throwable>();
+        RxJavaHooks.setOnError(new Action1<Throwable>() {
+            @Override
+            public void call(Throwable e) {
+                hookErrors.add(e);
+            }
+        });
+        final TestSubscriber<File> ts = TestSubscriber.create();
+        // the file factory is called by the writer while it holds the
+        // channel so unsubscribing then happens part way through a write
+        final Observable<File> o = Observable.just(new byte[] { 1, 2 }, new byte[] { 3 })
+                .compose(Bytes.writer(new Func1<Integer, File>() {
+                    @Override
+                    public File call(Integer index) {
+                        if (index == 0) {
+                            return base;
+                        }
+                        opening.countDown();
+                        try {
+                            unsubscribed.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        return second;
+                    }
+                }).rolloverSizeBytes(2).build());
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                o.subscribe(ts);
+            }
+        });
+        try {
+            writer.start();
+            assertTrue(opening.await(5, TimeUnit.SECONDS));
+            ts.unsubscribe();
+            unsubscribed.countDown();
+            writer.join(5000);
+            assertFalse(writer.isAlive());
+            ts.assertValue(base);
+            ts.assertNoErrors();
+            assertTrue(hookErrors.isEmpty());
+            assertFalse(isOpen(base));
+            assertFalse(isOpen(second));
+        } finally {
+            RxJavaHooks.reset();
+            base.delete();
+            second.delete();
+        }
+    }
+
+    @Test
+    public void testTailFollowsAppendsAndRotation() throws IOException {
+        File file = new File("target/testTail");
+        File rotated = new File("target/testTail.rotated");
+        rotated.delete();
+        writeFile(file.getPath(), "abc");
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<String> ts = TestSubscriber.create();
+        Bytes.tail(file, 0, 100, 8192, scheduler).map(TAIL_TO_STRING).subscribe(ts);
+        scheduler.triggerActions();
+        ts.assertValues("abc:3");
+        append(file, "de");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues("abc:3", "de:5");
+        assertTrue(file.renameTo(rotated));
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValueCount(2);
+        writeFile(file.getPath(), "xy");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues("abc:3", "de:5", "xy:2");
+        ts.unsubscribe();
+        scheduler.triggerActions();
+        ts.assertNoTerminalEvent();
+    }
+
+    @Test
+    public void testTailFromPositionAndTruncation() throws IOException {
+        File file = writeFile("target/testTailFromPosition", "abcdef");
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<String> ts = TestSubscriber.create();
+        Bytes.tail(file, 4, 100, 8192, scheduler).map(TAIL_TO_STRING).subscribe(ts);
+        scheduler.triggerActions();
+        ts.assertValues("ef:6");
+        writeFile(file.getPath(), "g");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues("ef:6", "g:1");
+    }
+
+    @Test
+    public void testTailWaitsForFileToExist() throws IOException {
+        File file = new File("target/testTailWaits");
+        file.delete();
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<String> ts = TestSubscriber.create();
+        Bytes.tail(file, 0, 100, 8192, scheduler).map(TAIL_TO_STRING).subscribe(ts);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertNoValues();
+        writeFile(file.getPath(), "a");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues("a:1");
+    }
+
+    @Test
+    public void testTailBackpressure() throws IOException {
+        File file = writeFile("target/testTailBackpressure", "abcde");
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        Bytes.tail(file, 0, 100, 2, scheduler).map(TAIL_TO_STRING).subscribe(ts);
+        scheduler.triggerActions();
+        ts.assertValues("ab:2");
+        ts.requestMore(5);
+        scheduler.triggerActions();
+        ts.assertValues("ab:2", "cd:4", "e:5");
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Func1<Positioned<byte[]>, String> TAIL_TO_STRING = new Func1<Positioned<byte[]>, String>() {
+        @Override
+        public String call(Positioned<byte[]> p) {
+            return new String(p.value(), UTF8) + ":" + p.position();
+        }
+    };
+
+    /**
+     * Returns true if this process has the file open (Linux only).
+     */
+    private static boolean isOpen(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        File[] fds = new File("/proc/self/fd").listFiles();
+        if (fds != null) {
+            for (File fd : fds) {
+                try {
+                    if (fd.getCanonicalPath().equals(path)) {
+                        return true;
+                    }
+                } catch (IOException e) {
+                    // descriptor closed while listing
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void append(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(content.getBytes(UTF8));
+        out.close();
+    }
+
 }
@@ -0,0 +1,174 @@
+package com.github.davidmoten.rx;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+public class ClientSocketPoolTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testConnectionsAreReusedAndEvictedWhenIdle() throws InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        final AtomicInteger accepted = new AtomicInteger();
+        Subscription server = IO.serverSocketAutoAllocatePort(Actions.setAtomic(port)) //
+                .acceptSocketIf(new Func1<Socket, Boolean>() {
+                    @Override
+                    public Boolean call(Socket socket) {
+                        accepted.incrementAndGet();
+                        return true;
+                    }
+                }) //
+                .handle(ECHO) //
+                .subscribeOn(Schedulers.io()) //
+                .subscribe();
+        try {
+            Thread.sleep(300);
+            TestScheduler scheduler = new TestScheduler();
+            ClientSocketPool pool = IO.clientSocket("localhost", port.get()) //
+                    .maxSize(2) //
+                    .idleTimeout(1, TimeUnit.MINUTES) //
+                    .scheduler(scheduler) //
+                    .create();
+            try {
+                for (int i = 0; i < 5; i++) {
+                    TestSubscriber<String> ts = TestSubscriber.create();
+                    pool.exchange(Observable.just(bytes("hello "), bytes(i + "\n")), FIRST_LINE)
+                            .subscribe(ts);
+                    scheduler.triggerActions();
+                    ts.assertValue("hello " + i);
+                    ts.assertCompleted();
+                }
+                assertEquals(1, accepted.get());
+                assertEquals(1, pool.size());
+                assertEquals(1, pool.idleCount());
+                scheduler.advanceTimeBy(1, TimeUnit.MINUTES);
+                assertEquals(0, pool.size());
+                assertEquals(0, pool.idleCount());
+            } finally {
+                pool.close();
+            }
+        } finally {
+            server.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testFailedExchangeClosesConnection() throws InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        Subscription server = IO.serverSocketAutoAllocatePort(Actions.setAtomic(port)) //
+                .handle(ECHO) //
+                .subscribeOn(Schedulers.io()) //
+                .subscribe();
+        try {
+            Thread.sleep(300);
+            ClientSocketPool pool = IO.clientSocket("localhost", port.get()).create();
+            try {
+                TestSubscriber<String> ts = TestSubscriber.create();
+                pool.exchange(Observable.just(bytes("a\n")),
+                        new Func1<Observable<byte[]>, Observable<String>>() {
+                            @Override
+                            public Observable<String> call(Observable<byte[]> in) {
+                                return FIRST_LINE.call(in).concatWith(
+                                        Observable.<String> error(new RuntimeException("boo")));
+                            }
+                        }).subscribe(ts);
+                ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+                ts.assertError(RuntimeException.class);
+                assertEquals(0, pool.size());
+            } finally {
+                pool.close();
+            }
+        } finally {
+            server.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testExchangeOnConnectionClosedByServerWhileIdleIsRetried() throws Exception {
+        // replies to one line per connection then closes the connection
+        final ServerSocket ss = new ServerSocket(0);
+        final AtomicInteger accepted = new AtomicInteger();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = ss.accept();
+                        accepted.incrementAndGet();
+                        BufferedReader r = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), UTF_8));
+                        OutputStream out = socket.getOutputStream();
+                        out.write(bytes("re " + r.readLine() + "\n"));
+                        out.flush();
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // server socket closed
+                }
+            }
+        });
+        t.start();
+        try {
+            ClientSocketPool pool = IO.clientSocket("localhost", ss.getLocalPort()).create();
+            try {
+                assertEquals("re a", pool.exchange(Observable.just(bytes("a\n")), FIRST_LINE)
+                        .toBlocking().single());
+                assertEquals(1, pool.idleCount());
+                // let the close from the server arrive
+                Thread.sleep(100);
+                assertEquals("re b", pool.exchange(Observable.just(bytes("b\n")), FIRST_LINE)
+                        .toBlocking().single());
+                assertEquals(2, accepted.get());
+            } finally {
+                pool.close();
+            }
+        } finally {
+            ss.close();
+        }
+    }
+
+    private static final Func1<Observable<byte[]>, Observable<byte[]>> ECHO = new Func1<Observable<byte[]>, Observable<byte[]>>() {
+        @Override
+        public Observable<byte[]> call(Observable<byte[]> in) {
+            return in;
+        }
+    };
+
+    private static final Func1<Observable<byte[]>, Observable<String>> FIRST_LINE = new Func1<Observable<byte[]>, Observable<String>>() {
+        @Override
+        public Observable<String> call(Observable<byte[]> in) {
+            return in.compose(Bytes.frameByDelimiter(bytes("\n"), 1000)) //
+                    .first() //
+                    .map(new Func1<byte[], String>() {
+                        @Override
+                        public String call(byte[] b) {
+                            return new String(b, UTF_8);
+                        }
+                    });
+        }
+    };
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.github.davidmoten.rx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.davidmoten.rx.internal.operators.OrderedMerge;
+
+import rx.Observable;
+
+/**
+ * Merges {@code k} sorted sources of interleaved integers totalling
+ * {@link #TOTAL} items so that the cost per item can be compared as the
+ * number of sources grows. Run with {@code mvn clean install -P benchmark}.
+ */
+@State(Scope.Benchmark)
+public class OrderedMergeBenchmarks {
+
+    private static final int TOTAL = 100000;
+
+    @Param({ "2", "10", "100", "500", "1000" })
+    public int k;
+
+    private List<Observable<Integer>> sources;
+
+    @Setup
+    public void setup() {
+        sources = new ArrayList<Observable<Integer>>(k);
+        for (int i = 0; i < k; i++) {
+            List<Integer> list = new ArrayList<Integer>(TOTAL / k + 1);
+            for (int j = i; j < TOTAL; j += k) {
+                list.add(j);
+            }
+            sources.add(Observable.from(list));
+        }
+    }
+
+    @Benchmark
+    public void orderedMerge(Blackhole bh) {
+        bh.consume(OrderedMerge.create(sources).count().toBlocking().single());
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.github.davidmoten.rx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+
+import rx.observers.TestSubscriber;
+
+public class ProcessPoolTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // replies to each line with the pid of the shell and the line
+    private static final String SCRIPT = "while read l; do " //
+            + "if [ \"$l\" = slow ]; then sleep 10; fi; " //
+            + "if [ \"$l\" = die ]; then exit 3; fi; " //
+            + "if [ \"$l\" = err ]; then echo problem >&2; fi; " //
+            + "echo \"$$ $l\"; done";
+
+    @Before
+    public void checkShell() {
+        Assume.assumeTrue(new File("/bin/sh").exists());
+    }
+
+    @Test
+    public void testWorkerIsReused() {
+        ProcessPool pool = Processes.pool("/bin/sh", "-c", SCRIPT).maxSize(1).create();
+        try {
+            Set<String> pids = new HashSet<String>();
+            for (int i = 0; i < 20; i++) {
+                String[] reply = request(pool, "hello" + i).split(" ");
+                assertEquals("hello" + i, reply[1]);
+                pids.add(reply[0]);
+            }
+            assertEquals(1, pids.size());
+            assertEquals(1, pool.size());
+            assertEquals(1, pool.idleCount());
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutDestroysWorkerAndNextRequestStartsAnother() {
+        ProcessPool pool = Processes.pool("/bin/sh", "-c", SCRIPT) //
+                .maxSize(1) //
+                .requestTimeout(300, TimeUnit.MILLISECONDS) //
+                .create();
+        try {
+            String pid = request(pool, "a").split(" ")[0];
+            TestSubscriber<byte[]> ts = TestSubscriber.create();
+            pool.submit(line("slow")).subscribe(ts);
+            ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+            ts.assertError(TimeoutException.class);
+            assertEquals(0, pool.size());
+            String[] reply = request(pool, "b").split(" ");
+            assertEquals("b", reply[1]);
+            assertTrue(!pid.equals(reply[0]));
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testCrashFailsRequestAndIsReplaced() {
+        ProcessPool pool = Processes.pool("/bin/sh", "-c", SCRIPT).maxSize(1).create();
+        try {
+            TestSubscriber<byte[]> ts = TestSubscriber.create();
+            pool.submit(line("die")).subscribe(ts);
+            ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+            ts.assertError(IORuntimeException.class);
+            assertEquals("c", request(pool, "c").split(" ")[1]);
+        } finally {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testStderrIsEmittedSeparately() {
+        ProcessPool pool = Processes.pool("/bin/sh", "-c", SCRIPT).create();
+        try {
+            TestSubscriber<byte[]> ts = TestSubscriber.create();
+            pool.stderr().subscribe(ts);
+            assertEquals("err", request(pool, "err").split(" ")[1]);
+            long start = System.currentTimeMillis();
+            while (ts.getOnNextEvents().isEmpty() && System.currentTimeMillis() - start < 10000) {
+                Thread.yield();
+            }
+            assertEquals("problem\n", new String(ts.getOnNextEvents().get(0), UTF_8));
+        } finally {
+            pool.close();
+        }
+    }
+
+    private static String request(ProcessPool pool, String s) {
+        return new String(pool.submit(line(s)).toBlocking().single(), UTF_8);
+    }
+
+    private static byte[] line(String s) {
+        return (s + "\n").getBytes(UTF_8);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.github.davidmoten.rx;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Processes.Parameters;
+import com.github.davidmoten.rx.Processes.Pipe;
+import com.github.davidmoten.rx.Processes.ProcessException;
+import com.github.davidmoten.util.Optional;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.observers.TestSubscriber;
+
+public class ProcessesTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Before
+    public void checkShell() {
+        Assume.assumeTrue(new File("/bin/sh").exists());
+    }
+
+    @Test
+    public void testExecuteCompletesOnZeroExitCode() {
+        String s = Processes.execute("/bin/sh", "-c", "echo hello") //
+                .compose(Bytes.collect()) //
+                .map(TO_STRING) //
+                .toBlocking() //
+                .single();
+        assertEquals("hello\n", s);
+    }
+
+    @Test
+    public void testPipeStreamsStdinThroughProcess() {
+        int n = 10000;
+        byte[] chunk = new byte[1000];
+        Arrays.fill(chunk, (byte) 'a');
+        Pipe pipe = Processes.pipe(parameters("cat; echo done >&2", null),
+                Observable.just(chunk).repeat(n));
+        TestSubscriber<String> errors = TestSubscriber.create();
+        pipe.stderr().map(TO_STRING).subscribe(errors);
+        long count = pipe.stdout() //
+                .reduce(0L, new Func2<Long, byte[], Long>() {
+                    @Override
+                    public Long call(Long total, byte[] bytes) {
+                        return total + bytes.length;
+                    }
+                }) //
+                .toBlocking() //
+                .single();
+        assertEquals((long) n * chunk.length, count);
+        errors.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        errors.assertValue("done\n");
+        errors.assertCompleted();
+    }
+
+    @Test
+    public void testPipeNonZeroExitCode() {
+        TestSubscriber<byte[]> ts = TestSubscriber.create();
+        Processes.pipe(parameters("exit 4", null), Observable.<byte[]> empty()).stdout()
+                .subscribe(ts);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertError(ProcessException.class);
+        assertEquals(4, ((ProcessException) ts.getOnErrorEvents().get(0)).exitCode());
+    }
+
+    @Test
+    public void testPipeWaitForTimesOut() {
+        TestSubscriber<byte[]> ts = TestSubscriber.create();
+        // closes stdout then keeps running
+        Processes.pipe(parameters("exec >&- 2>&-; sleep 10", 200L), Observable.<byte[]> empty())
+                .stdout().subscribe(ts);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertError(TimeoutException.class);
+    }
+
+    private static Parameters parameters(String script, Long waitForMs) {
+        return new Parameters(Arrays.asList("/bin/sh", "-c", script),
+                Optional.<Map<String, String>> absent(), true, new File("."),
+                Optional.fromNullable(waitForMs));
+    }
+
+    private static final Func1<byte[], String> TO_STRING = new Func1<byte[], String>() {
+        @Override
+        public String call(byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+}
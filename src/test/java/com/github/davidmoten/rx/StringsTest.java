@@ -4,14 +4,26 @@ import static com.github.davidmoten.rx.Strings.decode;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.github.davidmoten.rx.testing.TestingHelper;
+import com.github.davidmoten.rx.util.Positioned;
+
 import rx.Observable;
 import rx.functions.Func2;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
 
 public class StringsTest {
 
@@ -92,4 +104,122 @@ public class StringsTest {
 			}
 		}).toBlocking().single());
     }
+
+    @Test
+    public void testLinesParallelPreservesOrder() throws IOException {
+        File file = writeLines("target/testLinesParallel", 1000, 1);
+        List<String> expected = Bytes.lines(file).toList().toBlocking().single();
+        assertEquals(1000, expected.size());
+        for (int chunks = 1; chunks <= 13; chunks++) {
+            assertEquals(expected,
+                    Strings.linesParallel(file, chunks).toList().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void testLinesParallelUnordered() throws IOException {
+        File file = writeLines("target/testLinesParallelUnordered", 1000, 1);
+        List<String> expected = Bytes.lines(file).toList().toBlocking().single();
+        List<String> list = new ArrayList<String>(Strings
+                .linesParallel(file, Charset.forName("UTF-8"), 8, false, Schedulers.io())
+                .toList().toBlocking().single());
+        Collections.sort(list);
+        Collections.sort(expected);
+        assertEquals(expected, list);
+    }
+
+    @Test
+    public void testLinesChunkedWithMoreChunksThanLines() throws IOException {
+        File file = writeLines("target/testLinesChunkedLongLines", 3, 1000);
+        List<String> expected = Bytes.lines(file).toList().toBlocking().single();
+        assertEquals(expected, Observable
+                .concat(Strings.linesChunked(file, Charset.forName("UTF-8"), 100)).toList()
+                .toBlocking().single());
+        assertEquals(3, (int) Strings.linesChunked(file, Charset.forName("UTF-8"), 100).count()
+                .toBlocking().single());
+    }
+
+    @Test
+    public void testLinesParallelEmptyFile() throws IOException {
+        File file = writeLines("target/testLinesParallelEmpty", 0, 1);
+        assertEquals(0, (int) Strings.linesParallel(file, 4).count().toBlocking().single());
+    }
+
+    private static File writeLines(String filename, int lines, int repeats) throws IOException {
+        File file = new File(filename);
+        file.delete();
+        FileOutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < lines; i++) {
+            StringBuilder s = new StringBuilder();
+            for (int j = 0; j < repeats; j++) {
+                s.append("line \u00A1 " + i);
+            }
+            s.append("\n");
+            out.write(s.toString().getBytes("UTF-8"));
+        }
+        out.close();
+        return file;
+    }
+
+    @Test
+    public void testDecodeAsciiChunks() {
+        Observable<byte[]> src = Observable.just("abc".getBytes(), "def".getBytes());
+        assertEquals(Arrays.asList("abc", "def"),
+                decode(src, "UTF-8").toList().toBlocking().single());
+    }
+
+    @Test
+    public void testDecodeAsciiAfterPartialMultibyte() {
+        Observable<byte[]> src = Observable.just(new byte[] { 65, (byte) 0xc2 },
+                new byte[] { (byte) 0xa1, 66 }, new byte[] { 67 });
+        assertEquals(Arrays.asList("A", "\u00A1B", "C"),
+                decode(src, "UTF-8").toList().toBlocking().single());
+    }
+
+    @Test
+    public void testDecodeNonAsciiCompatibleCharset() {
+        byte[] bytes = "hello".getBytes(Charset.forName("UTF-16BE"));
+        Observable<byte[]> src = Observable.just(Arrays.copyOfRange(bytes, 0, 3),
+                Arrays.copyOfRange(bytes, 3, bytes.length));
+        assertEquals("hello", Strings.join(decode(src, "UTF-16BE")).toBlocking().single());
+    }
+
+    @Test
+    public void testDecodeBackpressureWithFinalMalformedReplacement() {
+        Observable<byte[]> src = Observable.just(new byte[] { (byte) 0xc2 },
+                new byte[] { (byte) 0xa1, 65 }, new byte[] { (byte) 0xc2 });
+        decode(src, "UTF-8") //
+                .to(TestingHelper.<String> testWithRequest(1)) //
+                .assertValues("\u00A1A") //
+                .assertNotCompleted() //
+                .requestMore(1) //
+                .assertValues("\u00A1A", "\uFFFD") //
+                .assertCompleted();
+    }
+    @Test
+    public void testWriteReadsBackSameLines() {
+        File file = new File("target/testStringsWrite");
+        Observable.just("a\n", "\u00e9\u00e8\n", "c").compose(Strings.write(file)).toBlocking()
+                .single();
+        assertEquals(Arrays.asList("a", "\u00e9\u00e8", "c"),
+                Bytes.lines(file).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testTailMultibyteCharacterSplitAcrossReads() throws IOException {
+        File file = new File("target/testStringsTail");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("a\u00e9".getBytes("UTF-8"));
+        out.close();
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<Positioned<String>> ts = TestSubscriber.create();
+        Strings.tail(file, Charset.forName("UTF-8"), 0, 100, 1, scheduler).subscribe(ts);
+        scheduler.triggerActions();
+        ts.assertValueCount(2);
+        assertEquals("a", ts.getOnNextEvents().get(0).value());
+        assertEquals(1, ts.getOnNextEvents().get(0).position());
+        assertEquals("\u00e9", ts.getOnNextEvents().get(1).value());
+        assertEquals(3, ts.getOnNextEvents().get(1).position());
+    }
+
 }
@@ -0,0 +1,137 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rx.Actions;
+import com.github.davidmoten.rx.DatagramStats;
+import com.github.davidmoten.rx.IO;
+import com.github.davidmoten.rx.util.Datagram;
+
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+
+public final class ObservableDatagramsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void isUtilityClass() {
+        Asserts.assertIsUtilityClass(ObservableDatagrams.class);
+    }
+
+    @Test
+    public void testReceivesBatchesAndFlattens() throws IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        DatagramStats stats = DatagramStats.create();
+        TestSubscriber<String> ts = TestSubscriber.create();
+        IO.datagramsAutoAllocatePort(Actions.setAtomic(port)) //
+                .bufferSize(16) //
+                .maxBatch(8) //
+                .receiveBufferSize(1 << 20) //
+                .stats(stats) //
+                .create() //
+                .compose(IO.flattenDatagrams()) //
+                .map(TO_STRING_AND_RELEASE) //
+                .subscribe(ts);
+        try {
+            int n = 100;
+            Set<String> expected = new HashSet<String>();
+            for (int i = 0; i < n; i++) {
+                expected.add("message " + i);
+            }
+            send(port.get(), expected);
+            waitFor(ts, n);
+            ts.assertNoErrors();
+            assertEquals(expected, new HashSet<String>(ts.getOnNextEvents()));
+            assertEquals(n, stats.received());
+            assertEquals(0, stats.dropped());
+            assertTrue(stats.batches() <= n);
+        } finally {
+            ts.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testDropsWithoutDemand() throws IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        DatagramStats stats = DatagramStats.create();
+        TestSubscriber<List<Datagram>> ts = TestSubscriber.create(0);
+        IO.datagramsAutoAllocatePort(Actions.setAtomic(port)) //
+                .stats(stats) //
+                .create() //
+                .subscribe(ts);
+        try {
+            List<String> messages = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                messages.add("dropped " + i);
+            }
+            send(port.get(), messages);
+            long start = System.currentTimeMillis();
+            while (stats.dropped() < 10 && System.currentTimeMillis() - start < 10000) {
+                Thread.sleep(10);
+            }
+            assertEquals(10, stats.dropped());
+            ts.assertNoValues();
+            ts.requestMore(1);
+            send(port.get(), Collections.singletonList("kept"));
+            start = System.currentTimeMillis();
+            while (ts.getOnNextEvents().isEmpty() && System.currentTimeMillis() - start < 10000) {
+                Thread.sleep(10);
+            }
+            ts.assertValueCount(1);
+            Datagram d = ts.getOnNextEvents().get(0).get(0);
+            assertEquals("kept", TO_STRING_AND_RELEASE.call(d));
+            assertEquals(1, stats.received());
+        } finally {
+            ts.unsubscribe();
+        }
+    }
+
+    private static void send(int port, Iterable<String> messages) throws IOException {
+        DatagramSocket socket = new DatagramSocket();
+        try {
+            InetAddress address = InetAddress.getByName("localhost");
+            for (String message : messages) {
+                byte[] bytes = message.getBytes(UTF_8);
+                socket.send(new DatagramPacket(bytes, bytes.length, address, port));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void waitFor(TestSubscriber<?> ts, int n) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (ts.getOnNextEvents().size() < n
+                && System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10)) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static final Func1<Datagram, String> TO_STRING_AND_RELEASE = new Func1<Datagram, String>() {
+        @Override
+        public String call(Datagram d) {
+            String s = new String(d.bytes().array(), d.bytes().offset(), d.bytes().length(),
+                    UTF_8);
+            d.release();
+            return s;
+        }
+    };
+}
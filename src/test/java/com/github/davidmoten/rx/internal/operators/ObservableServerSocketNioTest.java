@@ -0,0 +1,155 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rx.Actions;
+import com.github.davidmoten.rx.Bytes;
+import com.github.davidmoten.rx.IO;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+
+public final class ObservableServerSocketNioTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void isUtilityClass() {
+        Asserts.assertIsUtilityClass(ObservableServerSocketNio.class);
+    }
+
+    @Test
+    public void testManyConnectionsOnTwoEventLoops() throws IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        TestSubscriber<String> ts = TestSubscriber.create();
+        IO.serverSocketNioAutoAllocatePort(Actions.setAtomic(port)) //
+                .eventLoops(2) //
+                .bufferSize(4) //
+                .create() //
+                .flatMap(new Func1<Observable<byte[]>, Observable<String>>() {
+                    @Override
+                    public Observable<String> call(Observable<byte[]> connection) {
+                        return connection.compose(Bytes.collect()).map(TO_STRING);
+                    }
+                }, Integer.MAX_VALUE) //
+                .subscribe(ts);
+        try {
+            int n = 200;
+            List<Socket> sockets = new ArrayList<Socket>();
+            List<String> expected = new ArrayList<String>();
+            // open all connections before any are closed
+            for (int i = 0; i < n; i++) {
+                sockets.add(new Socket("localhost", port.get()));
+            }
+            for (int i = 0; i < n; i++) {
+                String text = "hello there " + i;
+                expected.add(text);
+                OutputStream out = sockets.get(i).getOutputStream();
+                out.write(text.getBytes(UTF_8));
+                out.flush();
+            }
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+            ts.awaitValueCount(n, 10, TimeUnit.SECONDS);
+            List<String> actual = new ArrayList<String>(ts.getOnNextEvents());
+            Collections.sort(actual);
+            Collections.sort(expected);
+            assertEquals(expected, actual);
+            ts.assertNoErrors();
+        } finally {
+            ts.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testConnectionReadOnlyOnDemand() throws IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        final TestSubscriber<byte[]> inner = TestSubscriber.create(1);
+        TestSubscriber<Observable<byte[]>> ts = new TestSubscriber<Observable<byte[]>>() {
+            @Override
+            public void onNext(Observable<byte[]> connection) {
+                connection.subscribe(inner);
+            }
+        };
+        IO.serverSocketNioAutoAllocatePort(Actions.setAtomic(port)) //
+                .eventLoops(1) //
+                .bufferSize(4) //
+                .create() //
+                .subscribe(ts);
+        Socket socket = new Socket("localhost", port.get());
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write("12345678".getBytes(UTF_8));
+            out.flush();
+            inner.awaitValueCount(1, 5, TimeUnit.SECONDS);
+            Thread.sleep(200);
+            inner.assertValueCount(1);
+            assertEquals("1234", new String(inner.getOnNextEvents().get(0), UTF_8));
+            inner.requestMore(1);
+            inner.awaitValueCount(2, 5, TimeUnit.SECONDS);
+            assertEquals("5678", new String(inner.getOnNextEvents().get(1), UTF_8));
+            inner.assertNoTerminalEvent();
+        } finally {
+            socket.close();
+            ts.unsubscribe();
+            inner.unsubscribe();
+        }
+    }
+
+    @Test
+    public void testUnsubscribeClosesServerSocket() throws IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        TestSubscriber<Observable<byte[]>> ts = TestSubscriber.create();
+        IO.serverSocketNioAutoAllocatePort(Actions.setAtomic(port)) //
+                .create() //
+                .subscribe(ts);
+        ts.unsubscribe();
+        Thread.sleep(200);
+        try {
+            new Socket("localhost", port.get()).close();
+            Assert.fail();
+        } catch (ConnectException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPortInUseEmitsError() throws IOException {
+        AtomicInteger port = new AtomicInteger();
+        TestSubscriber<Observable<byte[]>> ts = TestSubscriber.create();
+        IO.serverSocketNioAutoAllocatePort(Actions.setAtomic(port)).create().subscribe(ts);
+        try {
+            TestSubscriber<Observable<byte[]>> ts2 = TestSubscriber.create();
+            IO.serverSocketNio(port.get()).create().subscribe(ts2);
+            ts2.assertError(BindException.class);
+        } finally {
+            ts.unsubscribe();
+        }
+    }
+
+    private static final Func1<byte[], String> TO_STRING = new Func1<byte[], String>() {
+        @Override
+        public String call(byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+
+}
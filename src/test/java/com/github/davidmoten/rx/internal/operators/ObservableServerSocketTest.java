@@ -6,7 +6,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.BindException;
 import java.net.ConnectException;
@@ -472,4 +474,57 @@ public final class ObservableServerSocketTest {
         Thread.sleep(10000000);
 
     }
+    @Test
+    public void testHandleWritesResponsesBackToConnection()
+            throws UnknownHostException, IOException, InterruptedException {
+        AtomicInteger port = new AtomicInteger();
+        TestSubscriber<Void> ts = TestSubscriber.create();
+        IO.serverSocketAutoAllocatePort(Actions.setAtomic(port)) //
+                .bufferSize(4) //
+                .handle(new Func1<Observable<byte[]>, Observable<byte[]>>() {
+                    @Override
+                    public Observable<byte[]> call(Observable<byte[]> in) {
+                        return in.map(new Func1<byte[], byte[]>() {
+                            @Override
+                            public byte[] call(byte[] bytes) {
+                                return new String(bytes, UTF_8).toUpperCase().getBytes(UTF_8);
+                            }
+                        });
+                    }
+                }) //
+                .subscribeOn(scheduler) //
+                .subscribe(ts);
+        try {
+            Thread.sleep(300);
+            Socket socket = new Socket("localhost", port.get());
+            try {
+                // request and response without closing the connection
+                socket.getOutputStream().write("ab".getBytes(UTF_8));
+                byte[] b = new byte[2];
+                readFully(socket.getInputStream(), b);
+                assertEquals("AB", new String(b, UTF_8));
+                socket.getOutputStream().write("hello there".getBytes(UTF_8));
+                socket.shutdownOutput();
+                assertEquals("HELLO THERE",
+                        new String(Bytes.from(socket.getInputStream()).compose(Bytes.collect()).toBlocking().single(), UTF_8));
+            } finally {
+                socket.close();
+            }
+            ts.assertNoTerminalEvent();
+        } finally {
+            ts.unsubscribe();
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] b) throws IOException {
+        int n = 0;
+        while (n < b.length) {
+            int count = in.read(b, n, b.length - n);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            n += count;
+        }
+    }
+
 }
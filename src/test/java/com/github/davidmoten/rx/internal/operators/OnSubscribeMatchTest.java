@@ -14,16 +14,23 @@ import org.junit.Test;
 
 import com.github.davidmoten.rx.Actions;
 import com.github.davidmoten.rx.Functions;
+import com.github.davidmoten.rx.MatchStats;
 import com.github.davidmoten.rx.Obs;
+import com.github.davidmoten.rx.Obs.MatchBuilder;
 import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.exceptions.MatchOverflowException;
 import com.github.davidmoten.rx.testing.TestSubscriber2;
 import com.github.davidmoten.rx.testing.TestingHelper;
+import com.github.davidmoten.rx.util.MatchEvictionPolicy;
 
 import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Action1;
 import rx.functions.Func1;
 import rx.functions.Func2;
 import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 public class OnSubscribeMatchTest {
 
@@ -309,6 +316,156 @@ public class OnSubscribeMatchTest {
         Obs.match(a, b, Functions.identity(), Functions.identity(), COMBINER, -1);
     }
 
+    @Test
+    public void testMaxRetainedEvictsOldest() {
+        List<Integer> evicted = new ArrayList<Integer>();
+        MatchStats stats = MatchStats.create();
+        Observable<Integer> a = Observable.just(1, 2, 3, 4, 5);
+        Observable<Integer> b = Observable.just(1, 5, 4);
+        matchBuilder(a, b) //
+                .maxRetained(2, MatchEvictionPolicy.OLDEST) //
+                .onEvictA(Actions.addTo(evicted)) //
+                .stats(stats) //
+                .create() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(5, 4) //
+                .assertCompleted();
+        assertEquals(Arrays.asList(1, 2, 3), evicted);
+        assertEquals(3, stats.evictedA());
+        assertEquals(0, stats.evictedB());
+        assertEquals(0, stats.pendingA());
+        assertEquals(0, stats.pendingB());
+    }
+
+    @Test
+    public void testMaxRetainedEvictsNewest() {
+        List<Integer> evicted = new ArrayList<Integer>();
+        Observable<Integer> a = Observable.just(1, 2, 3, 4, 5);
+        Observable<Integer> b = Observable.just(1, 5, 4);
+        matchBuilder(a, b) //
+                .maxRetained(2, MatchEvictionPolicy.NEWEST) //
+                .onEvictA(Actions.addTo(evicted)) //
+                .create() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertValues(1) //
+                .assertCompleted();
+        assertEquals(Arrays.asList(3, 4, 5), evicted);
+    }
+
+    @Test
+    public void testMaxRetainedErrors() {
+        Observable<Integer> a = Observable.just(1, 2, 3);
+        Observable<Integer> b = Observable.just(3);
+        matchBuilder(a, b) //
+                .maxRetained(2, MatchEvictionPolicy.ERROR) //
+                .create() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertNoValues() //
+                .assertError(MatchOverflowException.class);
+    }
+
+    @Test
+    public void testEvictionCallbackErrorIsEmitted() {
+        final RuntimeException ex = new RuntimeException("boo");
+        Observable<Integer> a = Observable.just(1, 2);
+        Observable<Integer> b = Observable.just(2);
+        matchBuilder(a, b) //
+                .maxRetained(1, MatchEvictionPolicy.OLDEST) //
+                .onEvictA(new Action1<Integer>() {
+                    @Override
+                    public void call(Integer t) {
+                        throw ex;
+                    }
+                }) //
+                .create() //
+                .to(TestingHelper.<Integer> test()) //
+                .assertNoValues() //
+                .assertError(ex);
+    }
+
+    @Test
+    public void testTtlEvictsUnmatched() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        List<Integer> evicted = new ArrayList<Integer>();
+        MatchStats stats = MatchStats.create();
+        TestSubscriber2<Integer> ts = matchBuilder(a, b) //
+                .ttl(10, TimeUnit.SECONDS, scheduler) //
+                .onEvictA(Actions.addTo(evicted)) //
+                .stats(stats) //
+                .create() //
+                .to(TestingHelper.<Integer> test());
+        a.onNext(1);
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        a.onNext(2);
+        // timer fires at 10s and evicts 1 but not 2
+        scheduler.advanceTimeBy(6, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(1), evicted);
+        assertEquals(1, stats.pendingA());
+        b.onNext(1);
+        b.onNext(2);
+        ts.assertValues(2);
+        assertEquals(0, stats.pendingA());
+        assertEquals(1, stats.pendingB());
+        // the timer at 20s is too early for 1 from b (arrived at 11s) but
+        // expiry on arrival at 21s evicts it
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        a.onNext(3);
+        assertEquals(1, stats.evictedB());
+        a.onCompleted();
+        b.onCompleted();
+        ts.assertValues(2).assertCompleted();
+        assertFalse(a.hasObservers());
+    }
+
+    @Test
+    public void testTtlCompletesWhenRemainingItemsExpire() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> a = PublishSubject.create();
+        TestSubscriber2<Integer> ts = matchBuilder(a, Observable.just(5)) //
+                .ttl(10, TimeUnit.SECONDS, scheduler) //
+                .create() //
+                .to(TestingHelper.<Integer> test());
+        ts.assertNoTerminalEvent();
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS);
+        ts.assertNoValues().assertCompleted();
+        assertFalse(a.hasObservers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubMillisecondTtlIsRejected() {
+        matchBuilder(Observable.just(1), Observable.just(1)).ttl(500, TimeUnit.MICROSECONDS);
+    }
+
+    @Test
+    public void testPendingKeepsArrivalOrderPerKeyAndOverall() {
+        OnSubscribeMatch.Pending<String, Integer> p = new OnSubscribeMatch.Pending<String, Integer>();
+        p.add("a", 1, 0);
+        p.add("b", 2, 1);
+        p.add("a", 3, 2);
+        p.add("a", 4, 3);
+        assertEquals(4, p.size());
+        assertEquals(1, (int) p.poll("a"));
+        assertEquals(1, p.oldestTime());
+        assertEquals(2, (int) p.removeOldest());
+        assertEquals(null, p.poll("b"));
+        assertEquals(3, (int) p.removeOldest());
+        p.add("a", 5, 4);
+        assertEquals(4, (int) p.poll("a"));
+        assertEquals(5, (int) p.poll("a"));
+        assertEquals(null, p.poll("a"));
+        assertTrue(p.isEmpty());
+        p.add(null, 6, 5);
+        assertEquals(6, (int) p.poll(null));
+    }
+
+    private static MatchBuilder<Integer, Integer, Integer, Integer> matchBuilder(
+            Observable<Integer> a, Observable<Integer> b) {
+        return Obs.matchBuilder(a, b, Functions.<Integer> identity(),
+                Functions.<Integer> identity(), COMBINER);
+    }
+
     private void testShifted(int n, boolean async) {
         Observable<Integer> a = Observable.just(0).concatWith(Observable.range(1, n));
         if (async) {
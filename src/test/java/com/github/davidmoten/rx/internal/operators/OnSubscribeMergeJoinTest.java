@@ -0,0 +1,252 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Obs;
+import com.github.davidmoten.rx.testing.TestSubscriber2;
+import com.github.davidmoten.rx.testing.TestingHelper;
+import com.github.davidmoten.rx.util.JoinType;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Func1;
+import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+public class OnSubscribeMergeJoinTest {
+
+    // items with equal tens digits match
+    private static final Observable<Integer> A = Observable.just(10, 20, 21, 40, 50);
+    private static final Observable<Integer> B = Observable.just(20, 22, 30, 50, 51);
+
+    @Test
+    public void testInnerJoinCombinesEqualKeyRuns() {
+        join(A, B, JoinType.INNER) //
+                .to(TestingHelper.<String> test()) //
+                .assertValues("20:20", "20:22", "21:20", "21:22", "50:50", "50:51") //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testLeftJoin() {
+        join(A, B, JoinType.LEFT) //
+                .to(TestingHelper.<String> test()) //
+                .assertValues("10:null", "20:20", "20:22", "21:20", "21:22", "40:null", "50:50",
+                        "50:51") //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testFullOuterJoin() {
+        join(A, B, JoinType.FULL_OUTER) //
+                .to(TestingHelper.<String> test()) //
+                .assertValues("10:null", "20:20", "20:22", "21:20", "21:22", "null:30", "40:null",
+                        "50:50", "50:51") //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testFullOuterJoinEmitsRemainderOfLongerSource() {
+        join(Observable.just(10), Observable.just(10, 20, 30), JoinType.FULL_OUTER) //
+                .to(TestingHelper.<String> test()) //
+                .assertValues("10:10", "null:20", "null:30") //
+                .assertCompleted();
+        join(Observable.just(10, 20, 30), Observable.just(30), JoinType.FULL_OUTER) //
+                .to(TestingHelper.<String> test()) //
+                .assertValues("10:null", "20:null", "30:30") //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testEmpty() {
+        join(Observable.<Integer> empty(), Observable.<Integer> empty(), JoinType.FULL_OUTER) //
+                .to(TestingHelper.<String> test()) //
+                .assertNoValues() //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testInnerJoinCompletesWhenOneSourceIsEmptyAndOtherNeverCompletes() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        join(a, Observable.<Integer> empty(), JoinType.INNER) //
+                .to(TestingHelper.<String> test()) //
+                .assertNoValues() //
+                .assertCompleted();
+        assertFalse(a.hasObservers());
+    }
+
+    @Test
+    public void testLeftJoinCompletesWhenLeftSourceFinishes() {
+        PublishSubject<Integer> b = PublishSubject.create();
+        TestSubscriber2<String> ts = join(Observable.just(10), b, JoinType.LEFT) //
+                .to(TestingHelper.<String> test()) //
+                .assertNoValues() //
+                .assertNoTerminalEvent();
+        b.onNext(10);
+        // the run of key 1 is only complete once a greater key arrives
+        ts.assertNoValues();
+        b.onNext(20);
+        ts.assertValues("10:10").assertCompleted();
+        assertFalse(b.hasObservers());
+    }
+
+    @Test
+    public void testBackpressure() {
+        join(A, B, JoinType.FULL_OUTER, 1) //
+                .to(TestingHelper.<String> testWithRequest(0)) //
+                .assertNoValues() //
+                .requestMore(1) //
+                .assertValuesAndClear("10:null") //
+                .requestMore(3) //
+                .assertValuesAndClear("20:20", "20:22", "21:20") //
+                .requestMore(2) //
+                .assertValuesAndClear("21:22", "null:30") //
+                .assertNoTerminalEvent() //
+                .requestMore(3) //
+                .assertValuesAndClear("40:null", "50:50", "50:51") //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testLongSourcesWithSmallRequestSize() {
+        // a has every integer, b has every third integer twice
+        Observable<Integer> a = Observable.range(0, 100000);
+        Observable<Integer> b = Observable.range(0, 100000).filter(new Func1<Integer, Boolean>() {
+            @Override
+            public Boolean call(Integer x) {
+                return x % 3 == 0;
+            }
+        }).concatMap(new Func1<Integer, Observable<Integer>>() {
+            @Override
+            public Observable<Integer> call(Integer x) {
+                return Observable.just(x, x);
+            }
+        });
+        assertEquals(2 * 33334, (int) identityJoin(a, b, JoinType.INNER, 7).count().toBlocking()
+                .single());
+        assertEquals(100000 + 33334,
+                (int) identityJoin(a, b, JoinType.LEFT, 7).count().toBlocking().single());
+    }
+
+    @Test
+    public void testAsynchronous() {
+        Observable<Integer> a = Observable.range(0, 100000).subscribeOn(Schedulers.computation());
+        Observable<Integer> b = Observable.range(50000, 100000)
+                .subscribeOn(Schedulers.computation());
+        identityJoin(a, b, JoinType.FULL_OUTER, 16) //
+                .count() //
+                .to(TestingHelper.<Integer> test()) //
+                .awaitTerminalEvent(10, TimeUnit.SECONDS) //
+                .assertValues(150000) //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testSourceErrorIsEmitted() {
+        RuntimeException ex = new RuntimeException("boo");
+        join(Observable.just(10).concatWith(Observable.<Integer> error(ex)),
+                Observable.just(10, 20), JoinType.INNER) //
+                .to(TestingHelper.<String> test()) //
+                .assertError(ex);
+    }
+
+    @Test
+    public void testSourceIgnoringBackpressureEmitsMissingBackpressureException() {
+        final AtomicBoolean unsubscribed = new AtomicBoolean();
+        Observable<Integer> a = Observable.create(new OnSubscribe<Integer>() {
+            @Override
+            public void call(Subscriber<? super Integer> sub) {
+                for (int i = 0; i < 100 && !sub.isUnsubscribed(); i++) {
+                    sub.onNext(i * 10);
+                }
+                unsubscribed.set(sub.isUnsubscribed());
+            }
+        });
+        PublishSubject<Integer> b = PublishSubject.create();
+        join(a, b, JoinType.INNER, 16) //
+                .to(TestingHelper.<String> test()) //
+                .assertNoValues() //
+                .assertError(MissingBackpressureException.class);
+        assertTrue(unsubscribed.get());
+        assertFalse(b.hasObservers());
+    }
+
+    @Test
+    public void testKeyFunctionErrorIsEmitted() {
+        final RuntimeException ex = new RuntimeException("boo");
+        Obs.mergeJoin(Observable.just(1), Observable.just(1), new Func1<Integer, Integer>() {
+            @Override
+            public Integer call(Integer x) {
+                throw ex;
+            }
+        }, TENS, NATURAL, COMBINER) //
+                .to(TestingHelper.<String> test()) //
+                .assertNoValues() //
+                .assertError(ex);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequestSizeMustBePositive() {
+        join(A, B, JoinType.INNER, 0);
+    }
+
+    private static Observable<String> join(Observable<Integer> a, Observable<Integer> b,
+            JoinType joinType) {
+        return join(a, b, joinType, 128);
+    }
+
+    private static Observable<String> join(Observable<Integer> a, Observable<Integer> b,
+            JoinType joinType, int requestSize) {
+        return Obs.mergeJoin(a, b, TENS, TENS, NATURAL, COMBINER, joinType, requestSize);
+    }
+
+    private static Observable<Integer> identityJoin(Observable<Integer> a, Observable<Integer> b,
+            JoinType joinType, int requestSize) {
+        return Obs.mergeJoin(a, b, IDENTITY, IDENTITY, NATURAL, new Func2<Integer, Integer, Integer>() {
+            @Override
+            public Integer call(Integer x, Integer y) {
+                return x == null ? y : x;
+            }
+        }, joinType, requestSize);
+    }
+
+    private static final Func1<Integer, Integer> IDENTITY = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer x) {
+            return x;
+        }
+    };
+
+    private static final Func1<Integer, Integer> TENS = new Func1<Integer, Integer>() {
+        @Override
+        public Integer call(Integer x) {
+            return x / 10;
+        }
+    };
+
+    private static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer x, Integer y) {
+            return x.compareTo(y);
+        }
+    };
+
+    private static final Func2<Integer, Integer, String> COMBINER = new Func2<Integer, Integer, String>() {
+        @Override
+        public String call(Integer x, Integer y) {
+            return x + ":" + y;
+        }
+    };
+
+}
@@ -0,0 +1,80 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+
+public class OperatorCoalescingWriteTest {
+
+    @Test
+    public void testWritesAreCoalesced() {
+        final AtomicInteger writes = new AtomicInteger();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writes.incrementAndGet();
+                super.write(b, off, len);
+            }
+        };
+        TestSubscriber<Void> ts = TestSubscriber.create();
+        TestScheduler scheduler = new TestScheduler();
+        Observable.range(0, 1000) //
+                .map(new Func1<Integer, byte[]>() {
+                    @Override
+                    public byte[] call(Integer n) {
+                        return new byte[] { (byte) (int) n };
+                    }
+                }) //
+                .lift(new OperatorCoalescingWrite(out, 100, 16, scheduler)) //
+                .subscribe(ts);
+        scheduler.triggerActions();
+        ts.assertNoValues();
+        ts.assertCompleted();
+        byte[] expected = new byte[1000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        assertArrayEquals(expected, out.toByteArray());
+        assertTrue(writes.get() <= 100);
+    }
+
+    @Test
+    public void testLargeArrayWrittenDirectly() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] big = new byte[1000];
+        big[999] = 1;
+        Observable.just(new byte[] { 2 }, big) //
+                .lift(new OperatorCoalescingWrite(out, 10, 4, Schedulers.trampoline())) //
+                .toBlocking().subscribe();
+        byte[] expected = new byte[1001];
+        expected[0] = 2;
+        expected[1000] = 1;
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    @Test
+    public void testWriteErrorIsEmitted() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("boo");
+            }
+        };
+        TestSubscriber<Void> ts = TestSubscriber.create();
+        Observable.just(new byte[] { 1 }) //
+                .lift(new OperatorCoalescingWrite(out, 10, 4, Schedulers.trampoline())) //
+                .subscribe(ts);
+        ts.assertError(IOException.class);
+    }
+}
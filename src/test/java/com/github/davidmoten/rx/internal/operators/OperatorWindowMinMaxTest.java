@@ -3,8 +3,11 @@ package com.github.davidmoten.rx.internal.operators;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.FixMethodOrder;
 import org.junit.Test;
@@ -13,6 +16,7 @@ import org.junit.runners.MethodSorters;
 import com.github.davidmoten.rx.Transformers;
 
 import rx.Observable;
+import rx.functions.Func1;
 import rx.observers.TestSubscriber;
 
 @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -71,4 +75,118 @@ public class OperatorWindowMinMaxTest {
         ts.assertError(r);
     }
 
+    @Test
+    public void testWindowMinDouble() {
+        List<Double> list = Observable.just(4.0, 3.0, 5.0, 1.0, 2.0)
+                .compose(Transformers.windowMinDouble(2)).toList().toBlocking().single();
+        assertEquals(Arrays.asList(3.0, 3.0, 1.0, 1.0), list);
+    }
+
+    @Test
+    public void testWindowMaxLong() {
+        List<Long> list = Observable.just(4L, 3L, 5L, 1L, 2L)
+                .compose(Transformers.windowMaxLong(3)).toList().toBlocking().single();
+        assertEquals(Arrays.asList(5L, 5L, 5L), list);
+    }
+
+    @Test
+    public void testWindowSizeOnePrimitive() {
+        List<Integer> list = Observable.just(4, 3, 5)
+                .compose(Transformers.windowMinInt(1)).toList().toBlocking().single();
+        assertEquals(Arrays.asList(4, 3, 5), list);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWindowSizeZeroPrimitiveThrowsIAE() {
+        Observable.just(1.0).compose(Transformers.windowMaxDouble(0));
+    }
+
+    @Test
+    public void testAllVariantsAgreeWithBruteForce() {
+        Random random = new Random(12345);
+        for (int windowSize = 1; windowSize <= 20; windowSize++) {
+            List<Integer> values = new ArrayList<Integer>();
+            for (int i = 0; i < 500; i++) {
+                // small range so there are plenty of duplicates
+                values.add(random.nextInt(20));
+            }
+            checkAgainstBruteForce(values, windowSize);
+        }
+    }
+
+    @Test
+    public void testAllVariantsAgreeWithBruteForceWhenQueueGrows() {
+        Random random = new Random(12345);
+        // long ascending and descending runs fill the queue so that the ring
+        // grows (and wraps) for both min and max
+        List<Integer> values = new ArrayList<Integer>();
+        int v = 0;
+        int step = 1;
+        while (values.size() < 2000) {
+            int run = random.nextInt(150);
+            for (int i = 0; i < run; i++) {
+                v += step * random.nextInt(3);
+                values.add(v);
+            }
+            step = -step;
+        }
+        for (int windowSize : new int[] { 15, 16, 17, 31, 33, 64, 100, 257 }) {
+            checkAgainstBruteForce(values, windowSize);
+        }
+    }
+
+    @Test
+    public void testHugeWindowSizeDoesNotPreallocate() {
+        Observable<Integer> source = Observable.range(1, 5);
+        assertTrue(source.compose(Transformers.<Integer> windowMin(Integer.MAX_VALUE)).isEmpty()
+                .toBlocking().single());
+        assertTrue(source.compose(Transformers.windowMaxInt(Integer.MAX_VALUE)).isEmpty()
+                .toBlocking().single());
+        assertTrue(Observable.just(1.0, 2.0)
+                .compose(Transformers.windowMinDouble(Integer.MAX_VALUE)).isEmpty()
+                .toBlocking().single());
+    }
+
+    private static void checkAgainstBruteForce(List<Integer> values, int windowSize) {
+        List<Double> doubles = new ArrayList<Double>();
+        List<Long> longs = new ArrayList<Long>();
+        for (int v : values) {
+            doubles.add((double) v);
+            longs.add((long) v);
+        }
+        List<Integer> mins = new ArrayList<Integer>();
+        List<Integer> maxes = new ArrayList<Integer>();
+        for (int i = windowSize; i <= values.size(); i++) {
+            List<Integer> window = values.subList(i - windowSize, i);
+            mins.add(Collections.min(window));
+            maxes.add(Collections.max(window));
+        }
+        Observable<Integer> source = Observable.from(values);
+        assertEquals(mins, source.compose(Transformers.<Integer> windowMin(windowSize)).toList()
+                .toBlocking().single());
+        assertEquals(maxes, source.compose(Transformers.<Integer> windowMax(windowSize)).toList()
+                .toBlocking().single());
+        assertEquals(mins, source.compose(Transformers.windowMinInt(windowSize)).toList()
+                .toBlocking().single());
+        assertEquals(maxes, source.compose(Transformers.windowMaxInt(windowSize)).toList()
+                .toBlocking().single());
+        assertEquals(mins,
+                toInts(Observable.from(longs).compose(Transformers.windowMinLong(windowSize))));
+        assertEquals(maxes,
+                toInts(Observable.from(longs).compose(Transformers.windowMaxLong(windowSize))));
+        assertEquals(mins, toInts(
+                Observable.from(doubles).compose(Transformers.windowMinDouble(windowSize))));
+        assertEquals(maxes, toInts(
+                Observable.from(doubles).compose(Transformers.windowMaxDouble(windowSize))));
+    }
+
+    private static List<Integer> toInts(Observable<? extends Number> o) {
+        return o.map(new Func1<Number, Integer>() {
+            @Override
+            public Integer call(Number n) {
+                return n.intValue();
+            }
+        }).toList().toBlocking().single();
+    }
+
 }
@@ -3,9 +3,12 @@ package com.github.davidmoten.rx.internal.operators;
 import static org.junit.Assert.assertEquals;
 import static rx.Observable.from;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
@@ -269,4 +272,44 @@ public class OrderedMergeTest {
 		ts.assertValues(1, 2);
 
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testManySourcesOfRandomLengthsWithDuplicates() {
+		Random r = new Random(1);
+		for (int k = 1; k <= 70; k += 3) {
+			List<Observable<Integer>> sources = new ArrayList<Observable<Integer>>();
+			List<Integer> all = new ArrayList<Integer>();
+			for (int i = 0; i < k; i++) {
+				List<Integer> list = new ArrayList<Integer>();
+				int length = r.nextInt(400);
+				for (int j = 0; j < length; j++) {
+					list.add(r.nextInt(1000));
+				}
+				Collections.sort(list);
+				all.addAll(list);
+				sources.add(Observable.from(list).subscribeOn(Schedulers.computation()));
+			}
+			Collections.sort(all);
+			List<Integer> merged = OrderedMerge.create(sources).toList().toBlocking().single();
+			assertEquals(all, merged);
+		}
+	}
+
+	@Test
+	public void testEqualValuesAreEmittedInSourceOrder() {
+		Comparator<String> firstChar = new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return a.substring(0, 1).compareTo(b.substring(0, 1));
+			}
+		};
+		List<Observable<String>> sources = new ArrayList<Observable<String>>();
+		sources.add(Observable.just("a1", "b1"));
+		sources.add(Observable.just("a2", "b2"));
+		sources.add(Observable.just("a3"));
+		OrderedMerge.create(sources, firstChar) //
+				.to(TestingHelper.<String> test()) //
+				.assertValues("a1", "a2", "a3", "b1", "b2") //
+				.assertCompleted();
+	}
+}
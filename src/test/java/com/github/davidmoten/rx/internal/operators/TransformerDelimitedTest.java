@@ -0,0 +1,138 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Strings;
+import com.github.davidmoten.rx.Strings.DelimitedBuilder;
+import com.github.davidmoten.rx.testing.TestSubscriber2;
+import com.github.davidmoten.rx.testing.TestingHelper;
+
+import rx.Observable;
+import rx.functions.Func1;
+
+public class TransformerDelimitedTest {
+
+    @Test
+    public void testSimple() {
+        check(Strings.delimited(), "a,b,c\nd,e,f\n", //
+                records("a", "b", "c").and("d", "e", "f"));
+    }
+
+    @Test
+    public void testNoTrailingNewLine() {
+        check(Strings.delimited(), "a,b\nc", records("a", "b").and("c"));
+    }
+
+    @Test
+    public void testEmptyFieldsAndCarriageReturns() {
+        check(Strings.delimited(), "a,,b,\r\n,c\r\n",
+                records("a", "", "b", "").and("", "c"));
+    }
+
+    @Test
+    public void testQuotedFieldsWithDelimitersNewLinesAndDoubledQuotes() {
+        check(Strings.delimited(), "\"a,b\",\"c\nd\",\"say \"\"hi\"\"\"\n", //
+                records("a,b", "c\nd", "say \"hi\""));
+    }
+
+    @Test
+    public void testQuotedEmptyLineIsNotIgnored() {
+        check(Strings.delimited(), "\"\"\n\n", records(""));
+    }
+
+    @Test
+    public void testEmptyLinesNotIgnored() {
+        check(Strings.delimited().ignoreEmptyLines(false), "a\n\nb",
+                records("a").and("").and("b"));
+    }
+
+    @Test
+    public void testEscape() {
+        check(Strings.delimited().escape('\\').noQuote(), "a\\,b,c\\\\\n",
+                records("a,b", "c\\"));
+    }
+
+    @Test
+    public void testCommentLinesAndTrimWithOtherDelimiter() {
+        check(Strings.delimited().delimiter('|').commentPrefix("//").trim(true),
+                "// comment, ignored\n a | b \n/x|y\n   \n", records("a", "b").and("/x", "y"));
+    }
+
+    @Test
+    public void testChunkBoundariesAnywhere() {
+        String text = "#comment\n\"a,\"\"b\",c\r\n1,2\n\"x\ny\",z";
+        List<List<String>> expected = Strings.delimited().commentPrefix("#")
+                .from(Observable.just(text)).toList().toBlocking().single();
+        assertEquals(3, expected.size());
+        for (int size = 1; size <= text.length(); size++) {
+            assertEquals(expected, Strings.delimited().commentPrefix("#")
+                    .from(chunks(text, size)).toList().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void testReuseRecord() {
+        final List<List<String>> copies = new ArrayList<List<String>>();
+        final List<List<String>> instances = new ArrayList<List<String>>();
+        Strings.delimited().reuseRecord(true).from(chunks("a,b\nc,d\ne", 3))
+                .map(new Func1<List<String>, List<String>>() {
+                    @Override
+                    public List<String> call(List<String> record) {
+                        instances.add(record);
+                        copies.add(new ArrayList<String>(record));
+                        return record;
+                    }
+                }).subscribe();
+        assertEquals(records("a", "b").and("c", "d").and("e"), copies);
+        assertTrue(instances.get(0) == instances.get(1));
+        assertTrue(instances.get(1) == instances.get(2));
+    }
+
+    @Test
+    public void testBackpressure() {
+        TestSubscriber2<List<String>> ts = Strings.delimited()
+                .from(Observable.just("a\nb\nc\n")) //
+                .to(TestingHelper.<List<String>> testWithRequest(1));
+        assertEquals(records("a"), ts.getOnNextEvents());
+        ts.assertNotCompleted().requestMore(2);
+        assertEquals(records("a").and("b").and("c"), ts.getOnNextEvents());
+        ts.assertCompleted();
+    }
+
+    private static Observable<String> chunks(String s, int size) {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < s.length(); i += size) {
+            list.add(s.substring(i, Math.min(s.length(), i + size)));
+        }
+        return Observable.from(list);
+    }
+
+    private static void check(DelimitedBuilder builder, String text,
+            List<List<String>> expected) {
+        assertEquals(expected,
+                builder.from(Observable.just(text)).toList().toBlocking().single());
+    }
+
+    private static Records records(String... fields) {
+        return new Records().and(fields);
+    }
+
+    // builds expected records without generic varargs
+    private static final class Records extends ArrayList<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        Records and(String... fields) {
+            add(Arrays.asList(fields));
+            return this;
+        }
+    }
+
+}
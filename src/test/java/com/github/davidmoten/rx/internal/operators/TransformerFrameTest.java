@@ -0,0 +1,148 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Bytes;
+import com.github.davidmoten.rx.exceptions.FrameTooLongException;
+import com.github.davidmoten.rx.exceptions.IORuntimeException;
+import com.github.davidmoten.rx.testing.TestingHelper;
+
+import rx.Observable;
+import rx.Observable.Transformer;
+
+public class TransformerFrameTest {
+
+    @Test
+    public void testLengthFramesWithinAndAcrossChunks() {
+        byte[] data = new byte[] { 0, 2, 'a', 'b', 0, 0, 0, 3, 'c', 'd', 'e', 0, 1, 'f' };
+        List<byte[]> expected = Arrays.asList(bytes("ab"), bytes(""), bytes("cde"), bytes("f"));
+        for (int size = 1; size <= data.length; size++) {
+            assertFrames(expected, chunks(data, size), Bytes.frameByLength(2, 100));
+        }
+    }
+
+    @Test
+    public void testLengthFrameTooLong() {
+        Observable.just(new byte[] { 0, 5, 1, 2, 3, 4, 5 }) //
+                .compose(Bytes.frameByLength(2, 4)) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertNoValues() //
+                .assertError(FrameTooLongException.class);
+    }
+
+    @Test
+    public void testLengthFrameWithTopBitOfEightByteHeaderSetIsTooLong() {
+        byte[] header = new byte[] { -1, -1, -1, -1, -1, -1, -1, -1 };
+        // whole header in one chunk (fast path)
+        Observable.just(header) //
+                .compose(Bytes.frameByLength(8, 100)) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertNoValues() //
+                .assertError(FrameTooLongException.class);
+        // header split across chunks
+        Observable.just(Arrays.copyOf(header, 3), Arrays.copyOfRange(header, 3, 8)) //
+                .compose(Bytes.frameByLength(8, 100)) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertNoValues() //
+                .assertError(FrameTooLongException.class);
+    }
+
+    @Test
+    public void testLengthStreamEndsPartWayThroughFrame() {
+        Observable.just(new byte[] { 0, 5, 1, 2 }) //
+                .compose(Bytes.frameByLength(2, 100)) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertNoValues() //
+                .assertError(IORuntimeException.class);
+    }
+
+    @Test
+    public void testLengthFramesRandom() {
+        Random r = new Random(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<byte[]> expected = new ArrayList<byte[]>();
+        for (int i = 0; i < 500; i++) {
+            byte[] frame = new byte[r.nextInt(300)];
+            r.nextBytes(frame);
+            expected.add(frame);
+            out.write(frame.length >> 8);
+            out.write(frame.length);
+            out.write(frame, 0, frame.length);
+        }
+        assertFrames(expected, chunks(out.toByteArray(), 1 + r.nextInt(700)),
+                Bytes.frameByLength(2, 300));
+    }
+
+    @Test
+    public void testDelimiterFramesWithinAndAcrossChunks() {
+        byte[] data = bytes("ab\r\n\r\ncde\r\nf\r");
+        List<byte[]> expected = Arrays.asList(bytes("ab"), bytes(""), bytes("cde"), bytes("f\r"));
+        for (int size = 1; size <= data.length; size++) {
+            assertFrames(expected, chunks(data, size), Bytes.frameByDelimiter(bytes("\r\n"), 100));
+        }
+    }
+
+    @Test
+    public void testDelimiterWithRepeatedPrefix() {
+        // the delimiter "aab" can start part way through a partial match
+        byte[] data = bytes("xaaabyaab");
+        List<byte[]> expected = Arrays.asList(bytes("xa"), bytes("y"));
+        for (int size = 1; size <= data.length; size++) {
+            assertFrames(expected, chunks(data, size), Bytes.frameByDelimiter(bytes("aab"), 100));
+        }
+    }
+
+    @Test
+    public void testDelimiterFrameTooLong() {
+        Observable.just(bytes("ab\nc"), bytes("def\n")) //
+                .compose(Bytes.frameByDelimiter(bytes("\n"), 3)) //
+                .to(TestingHelper.<byte[]> test()) //
+                .assertValueCount(1) //
+                .assertError(FrameTooLongException.class);
+    }
+
+    @Test
+    public void testBackpressure() {
+        TestingHelper.<byte[]> testWithRequest(1)
+                .call(Observable.just(bytes("a,b,c"), bytes(",d"))
+                        .compose(Bytes.frameByDelimiter(bytes(","), 10))) //
+                .assertValueCount(1) //
+                .requestMore(2) //
+                .assertValueCount(3) //
+                .assertNotCompleted() //
+                .requestMore(1) //
+                .assertValueCount(4) //
+                .assertCompleted();
+    }
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> chunks,
+            Transformer<byte[], byte[]> framer) {
+        List<byte[]> list = Observable.from(chunks).compose(framer).toList().toBlocking()
+                .single();
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), list.get(i));
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes();
+    }
+
+    private static List<byte[]> chunks(byte[] data, int size) {
+        List<byte[]> list = new ArrayList<byte[]>();
+        for (int i = 0; i < data.length; i += size) {
+            list.add(Arrays.copyOfRange(data, i, Math.min(data.length, i + size)));
+        }
+        return list;
+    }
+}
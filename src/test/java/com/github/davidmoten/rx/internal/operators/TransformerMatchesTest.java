@@ -0,0 +1,98 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.github.davidmoten.rx.Strings;
+import com.github.davidmoten.rx.testing.TestingHelper;
+import com.github.davidmoten.rx.util.StringMatch;
+
+import rx.Observable;
+
+public class TransformerMatchesTest {
+
+    @Test
+    public void testMatchStraddlesChunks() {
+        List<StringMatch> list = Observable.just("ab", "cXde", "fXabc", "d") //
+                .compose(Strings.matches("abcd?", 10)) //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(new StringMatch(0, 3, new String[] { "abc" }),
+                new StringMatch(8, 12, new String[] { "abcd" })), list);
+    }
+
+    @Test
+    public void testGroups() {
+        StringMatch m = Observable.just("key=", "val", "ue;") //
+                .compose(Strings.matches("(\\w+)=(\\w+);", 100)) //
+                .toBlocking().single();
+        assertEquals(2, m.groupCount());
+        assertEquals("key", m.group(1));
+        assertEquals("value", m.group(2));
+        assertEquals(0, m.start());
+        assertEquals(10, m.end());
+    }
+
+    @Test
+    public void testNoMatches() {
+        Observable.just("abc", "def") //
+                .compose(Strings.matches("x", 1)) //
+                .to(TestingHelper.<StringMatch> test()) //
+                .assertNoValues() //
+                .assertCompleted();
+    }
+
+    @Test
+    public void testLookbehindAcrossChunks() {
+        List<StringMatch> list = Observable.just("ab", "c") //
+                .compose(Strings.matches("(?<=b)c", 5)) //
+                .toList().toBlocking().single();
+        assertEquals(Arrays.asList(new StringMatch(2, 3, new String[] { "c" })), list);
+    }
+
+    @Test
+    public void testSameAsWholeStringForRandomChunks() {
+        Random r = new Random(123);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            s.append((char) ('a' + r.nextInt(4)));
+            if (r.nextInt(10) == 0) {
+                s.append(' ');
+            }
+        }
+        String text = s.toString();
+        for (String regex : new String[] { "ab+c", "a[bc]{2,5}d", "d\\w*a", "\\bcc\\b" }) {
+            List<StringMatch> expected = new ArrayList<StringMatch>();
+            Matcher m = Pattern.compile(regex).matcher(text);
+            while (m.find()) {
+                expected.add(new StringMatch(m.start(), m.end(), new String[] { m.group() }));
+            }
+            List<String> chunks = new ArrayList<String>();
+            int i = 0;
+            while (i < text.length()) {
+                int n = Math.min(text.length() - i, 1 + r.nextInt(20));
+                chunks.add(text.substring(i, i + n));
+                i += n;
+            }
+            assertEquals(regex, expected, Observable.from(chunks)
+                    .compose(Strings.matches(regex, 100)).toList().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void testBackpressure() {
+        TestingHelper.<StringMatch> testWithRequest(1)
+                .call(Observable.just("aXa", "Xa").compose(Strings.matches("a", 1))) //
+                .assertValueCount(1) //
+                .requestMore(5) //
+                .assertValueCount(3) //
+                .assertCompleted();
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rx.Transformers;
+import com.github.davidmoten.rx.buffertofile.DataSerializers;
+import com.github.davidmoten.rx.buffertofile.Options;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+
+public class TransformerSortTest {
+
+    private static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return a.compareTo(b);
+        }
+    };
+
+    @Test
+    public void isUtilityClass() {
+        Asserts.assertIsUtilityClass(TransformerSort.class);
+    }
+
+    @Test
+    public void testSortSpillsRunsAndDeletesFiles() {
+        List<Integer> list = randomList(10000);
+        List<File> files = new ArrayList<File>();
+        List<Integer> sorted = Observable.from(list) //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(), options(files, 1000))) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        Collections.sort(list);
+        assertEquals(list, sorted);
+        assertEquals(10, files.size());
+        assertDeleted(files);
+    }
+
+    @Test
+    public void testSortThatFitsInOneRunWritesNoFiles() {
+        List<Integer> list = randomList(100);
+        List<File> files = new ArrayList<File>();
+        List<Integer> sorted = Observable.from(list) //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(), options(files, 1000))) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        Collections.sort(list);
+        assertEquals(list, sorted);
+        assertEquals(0, files.size());
+    }
+
+    @Test
+    public void testSortOfExactlyOneFullRunIsCorrect() {
+        List<Integer> list = randomList(1000);
+        List<File> files = new ArrayList<File>();
+        List<Integer> sorted = Observable.from(list) //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(), options(files, 1000))) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        Collections.sort(list);
+        assertEquals(list, sorted);
+        // a full first run cannot be known to be the last so is spilled
+        assertEquals(1, files.size());
+        assertDeleted(files);
+    }
+
+    @Test
+    public void testSortEmpty() {
+        List<File> files = new ArrayList<File>();
+        assertEquals(0, (int) Observable.<Integer> empty() //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(), options(files, 10))) //
+                .count() //
+                .toBlocking() //
+                .single());
+    }
+
+    @Test
+    public void testEarlyUnsubscribeDeletesFiles() {
+        List<File> files = new ArrayList<File>();
+        List<Integer> first = Observable.range(1, 1000) //
+                .map(new Func1<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer n) {
+                        return 1001 - n;
+                    }
+                }) //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(), options(files, 100))) //
+                .take(3) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        assertEquals(Arrays.asList(1, 2, 3), first);
+        assertEquals(10, files.size());
+        assertDeleted(files);
+    }
+
+    @Test
+    public void testSortIsStable() {
+        // sort on the value divided by 10 so that many items are equal
+        Comparator<Integer> tens = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return NATURAL.compare(a / 10, b / 10);
+            }
+        };
+        List<Integer> list = randomList(5000);
+        List<File> files = new ArrayList<File>();
+        List<Integer> sorted = Observable.from(list) //
+                .compose(Transformers.sort(tens, DataSerializers.integer(), options(files, 300))) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        Collections.sort(list, tens);
+        assertEquals(list, sorted);
+    }
+
+    @Test
+    public void testParallelSort() {
+        List<Integer> list = randomList(100000);
+        List<Integer> sorted = Observable.from(list) //
+                .compose(Transformers.sortParallel(NATURAL, 1000)) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        Collections.sort(list);
+        assertEquals(list, sorted);
+    }
+
+    @Test
+    public void testParallelSortIsStableAndLazy() {
+        Comparator<Integer> tens = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return NATURAL.compare(a / 10, b / 10);
+            }
+        };
+        List<Integer> list = randomList(5000);
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        Observable.from(list) //
+                .compose(Transformers.sortParallel(tens, 100)) //
+                .subscribe(ts);
+        ts.requestMore(1);
+        ts.awaitValueCount(1, 10, TimeUnit.SECONDS);
+        ts.requestMore(Long.MAX_VALUE);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        Collections.sort(list, tens);
+        assertEquals(list, ts.getOnNextEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDisabledRolloverIsRejected() {
+        Transformers.sort(NATURAL, DataSerializers.integer(),
+                Options.disableRollover().build());
+    }
+
+    @Test
+    public void testLargeRunSizeDoesNotPreallocate() {
+        // a run size near Integer.MAX_VALUE must not allocate a huge buffer
+        List<File> files = new ArrayList<File>();
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        Observable.just(3, 1, 2) //
+                .compose(Transformers.sort(NATURAL, DataSerializers.integer(),
+                        options(files, Integer.MAX_VALUE))) //
+                .subscribe(ts);
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValues(1, 2, 3);
+        ts.assertCompleted();
+        assertTrue(files.isEmpty());
+    }
+
+    private static Options options(final List<File> files, long runSize) {
+        return Options.rolloverEvery(runSize).fileFactory(new Func0<File>() {
+            @Override
+            public File call() {
+                try {
+                    File file = File.createTempFile("sort", ".run");
+                    synchronized (files) {
+                        files.add(file);
+                    }
+                    return file;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).build();
+    }
+
+    private static void assertDeleted(List<File> files) {
+        // unsubscription may happen on another thread just after completion
+        long start = System.currentTimeMillis();
+        for (File file : files) {
+            while (file.exists() && System.currentTimeMillis() - start < 5000) {
+                Thread.yield();
+            }
+            assertFalse(file.exists());
+        }
+    }
+
+    private static List<Integer> randomList(int n) {
+        Random r = new Random(1);
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            list.add(r.nextInt(100000));
+        }
+        return list;
+    }
+
+}
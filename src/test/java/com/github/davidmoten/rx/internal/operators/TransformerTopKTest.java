@@ -0,0 +1,141 @@
+package com.github.davidmoten.rx.internal.operators;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.davidmoten.junit.Asserts;
+import com.github.davidmoten.rx.Transformers;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+public class TransformerTopKTest {
+
+    // compares by tens so that there are many equal items
+    private static final Comparator<Integer> TENS = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+            return Integer.valueOf(a / 10).compareTo(b / 10);
+        }
+    };
+
+    @Test
+    public void isUtilityClass() {
+        Asserts.assertIsUtilityClass(TransformerTopK.class);
+    }
+
+    @Test
+    public void testTopKMatchesStableSortAndTake() {
+        Random r = new Random(1);
+        for (int k = 0; k < 30; k += 7) {
+            List<Integer> list = new ArrayList<Integer>();
+            for (int i = 0; i < 1000; i++) {
+                list.add(r.nextInt(500));
+            }
+            List<Integer> expected = new ArrayList<Integer>(list);
+            Collections.sort(expected, Collections.reverseOrder(TENS));
+            expected = expected.subList(0, k);
+            assertEquals(expected, Observable.from(list).compose(Transformers.topK(k, TENS))
+                    .toList().toBlocking().single());
+            List<Integer> expectedBottom = new ArrayList<Integer>(list);
+            Collections.sort(expectedBottom, TENS);
+            expectedBottom = expectedBottom.subList(0, k);
+            assertEquals(expectedBottom, Observable.from(list)
+                    .compose(Transformers.bottomK(k, TENS)).toList().toBlocking().single());
+        }
+    }
+
+    @Test
+    public void testTopKFewerItemsThanK() {
+        assertEquals(Arrays.asList(3, 2, 1), Observable.just(2, 3, 1)
+                .compose(Transformers.<Integer> topK(5)).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testBottomKEmpty() {
+        assertEquals(0, (int) Observable.<Integer> empty()
+                .compose(Transformers.<Integer> bottomK(3)).count().toBlocking().single());
+    }
+
+    @Test
+    public void testTopKEveryNItems() {
+        List<List<Integer>> lists = Observable.just(5, 1, 4, 2, 9, 7, 3) //
+                .compose(Transformers.topKEvery(2, Collections.<Integer> reverseOrder(), 3)) //
+                .toList() //
+                .toBlocking() //
+                .single();
+        List<List<Integer>> expected = new ArrayList<List<Integer>>();
+        expected.add(Arrays.asList(1, 4));
+        expected.add(Arrays.asList(2, 7));
+        expected.add(Arrays.asList(3));
+        assertEquals(expected, lists);
+    }
+
+    @Test
+    public void testTopKEveryHugeWindowSizeDoesNotPreallocate() {
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(50);
+        expected.add(40);
+        assertEquals(Collections.singletonList(expected),
+                Observable.just(20, 50, 10, 40, 30)
+                        .compose(Transformers.topKEvery(2, TENS, Integer.MAX_VALUE)).toList()
+                        .toBlocking().single());
+    }
+
+    @Test
+    public void testTopKHugeKDoesNotPreallocate() {
+        assertEquals(Arrays.asList(50, 40, 30, 20, 10), Observable.just(20, 50, 10, 40, 30)
+                .compose(Transformers.topK(Integer.MAX_VALUE, TENS)).toList().toBlocking()
+                .single());
+    }
+
+    @Test
+    public void testTopKEveryBackpressure() {
+        TestSubscriber<List<Integer>> ts = TestSubscriber.create(0);
+        Observable.range(1, 7) //
+                .compose(Transformers.topKEvery(1, Collections.<Integer> reverseOrder(), 3)) //
+                .subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(1);
+        ts.assertValue(Collections.singletonList(1));
+        ts.assertNotCompleted();
+        ts.requestMore(2);
+        assertEquals(3, ts.getOnNextEvents().size());
+        assertEquals(Collections.singletonList(7), ts.getOnNextEvents().get(2));
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testTopKEveryPeriod() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> subject = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = TestSubscriber.create();
+        subject.compose(Transformers.topKEvery(2, Collections.<Integer> reverseOrder(), 1,
+                TimeUnit.SECONDS, scheduler)).subscribe(ts);
+        // the first window boundary is at time 0
+        scheduler.triggerActions();
+        subject.onNext(5);
+        subject.onNext(1);
+        subject.onNext(3);
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        List<List<Integer>> expected = new ArrayList<List<Integer>>();
+        expected.add(Arrays.asList(1, 3));
+        assertEquals(expected, ts.getOnNextEvents());
+        subject.onNext(8);
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        expected.add(Arrays.asList(8));
+        assertEquals(expected, ts.getOnNextEvents());
+    }
+
+}
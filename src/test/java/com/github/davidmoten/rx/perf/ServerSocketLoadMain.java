@@ -0,0 +1,265 @@
+package com.github.davidmoten.rx.perf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.rx.Actions;
+import com.github.davidmoten.rx.Bytes;
+import com.github.davidmoten.rx.IO;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+/**
+ * Load generator for {@link IO#serverSocket(int)} and
+ * {@link IO#serverSocketNio(int)} on loopback. Each client connection sends
+ * length prefixed messages that start with the send time in nanoseconds and
+ * the server records the latency from send to the message being reassembled
+ * on the server. Reports connections per second, MB/s and one-way (client
+ * send to server reassembly) latency percentiles for each combination of
+ * mode, buffer size and read timeout. Latency is one-way rather than round
+ * trip because connections from {@link IO#serverSocketNio(int)} cannot be
+ * written to, and measuring both modes the same way keeps them comparable.
+ * Client and server share the loopback host and so share a clock.
+ *
+ * <p>
+ * Arguments are optional {@code name=value} pairs: {@code clients} (default
+ * 50), {@code messages} per client (default 2000), {@code size} of each
+ * message in bytes (default 256), {@code connections} for the connection rate
+ * test (default 2000), {@code bufferSizes} (default 1024,8192,65536),
+ * {@code readTimeouts} in ms (default 0,1000) and {@code modes} (default
+ * blocking,nio).
+ */
+public final class ServerSocketLoadMain {
+
+    private static final int HEADER_BYTES = 4;
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options(args);
+        System.out.println(
+                "mode      bufferSize readTimeoutMs conns/s    MB/s  one-way latency p50us   p99us   p999us");
+        for (String mode : options.modes) {
+            for (int bufferSize : options.bufferSizes) {
+                for (int readTimeoutMs : mode.equals("nio") ? new int[] { 0 }
+                        : options.readTimeouts) {
+                    Result r = run(mode, bufferSize, readTimeoutMs, options);
+                    System.out.println(String.format("%-9s %10d %13d %8.0f %7.1f %22d %7d %8d",
+                            mode, bufferSize, readTimeoutMs, r.connectionsPerSecond, r.mbPerSecond,
+                            r.percentile(0.5), r.percentile(0.99), r.percentile(0.999)));
+                }
+            }
+        }
+    }
+
+    private static Result run(String mode, int bufferSize, int readTimeoutMs, Options options)
+            throws Exception {
+        final int totalMessages = options.clients * options.messages;
+        final long[] latencies = new long[totalMessages];
+        final AtomicInteger latencyCount = new AtomicInteger();
+        final AtomicInteger connectionsDone = new AtomicInteger();
+        final AtomicLong bytesReceived = new AtomicLong();
+        AtomicInteger port = new AtomicInteger();
+        Func1<Observable<byte[]>, Observable<byte[]>> handler = new Func1<Observable<byte[]>, Observable<byte[]>>() {
+            @Override
+            public Observable<byte[]> call(Observable<byte[]> connection) {
+                return connection //
+                        .compose(Bytes.frameByLength(HEADER_BYTES, Integer.MAX_VALUE)) //
+                        .doOnNext(new Action1<byte[]>() {
+                            @Override
+                            public void call(byte[] message) {
+                                long now = System.nanoTime();
+                                bytesReceived.addAndGet(message.length + HEADER_BYTES);
+                                if (message.length >= 8) {
+                                    int i = latencyCount.getAndIncrement();
+                                    if (i < latencies.length) {
+                                        latencies[i] = now - readLong(message);
+                                    }
+                                }
+                            }
+                        }) //
+                        .ignoreElements() //
+                        .onErrorResumeNext(Observable.<byte[]> empty()) //
+                        .doOnTerminate(Actions.increment0(connectionsDone));
+            }
+        };
+        Observable<Observable<byte[]>> connections;
+        if (mode.equals("nio")) {
+            connections = IO.serverSocketNioAutoAllocatePort(Actions.setAtomic(port)) //
+                    .bufferSize(bufferSize) //
+                    .create();
+        } else {
+            connections = IO.serverSocketAutoAllocatePort(Actions.setAtomic(port)) //
+                    .bufferSize(bufferSize) //
+                    .readTimeoutMs(readTimeoutMs == 0 ? Integer.MAX_VALUE : readTimeoutMs) //
+                    .create() //
+                    .map(new Func1<Observable<byte[]>, Observable<byte[]>>() {
+                        @Override
+                        public Observable<byte[]> call(Observable<byte[]> connection) {
+                            // blocking reads need a thread per connection
+                            return connection.subscribeOn(Schedulers.io());
+                        }
+                    });
+        }
+        Subscription server = connections //
+                .subscribeOn(Schedulers.io()) //
+                .flatMap(handler, Integer.MAX_VALUE) //
+                .subscribe();
+        try {
+            while (port.get() == 0) {
+                Thread.sleep(10);
+            }
+            // wait for the accept loop to start
+            Thread.sleep(100);
+            Result result = new Result();
+            result.connectionsPerSecond = connectionRate(port.get(), options.connections,
+                    connectionsDone);
+            connectionsDone.set(0);
+            latencyCount.set(0);
+            bytesReceived.set(0);
+            long start = System.nanoTime();
+            sendMessages(port.get(), options);
+            while (connectionsDone.get() < options.clients) {
+                Thread.sleep(1);
+            }
+            long elapsed = System.nanoTime() - start;
+            result.mbPerSecond = bytesReceived.get() / 1048576.0
+                    / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            int n = Math.min(latencyCount.get(), latencies.length);
+            result.latenciesNanos = Arrays.copyOf(latencies, n);
+            Arrays.sort(result.latenciesNanos);
+            return result;
+        } finally {
+            server.unsubscribe();
+        }
+    }
+
+    private static double connectionRate(int port, int connections, AtomicInteger done)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            Socket socket = new Socket("localhost", port);
+            socket.close();
+        }
+        while (done.get() < connections) {
+            Thread.sleep(1);
+        }
+        return connections / ((System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static void sendMessages(final int port, final Options options)
+            throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(options.clients);
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        for (int i = 0; i < options.clients; i++) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Socket socket = new Socket("localhost", port);
+                        socket.setTcpNoDelay(true);
+                        DataOutputStream out = new DataOutputStream(
+                                new BufferedOutputStream(socket.getOutputStream()));
+                        byte[] padding = new byte[Math.max(0, options.size - 8)];
+                        for (int j = 0; j < options.messages; j++) {
+                            out.writeInt(8 + padding.length);
+                            out.writeLong(System.nanoTime());
+                            out.write(padding);
+                            out.flush();
+                        }
+                        socket.close();
+                    } catch (IOException e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            t.start();
+        }
+        latch.await();
+        if (!errors.isEmpty()) {
+            throw new RuntimeException(errors.get(0));
+        }
+    }
+
+    private static long readLong(byte[] b) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[i] & 0xff);
+        }
+        return v;
+    }
+
+    private static final class Result {
+        double connectionsPerSecond;
+        double mbPerSecond;
+        long[] latenciesNanos;
+
+        long percentile(double p) {
+            if (latenciesNanos.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(latenciesNanos.length - 1,
+                    Math.ceil(p * latenciesNanos.length) - 1);
+            return TimeUnit.NANOSECONDS.toMicros(latenciesNanos[Math.max(0, index)]);
+        }
+    }
+
+    private static final class Options {
+        int clients = 50;
+        int messages = 2000;
+        int size = 256;
+        int connections = 2000;
+        int[] bufferSizes = { 1024, 8192, 65536 };
+        int[] readTimeouts = { 0, 1000 };
+        String[] modes = { "blocking", "nio" };
+
+        Options(String[] args) {
+            for (String arg : args) {
+                String[] kv = arg.split("=", 2);
+                String v = kv.length == 2 ? kv[1] : "";
+                if (kv[0].equals("clients")) {
+                    clients = Integer.parseInt(v);
+                } else if (kv[0].equals("messages")) {
+                    messages = Integer.parseInt(v);
+                } else if (kv[0].equals("size")) {
+                    size = Integer.parseInt(v);
+                } else if (kv[0].equals("connections")) {
+                    connections = Integer.parseInt(v);
+                } else if (kv[0].equals("bufferSizes")) {
+                    bufferSizes = ints(v);
+                } else if (kv[0].equals("readTimeouts")) {
+                    readTimeouts = ints(v);
+                } else if (kv[0].equals("modes")) {
+                    modes = v.split(",");
+                } else {
+                    throw new IllegalArgumentException("unknown argument " + arg);
+                }
+            }
+        }
+
+        private static int[] ints(String s) {
+            String[] items = s.split(",");
+            int[] result = new int[items.length];
+            for (int i = 0; i < items.length; i++) {
+                result[i] = Integer.parseInt(items[i].trim());
+            }
+            return result;
+        }
+    }
+
+}